@@ -36,7 +36,11 @@ public class DfmDictionaries {
             SERIES_IMPACTS_T = "series_impacts_T", SERIES_IMPACTS = "series_impacts", FORECASTS_PERIODS = "forecasts_periods",
             OLD_FORECASTS_T = "old_forecasts_T", OLD_FORECASTS = "old_forecasts",
             REVISED_FORECASTS_T = "revised_forecasts_T", REVISED_FORECASTS = "revised_forecasts",
-            NEW_FORECASTS_T = "new_forecasts_T", NEW_FORECASTS = "new_forecasts";
+            NEW_FORECASTS_T = "new_forecasts_T", NEW_FORECASTS = "new_forecasts",
+            REVISIONS_INDEX = "revisions_index", REVISIONS_PERIOD = "revisions_period",
+            REVISIONS_T = "revisions_T", REVISIONS = "revisions",
+            REVISIONS_WEIGHTS_T = "revisions_weights_T", REVISIONS_WEIGHTS = "revisions_weights",
+            REVISIONS_IMPACTS_T = "revisions_impacts_T", REVISIONS_IMPACTS = "revisions_impacts";
     
     public final Dictionary DFMDICTIONARY = AtomicDictionary.builder()
             .name("dfm")
@@ -85,5 +89,13 @@ public class DfmDictionaries {
         .item(AtomicDictionary.Item.builder().name(REVISED_FORECASTS).description("Forecasts of the original target series based on revised data").outputClass(double[].class).build())
         .item(AtomicDictionary.Item.builder().name(NEW_FORECASTS_T).description("New forecasts of the standardized target series").outputClass(double[].class).build())
         .item(AtomicDictionary.Item.builder().name(NEW_FORECASTS).description("New forecasts of the original target series").outputClass(double[].class).build())
+        .item(AtomicDictionary.Item.builder().name(REVISIONS_INDEX).description("Index number of series where data was revised").outputClass(int[].class).build())
+        .item(AtomicDictionary.Item.builder().name(REVISIONS_PERIOD).description("Period where data was revised").outputClass(String[].class).build())
+        .item(AtomicDictionary.Item.builder().name(REVISIONS_T).description("Revisions of the standardized series").outputClass(double[].class).build())
+        .item(AtomicDictionary.Item.builder().name(REVISIONS).description("Revisions of the original series").outputClass(double[].class).build())
+        .item(AtomicDictionary.Item.builder().name(REVISIONS_WEIGHTS_T).description("Weights of the revisions of each standardized series on forecasts of a target series").outputClass(Matrix.class).build())
+        .item(AtomicDictionary.Item.builder().name(REVISIONS_WEIGHTS).description("Weights of the revisions of each original series on forecasts of a target series").outputClass(Matrix.class).build())
+        .item(AtomicDictionary.Item.builder().name(REVISIONS_IMPACTS_T).description("Total impacts of the revisions of each standardized series on forecasts of a target series").outputClass(Matrix.class).build())
+        .item(AtomicDictionary.Item.builder().name(REVISIONS_IMPACTS).description("Total impacts of the revisions of each original series on forecasts of a target series").outputClass(Matrix.class).build())
         .build();      
 }
@@ -32,6 +32,10 @@ public class EmSpec implements Cloneable {
     private int maxIter;
     private int maxNumIter;
     private double precision;
+    /**
+     * Accelerated EM (SQUAREM extrapolation)
+     */
+    private boolean accelerated;
     
     public static Builder builder(){
         return new Builder()
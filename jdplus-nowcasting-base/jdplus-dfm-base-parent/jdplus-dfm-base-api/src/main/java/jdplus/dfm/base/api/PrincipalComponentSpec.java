@@ -28,15 +28,36 @@ import jdplus.toolkit.base.api.timeseries.TimeSelector;
 public class PrincipalComponentSpec {
     
 
+    /**
+     * Computation of the principal components: full singular value
+     * decomposition or truncated decomposition (leading component only)
+     */
+    public static enum SvdMethod {
+        FULL, TRUNCATED
+    }
+
+    /**
+     * Interpolation of the missing values before the computation of the
+     * principal components: average of the surrounding observations or
+     * iterative low-rank imputation (EM-PCA)
+     */
+    public static enum Interpolation {
+        AVERAGE, EM_PCA
+    }
+
     public static final double DEF_NS = .80;
     boolean enabled;
     TimeSelector span;
     double nonMissingThreshold;
+    SvdMethod svdMethod;
+    Interpolation interpolation;
     
     public static Builder builder(){
         return new Builder()
                 .nonMissingThreshold(DEF_NS)
-                .span(TimeSelector.all());
+                .span(TimeSelector.all())
+                .svdMethod(SvdMethod.FULL)
+                .interpolation(Interpolation.AVERAGE);
     }
     
     public static final PrincipalComponentSpec DEFAULT_ENABLED=builder()
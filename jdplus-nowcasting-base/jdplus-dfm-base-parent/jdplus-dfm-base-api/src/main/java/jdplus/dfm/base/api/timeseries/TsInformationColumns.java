@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package jdplus.dfm.base.api.timeseries;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import jdplus.toolkit.base.api.math.matrices.Matrix;
+import jdplus.toolkit.base.api.timeseries.TsDataTable;
+import jdplus.toolkit.base.api.timeseries.TsDomain;
+
+/**
+ * Column-major values of an information set on its (union) domain, with the
+ * observed (non missing) cells of each series. Lower frequency series are put
+ * on the last period of their observations (see TsDataTable.DistributionType.LAST).
+ * The object is immutable; the matrices generated on a given domain are cached
+ *
+ * @author Jean Palate
+ */
+final class TsInformationColumns {
+
+    private final TsDomain domain;
+    private final int nseries;
+    private final double[] values;
+    private final BitSet[] observed;
+    private final Map<TsDomain, Matrix> matrices = new ConcurrentHashMap<>();
+
+    static TsInformationColumns of(TsDataTable table) {
+        TsDomain domain = table.getDomain();
+        int nr = domain.length(), nc = table.getData().size();
+        double[] data = new double[nr * nc];
+        Arrays.fill(data, Double.NaN);
+        BitSet[] obs = new BitSet[nc];
+        for (int c = 0; c < nc; ++c) {
+            obs[c] = new BitSet(nr);
+        }
+        TsDataTable.Cursor cursor = table.cursor(TsDataTable.DistributionType.LAST);
+        for (int c = 0, k = 0; c < nc; ++c) {
+            for (int i = 0; i < nr; ++i, ++k) {
+                cursor.moveTo(i, c);
+                if (cursor.getStatus() == TsDataTable.ValueStatus.PRESENT) {
+                    double v = cursor.getValue();
+                    data[k] = v;
+                    if (!Double.isNaN(v)) {
+                        obs[c].set(i);
+                    }
+                }
+            }
+        }
+        return new TsInformationColumns(domain, nc, data, obs);
+    }
+
+    private TsInformationColumns(TsDomain domain, int nseries, double[] values, BitSet[] observed) {
+        this.domain = domain;
+        this.nseries = nseries;
+        this.values = values;
+        this.observed = observed;
+    }
+
+    TsDomain getDomain() {
+        return domain;
+    }
+
+    int getSeriesCount() {
+        return nseries;
+    }
+
+    /**
+     * Value of a series at a given position of the domain (NaN if missing)
+     *
+     * @param pos
+     * @param series
+     * @return
+     */
+    double get(int pos, int series) {
+        return values[series * domain.length() + pos];
+    }
+
+    /**
+     * Positions (in the domain) of the observations of a series. The returned
+     * bit set must not be modified
+     *
+     * @param series
+     * @return
+     */
+    BitSet observed(int series) {
+        return observed[series];
+    }
+
+    /**
+     * Data corresponding to the given domain (same frequency). Periods outside
+     * the domain of the information set are missing
+     *
+     * @param rdomain
+     * @return
+     */
+    Matrix matrix(TsDomain rdomain) {
+        return matrices.computeIfAbsent(rdomain, this::generate);
+    }
+
+    private Matrix generate(TsDomain rdomain) {
+        int n = domain.length(), nr = rdomain.length();
+        if (rdomain.equals(domain)) {
+            return Matrix.of(values, n, nseries);
+        }
+        double[] data = new double[nr * nseries];
+        Arrays.fill(data, Double.NaN);
+        TsDomain common = domain.intersection(rdomain);
+        if (!common.isEmpty()) {
+            int r0 = rdomain.getStartPeriod().until(common.getStartPeriod());
+            int tr0 = domain.getStartPeriod().until(common.getStartPeriod());
+            int len = common.length();
+            for (int c = 0; c < nseries; ++c) {
+                System.arraycopy(values, tr0 + c * n, data, r0 + c * nr, len);
+            }
+        }
+        return Matrix.of(data, nr, nseries);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package jdplus.dfm.base.api.timeseries;
+
+import java.util.BitSet;
+import jdplus.toolkit.base.api.timeseries.TsDomain;
+
+/**
+ * Comparison of the columnar representations of two information sets (old and
+ * new) containing the same series. The observed cells of the old data are
+ * aligned on the domain of the new data, so that the new figures and the
+ * common figures are obtained by simple operations on bit sets
+ *
+ * @author Jean Palate
+ */
+final class TsInformationDiff {
+
+    private final TsInformationColumns oldColumns, newColumns;
+    /**
+     * Position of the start of the old domain in the new domain
+     */
+    private final int offset;
+
+    TsInformationDiff(TsInformationColumns oldColumns, TsInformationColumns newColumns) {
+        if (oldColumns.getSeriesCount() != newColumns.getSeriesCount()) {
+            throw new IllegalArgumentException("Incompatible information sets");
+        }
+        TsDomain odomain = oldColumns.getDomain(), ndomain = newColumns.getDomain();
+        if (odomain.isEmpty() || ndomain.isEmpty()) {
+            offset = 0;
+        } else if (odomain.getAnnualFrequency() != ndomain.getAnnualFrequency()) {
+            throw new IllegalArgumentException("Incompatible information sets");
+        } else {
+            offset = ndomain.getStartPeriod().until(odomain.getStartPeriod());
+        }
+        this.oldColumns = oldColumns;
+        this.newColumns = newColumns;
+    }
+
+    /**
+     * Domain of the new data. The positions used in the different methods
+     * refer to that domain
+     *
+     * @return
+     */
+    TsDomain getDomain() {
+        return newColumns.getDomain();
+    }
+
+    /**
+     * Position of the start of the old domain in the new domain
+     *
+     * @return
+     */
+    int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Observed cells of the old data, in the new domain (the old observations
+     * outside that domain are dropped)
+     *
+     * @param series
+     * @return
+     */
+    BitSet oldObserved(int series) {
+        BitSet obs = oldColumns.observed(series);
+        int n = newColumns.getDomain().length();
+        if (obs.isEmpty() || n == 0) {
+            return new BitSet();
+        }
+        if (offset <= 0) {
+            return obs.get(-offset, n - offset);
+        }
+        BitSet aligned = new BitSet(n);
+        for (int k = obs.nextSetBit(0); k >= 0 && k + offset < n; k = obs.nextSetBit(k + 1)) {
+            aligned.set(k + offset);
+        }
+        return aligned;
+    }
+
+    /**
+     * New figures: cells observed in the new data and not in the old data
+     *
+     * @param series
+     * @return
+     */
+    BitSet news(int series) {
+        BitSet news = (BitSet) newColumns.observed(series).clone();
+        news.andNot(oldObserved(series));
+        return news;
+    }
+
+    /**
+     * Cells observed in both data sets
+     *
+     * @param series
+     * @return
+     */
+    BitSet common(int series) {
+        BitSet common = (BitSet) newColumns.observed(series).clone();
+        common.and(oldObserved(series));
+        return common;
+    }
+
+    double oldValue(int pos, int series) {
+        return oldColumns.get(pos - offset, series);
+    }
+
+    double newValue(int pos, int series) {
+        return newColumns.get(pos, series);
+    }
+}
@@ -18,12 +18,11 @@ package jdplus.dfm.base.api.timeseries;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import jdplus.dfm.base.api.timeseries.TsInformationUpdates.Update;
 import jdplus.toolkit.base.api.math.matrices.Matrix;
 import jdplus.toolkit.base.api.timeseries.TimeSelector;
 import jdplus.toolkit.base.api.timeseries.TsData;
@@ -65,25 +64,27 @@ public class TsInformationSet {
      * @return
      */
     public TsInformationSet revisedData(TsInformationSet newdata) {
-        List<TsData> ndata = new ArrayList<>();
-        int n = getSeriesCount();
+        TsInformationColumns ocols = columns();
+        TsInformationDiff diff = new TsInformationDiff(ocols, newdata.columns());
+        TsDomain odomain = ocols.getDomain();
+        int n = getSeriesCount(), nlen = diff.getDomain().length(), offset = diff.getOffset();
+        List<TsData> ndata = new ArrayList<>(n);
         for (int i = 0; i < n; ++i) {
             TsData cur = series(i);
-            TsData ncur = newdata.series(i);
-            ncur = TsData.fitToDomain(ncur, cur.getDomain());
+            BitSet obs = ocols.observed(i);
             double[] nvals = null;
-            for (int j = 0; j < cur.length(); ++j) {
-                if (TsUtility.isMissing(cur, j) && !TsUtility.isMissing(ncur, j)) {
+            for (int k = obs.nextSetBit(0); k >= 0; k = obs.nextSetBit(k + 1)) {
+                int pos = k + offset;
+                double y = pos >= 0 && pos < nlen ? diff.newValue(pos, i) : Double.NaN;
+                if (y != ocols.get(k, i)) {
                     if (nvals == null) {
-                        nvals = ncur.getValues().toArray();
+                        nvals = cur.getValues().toArray();
                     }
-                    nvals[j] = Double.NaN;
+                    TsPeriod p = TsPeriod.of(cur.getTsUnit(), odomain.get(k).start());
+                    nvals[cur.getStart().until(p)] = y;
                 }
             }
-            if (nvals != null) {
-                ncur = TsData.ofInternal(ncur.getStart(), nvals);
-            }
-            ndata.add(ncur);
+            ndata.add(nvals == null ? cur : TsData.ofInternal(cur.getStart(), nvals));
         }
         return new TsInformationSet(ndata);
     }
@@ -194,26 +195,21 @@ public class TsInformationSet {
         if (domain.getAnnualFrequency() != tdomain.getAnnualFrequency()) {
             return null;
         }
+        return columns().matrix(domain);
+    }
 
-        int nr = domain.length(), nc = table.getData().size();
-        double[] data = new double[nr * nc];
-        Arrays.fill(data, Double.NaN);
-
-        TsDomain common = tdomain.intersection(domain);
-        int r0 = domain.getStartPeriod().until(common.getStartPeriod()); // del relative to the requested domain
-        int tr0 = tdomain.getStartPeriod().until(common.getStartPeriod()); // del relative to th current domain
-        int trmax = tr0 + common.length();
-        TsDataTable.Cursor cursor = table.cursor(TsDataTable.DistributionType.LAST);
-        for (int i = tr0, j = r0; i < trmax; ++i, ++j) {
-            for (int c = 0; c < nc; ++c) {
-                cursor.moveTo(i, c);
-                TsDataTable.ValueStatus status = cursor.getStatus();
-                if (status == TsDataTable.ValueStatus.PRESENT) {
-                    data[j + c * nr] = cursor.getValue();
-                }
-            }
+    /**
+     * Columnar representation of the data (computed once)
+     *
+     * @return
+     */
+    TsInformationColumns columns() {
+        TsInformationColumns cols = columns;
+        if (cols == null) {
+            cols = TsInformationColumns.of(table);
+            columns = cols;
         }
-        return Matrix.of(data, nr, nc);
+        return cols;
     }
 
     /**
@@ -233,29 +229,21 @@ public class TsInformationSet {
             return null;
         }
         TsInformationUpdates updates = new TsInformationUpdates();
+        TsInformationDiff diff = new TsInformationDiff(columns(), ndata.columns());
+        TsDomain domain = diff.getDomain();
         for (int i = 0; i < n; ++i) {
-            TsData olds = series(i), news = ndata.series(i);
-            TsPeriod start = news.getStart();
-            int del = olds.getStart().until(start);
-            for (int j = 0; j < news.length(); ++j) {
-                double y = news.getValue(j);
-                if (!Double.isNaN(y)) {
-                    int k = j + del;
-                    if (k < 0 || k >= olds.length() || TsUtility.isMissing(olds, k)) {
-                        updates.addNews(new Update(start.plus(j), i, y));
-                    }
-                }
+            TsUnit unit = ndata.series(i).getTsUnit();
+            BitSet news = diff.news(i);
+            for (int k = news.nextSetBit(0); k >= 0; k = news.nextSetBit(k + 1)) {
+                updates.addNews(TsPeriod.of(unit, domain.get(k).start()), i, diff.newValue(k, i));
             }
 
             // Calculates revisions
-            start = olds.getStart();
-            TsData newFit = TsData.fitToDomain(news, olds.getDomain());
-            for (int j = 0; j < olds.length(); ++j) {
-                double y = newFit.getValue(j), fy = olds.getValue(j);
-                if (!Double.isNaN(y)
-                        && !Double.isNaN(fy)
-                        && y != olds.getValue(j)) {
-                    updates.addRevision(new Update(start.plus(j), i, y, fy));
+            BitSet common = diff.common(i);
+            for (int k = common.nextSetBit(0); k >= 0; k = common.nextSetBit(k + 1)) {
+                double y = diff.newValue(k, i), fy = diff.oldValue(k, i);
+                if (y != fy) {
+                    updates.addRevision(TsPeriod.of(unit, domain.get(k).start()), i, y, fy);
                 }
             }
         }
@@ -329,4 +317,5 @@ public class TsInformationSet {
     }
 
     private final TsDataTable table;
+    private volatile TsInformationColumns columns;
 }
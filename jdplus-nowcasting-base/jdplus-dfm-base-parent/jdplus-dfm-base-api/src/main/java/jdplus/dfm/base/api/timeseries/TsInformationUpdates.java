@@ -16,13 +16,19 @@
  */
 package jdplus.dfm.base.api.timeseries;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import jdplus.toolkit.base.api.timeseries.TsDomain;
 import jdplus.toolkit.base.api.timeseries.TsPeriod;
 
 /**
+ * News and revisions between two information sets. The updates are stored in
+ * arrays (periods, series, observations, forecasts); the Update objects are
+ * views on them
  *
  * @author Jean Palate
  */
@@ -31,32 +37,52 @@ public class TsInformationUpdates {
     /**
      *
      */
-    @lombok.AllArgsConstructor
     public static class Update {
 
+        private final Store store;
+        private final int index;
+
+        private Update(final Store store, final int index) {
+            this.store = store;
+            this.index = index;
+        }
+
+        public Update(final TsPeriod period, final int series, final double y) {
+            this(period, series, y, y);
+        }
+
+        public Update(final TsPeriod period, final int series, final double y, final double forecast) {
+            this.store = new Store(1);
+            this.index = 0;
+            store.add(period, series, y, forecast);
+        }
+
         /**
          *
+         * @return
          */
-        @lombok.Getter
-        private final TsPeriod period;
+        public TsPeriod getPeriod() {
+            return store.periods[index];
+        }
+
         /**
          *
+         * @return
          */
-        @lombok.Getter
-        private final int series;
+        public int getSeries() {
+            return store.series[index];
+        }
 
-        @lombok.Getter
-        private final double observation;
+        public double getObservation() {
+            return store.observations[index];
+        }
 
-        @lombok.Getter
-        @lombok.Setter
-        private double forecast;
+        public double getForecast() {
+            return store.forecasts[index];
+        }
 
-        public Update(final TsPeriod period, final int series, final double y) {
-            this.period = period;
-            this.series = series;
-            this.observation = y;
-            this.forecast = y;
+        public void setForecast(double forecast) {
+            store.forecasts[index] = forecast;
         }
 
         /**
@@ -64,24 +90,90 @@ public class TsInformationUpdates {
          * @return
          */
         public double getNews() {
-            return observation - forecast;
+            return store.observations[index] - store.forecasts[index];
+        }
+
+    }
+
+    /**
+     * Growable arrays of updates
+     */
+    private static final class Store extends AbstractList<Update> {
+
+        private int n;
+        private TsPeriod[] periods;
+        private int[] series;
+        private double[] observations, forecasts;
+
+        private Store(int capacity) {
+            periods = new TsPeriod[capacity];
+            series = new int[capacity];
+            observations = new double[capacity];
+            forecasts = new double[capacity];
+        }
+
+        private void add(TsPeriod period, int s, double y, double fy) {
+            if (n == periods.length) {
+                int capacity = Math.max(8, 2 * n);
+                periods = Arrays.copyOf(periods, capacity);
+                series = Arrays.copyOf(series, capacity);
+                observations = Arrays.copyOf(observations, capacity);
+                forecasts = Arrays.copyOf(forecasts, capacity);
+            }
+            periods[n] = period;
+            series[n] = s;
+            observations[n] = y;
+            forecasts[n++] = fy;
         }
 
+        @Override
+        public Update get(int index) {
+            Objects.checkIndex(index, n);
+            return new Update(this, index);
+        }
+
+        @Override
+        public int size() {
+            return n;
+        }
     }
 
-    private final List<Update> news = new ArrayList<>();
-    private final List<Update> revisions = new ArrayList<>();
+    private final Store news = new Store(0);
+    private final Store revisions = new Store(0);
 
     /**
      *
      * @param update
      */
     public void addNews(Update update) {
-        news.add(update);
+        news.add(update.getPeriod(), update.getSeries(), update.getObservation(), update.getForecast());
+    }
+
+    /**
+     * Adds a new figure (without forecast)
+     *
+     * @param period
+     * @param series
+     * @param y
+     */
+    public void addNews(TsPeriod period, int series, double y) {
+        news.add(period, series, y, y);
     }
 
     public void addRevision(Update update) {
-        revisions.add(update);
+        revisions.add(update.getPeriod(), update.getSeries(), update.getObservation(), update.getForecast());
+    }
+
+    /**
+     * Adds a revision
+     *
+     * @param period
+     * @param series
+     * @param y The new figure
+     * @param fy The old figure
+     */
+    public void addRevision(TsPeriod period, int series, double y, double fy) {
+        revisions.add(period, series, y, fy);
     }
 
     /**
@@ -91,14 +183,10 @@ public class TsInformationUpdates {
      */
     public TsPeriod firstUpdate(int freq) {
         TsPeriod first = null;
-        for (Update update : news) {
-            if (first == null) {
-                first = TsUtility.endPeriod(update.period, freq);
-            } else {
-                TsPeriod cur = TsUtility.endPeriod(update.period, freq);
-                if (cur.isBefore(first)) {
-                    first = cur;
-                }
+        for (int i = 0; i < news.n; ++i) {
+            TsPeriod cur = TsUtility.endPeriod(news.periods[i], freq);
+            if (first == null || cur.isBefore(first)) {
+                first = cur;
             }
         }
         return first;
@@ -111,14 +199,10 @@ public class TsInformationUpdates {
      */
     public TsPeriod lastUpdate(int freq) {
         TsPeriod last = null;
-        for (Update update : news) {
-            if (last == null) {
-                last = TsUtility.endPeriod(update.period, freq);
-            } else {
-                TsPeriod cur = TsUtility.endPeriod(update.period, freq);
-                if (cur.isAfter(last)) {
-                    last = cur;
-                }
+        for (int i = 0; i < news.n; ++i) {
+            TsPeriod cur = TsUtility.endPeriod(news.periods[i], freq);
+            if (last == null || cur.isAfter(last)) {
+                last = cur;
             }
         }
         return last;
@@ -134,7 +218,7 @@ public class TsInformationUpdates {
         TsPeriod first = null;
         TsPeriod last = null;
         for (Update update : updates) {
-            TsPeriod cur = TsUtility.lastPeriod(update.period, freq);
+            TsPeriod cur = TsUtility.lastPeriod(update.getPeriod(), freq);
             if (first == null || cur.isBefore(first)) {
                 first = cur;
             }
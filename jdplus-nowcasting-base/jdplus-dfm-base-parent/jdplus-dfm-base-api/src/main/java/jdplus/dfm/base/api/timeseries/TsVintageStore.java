@@ -0,0 +1,258 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package jdplus.dfm.base.api.timeseries;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jdplus.toolkit.base.api.timeseries.TsData;
+import jdplus.toolkit.base.api.timeseries.TsPeriod;
+import jdplus.toolkit.base.api.timeseries.TsUnit;
+import jdplus.toolkit.base.api.util.IntList;
+
+/**
+ * Repository of successive vintages of the same panel of series, stored in a
+ * binary file that is memory-mapped when it is read. The file contains:
+ * <ul>
+ * <li>the header (number of series and of vintages, frequency of each
+ * series)</li>
+ * <li>the release dates of the vintages</li>
+ * <li>a directory giving, for each vintage and each series, the start, the
+ * length and the position of the values</li>
+ * <li>the values (missing values are NaN)</li>
+ * </ul>
+ * A series that is unchanged in comparison with the previous vintage refers to
+ * the values of that vintage, so that only the modified series are stored for
+ * each vintage. The vintages are decoded on demand. The size of the file is
+ * limited to 2GB.
+ *
+ * @author Jean Palate
+ */
+public final class TsVintageStore {
+
+    private static final int MAGIC = 0x44464D56, VERSION = 1;
+    private static final int HEADER = 16, ENTRY = 20;
+
+    /**
+     * Writes the vintages in a new file (an existing file is replaced)
+     *
+     * @param file
+     * @param dates Release dates of the vintages (increasing order)
+     * @param vintages The information sets (same series)
+     * @throws IOException
+     */
+    public static void write(Path file, LocalDate[] dates, List<TsInformationSet> vintages) throws IOException {
+        int nv = vintages.size();
+        if (dates.length != nv) {
+            throw new IllegalArgumentException("The number of dates and of vintages must be the same");
+        }
+        int ns = nv == 0 ? 0 : vintages.get(0).getSeriesCount();
+        int[] freqs = new int[ns];
+        for (int j = 0; j < ns; ++j) {
+            freqs[j] = vintages.get(0).series(j).getDomain().getAnnualFrequency();
+        }
+        long dataStart = HEADER + 4L * ns + 8L * nv + (long) ENTRY * nv * ns;
+        ByteBuffer dir = ByteBuffer.allocate(Math.toIntExact(dataStart));
+        dir.putInt(MAGIC).putInt(VERSION).putInt(ns).putInt(nv);
+        for (int j = 0; j < ns; ++j) {
+            dir.putInt(freqs[j]);
+        }
+        for (int i = 0; i < nv; ++i) {
+            dir.putLong(dates[i].toEpochDay());
+        }
+        List<double[]> data = new ArrayList<>();
+        double[][] prev = new double[ns][];
+        long[] prevStart = new long[ns], prevPos = new long[ns];
+        long pos = dataStart;
+        for (int i = 0; i < nv; ++i) {
+            TsInformationSet vintage = vintages.get(i);
+            if (vintage.getSeriesCount() != ns) {
+                throw new IllegalArgumentException("All the vintages must contain the same series");
+            }
+            for (int j = 0; j < ns; ++j) {
+                TsData s = vintage.series(j);
+                if (s.getDomain().getAnnualFrequency() != freqs[j]) {
+                    throw new IllegalArgumentException("The frequency of a series changed between two vintages");
+                }
+                long start = s.getStart().start().toLocalDate().toEpochDay();
+                double[] values = s.getValues().toArray();
+                if (prev[j] == null || start != prevStart[j] || !Arrays.equals(values, prev[j])) {
+                    prev[j] = values;
+                    prevStart[j] = start;
+                    prevPos[j] = pos;
+                    data.add(values);
+                    pos += 8L * values.length;
+                }
+                dir.putLong(start).putInt(values.length).putLong(prevPos[j]);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            dir.flip();
+            writeFully(channel, dir);
+            for (double[] values : data) {
+                ByteBuffer buffer = ByteBuffer.allocate(8 * values.length);
+                buffer.asDoubleBuffer().put(values);
+                writeFully(channel, buffer);
+            }
+        }
+    }
+
+    /**
+     * Writes the pseudo real-time vintages generated from the complete data
+     * along a publication calendar (see TsInformationSet.generateInformation)
+     *
+     * @param file
+     * @param data The complete data
+     * @param delays Publication delays (in days) of the series. May be null
+     * @param calendar Release dates (increasing order)
+     * @throws IOException
+     */
+    public static void write(Path file, TsInformationSet data, IntList delays, LocalDate[] calendar) throws IOException {
+        List<TsInformationSet> vintages = new ArrayList<>(calendar.length);
+        for (LocalDate date : calendar) {
+            vintages.add(data.generateInformation(delays, date));
+        }
+        write(file, calendar, vintages);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Opens an existing store (read only)
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static TsVintageStore open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Invalid vintage store: " + file);
+            }
+            return new TsVintageStore(buffer);
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int nseries, nvintages;
+    private final TsUnit[] units;
+
+    private TsVintageStore(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.nseries = buffer.getInt(8);
+        this.nvintages = buffer.getInt(12);
+        this.units = new TsUnit[nseries];
+        for (int j = 0; j < nseries; ++j) {
+            units[j] = TsUnit.ofAnnualFrequency(buffer.getInt(HEADER + 4 * j));
+        }
+    }
+
+    public int getSeriesCount() {
+        return nseries;
+    }
+
+    public int getVintagesCount() {
+        return nvintages;
+    }
+
+    /**
+     * Release date of a vintage
+     *
+     * @param vintage
+     * @return
+     */
+    public LocalDate getDate(int vintage) {
+        return LocalDate.ofEpochDay(buffer.getLong(datesPosition() + 8 * vintage));
+    }
+
+    public LocalDate[] dates() {
+        LocalDate[] dates = new LocalDate[nvintages];
+        for (int i = 0; i < nvintages; ++i) {
+            dates[i] = getDate(i);
+        }
+        return dates;
+    }
+
+    /**
+     * Last vintage released on or before the given date
+     *
+     * @param date
+     * @return The position of the vintage or -1 if there is no such vintage
+     */
+    public int search(LocalDate date) {
+        long day = date.toEpochDay();
+        int lo = 0, hi = nvintages - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (buffer.getLong(datesPosition() + 8 * mid) <= day) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Information set of a given vintage
+     *
+     * @param vintage
+     * @return
+     */
+    public TsInformationSet vintage(int vintage) {
+        List<TsData> series = new ArrayList<>(nseries);
+        for (int j = 0; j < nseries; ++j) {
+            series.add(series(vintage, j));
+        }
+        return new TsInformationSet(series);
+    }
+
+    /**
+     * A given series in a given vintage
+     *
+     * @param vintage
+     * @param series
+     * @return
+     */
+    public TsData series(int vintage, int series) {
+        int entry = datesPosition() + 8 * nvintages + ENTRY * (vintage * nseries + series);
+        TsPeriod start = TsPeriod.of(units[series], LocalDate.ofEpochDay(buffer.getLong(entry)));
+        int n = buffer.getInt(entry + 8);
+        int pos = Math.toIntExact(buffer.getLong(entry + 12));
+        double[] values = new double[n];
+        buffer.slice(pos, 8 * n).asDoubleBuffer().get(values);
+        return TsData.ofInternal(start, values);
+    }
+
+    private int datesPosition() {
+        return HEADER + 4 * nseries;
+    }
+}
@@ -62,6 +62,23 @@ public class TsInformationSetTest {
         assertTrue(M.row(100).allMatch(x->Double.isNaN(x)));
     }
     
+    @Test
+    public void testCachedMatrix() {
+                
+        TsInformationSet infoSet=new TsInformationSet(SERIES);
+        TsDomain domain = TsDomain.of(TsPeriod.monthly(1975, 1), 300);
+        Matrix M = infoSet.generateMatrix(domain);
+        assertSame(M, infoSet.generateMatrix(domain));
+        TsData s = SERIES.get(0);
+        int del = domain.getStartPeriod().until(s.getStart());
+        for (int i = 0; i < s.length(); ++i) {
+            int j = i + del;
+            if (j >= 0 && j < domain.length()) {
+                assertEquals(s.getValue(i), M.get(j, 0), 0);
+            }
+        }
+    }
+    
     @Test
     public void testDomain() {
                 
@@ -79,4 +79,26 @@ public class TsInformationUpdatesTest {
         }
     }
 
+    @org.junit.Test
+    public void testRevisions() {
+
+        List<TsData> rseries = new ArrayList<>(SERIES);
+        double[] q = SERIES.get(3).getValues().toArray();
+        q[10] += 1;
+        rseries.set(3, TsData.ofInternal(SERIES.get(3).getStart(), q));
+        TsInformationSet infoSet = new TsInformationSet(OSERIES);
+        TsInformationSet ninfoSet = new TsInformationSet(rseries);
+        TsInformationUpdates updates = infoSet.updates(ninfoSet);
+        assertEquals(24, updates.news().size());
+        assertEquals(1, updates.revisions().size());
+        TsInformationUpdates.Update rev = updates.revisions().get(0);
+        assertEquals(3, rev.getSeries());
+        assertEquals(SERIES.get(3).getStart().plus(10), rev.getPeriod());
+        assertEquals(1, rev.getNews(), 1e-9);
+
+        TsInformationSet rinfoSet = infoSet.revisedData(ninfoSet);
+        assertEquals(q[10], rinfoSet.series(3).getValue(10), 0);
+        assertEquals(rinfoSet.series(0), infoSet.series(0));
+    }
+
 }
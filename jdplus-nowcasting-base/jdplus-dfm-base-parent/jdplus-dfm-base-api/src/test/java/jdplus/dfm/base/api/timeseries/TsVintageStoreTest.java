@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package jdplus.dfm.base.api.timeseries;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import jdplus.toolkit.base.api.util.IntList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class TsVintageStoreTest {
+
+    public TsVintageStoreTest() {
+    }
+
+    @Test
+    public void testPseudoRealTime() throws IOException {
+        TsInformationSet data = new TsInformationSet(TsInformationSetTest.SERIES);
+        IntList delays = new IntList();
+        for (int i = 0; i < data.getSeriesCount(); ++i) {
+            delays.add(15 * i);
+        }
+        LocalDate[] calendar = data.generatePublicationCalendar(delays, LocalDate.of(2010, 1, 1));
+        Path file = Files.createTempFile("vintages", ".bin");
+        try {
+            TsVintageStore.write(file, data, delays, calendar);
+            TsVintageStore store = TsVintageStore.open(file);
+            assertEquals(calendar.length, store.getVintagesCount());
+            assertEquals(data.getSeriesCount(), store.getSeriesCount());
+            for (int i = 0; i < calendar.length; i += 7) {
+                assertEquals(calendar[i], store.getDate(i));
+                assertEquals(i, store.search(calendar[i]));
+                TsInformationSet vintage = data.generateInformation(delays, calendar[i]);
+                TsInformationSet svintage = store.vintage(i);
+                for (int j = 0; j < data.getSeriesCount(); ++j) {
+                    assertEquals(vintage.series(j), svintage.series(j));
+                }
+            }
+            assertEquals(-1, store.search(calendar[0].minusDays(1)));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.math.matrices.LowerTriangularMatrix;
+import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
+import jdplus.toolkit.base.core.ssf.ISsfLoading;
+import jdplus.toolkit.base.core.ssf.State;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsfData;
+import jdplus.toolkit.base.core.ssf.multivariate.ISsfErrors;
+import jdplus.toolkit.base.core.ssf.multivariate.ISsfMeasurements;
+import jdplus.toolkit.base.core.ssf.multivariate.MultivariateOrdinaryFilter;
+import jdplus.toolkit.base.core.ssf.multivariate.MultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import jdplus.toolkit.base.core.stats.likelihood.Likelihood;
+import nbbrd.design.Development;
+
+/**
+ * Likelihood of a multivariate state space model with independent measurement
+ * errors, computed on the collapsed observations (Jungbacker and Koopman).
+ * For each period, the observations are projected on the row space of the
+ * (weighted) loadings. The filter is applied on the projected observations
+ * (of size at most the state dimension) and the likelihood is completed by the
+ * contribution of the orthogonal part, which doesn't depend on the states.
+ * The result is identical to the likelihood of the initial model.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class CollapsedFilter {
+
+    private static final double EPS = 1e-12;
+
+    private final IMultivariateSsf ssf;
+
+    public CollapsedFilter(IMultivariateSsf ssf) {
+        this.ssf = ssf;
+    }
+
+    /**
+     * Computes the likelihood
+     *
+     * @param data
+     * @param scalingfactor
+     * @return The likelihood or null if the model can't be collapsed (time
+     * varying or correlated measurements, null variances)
+     */
+    public Likelihood likelihood(IMultivariateSsfData data, boolean scalingfactor) {
+        ISsfMeasurements measurements = ssf.measurements();
+        if (!measurements.isTimeInvariant()) {
+            return null;
+        }
+        ISsfErrors errors = measurements.errors();
+        if (errors == null || !errors.areIndependent()) {
+            return null;
+        }
+        int nvars = measurements.getCount(), dim = ssf.getStateDim(), nobs = data.getObsCount();
+        FastMatrix H = FastMatrix.square(nvars);
+        errors.H(0, H);
+        double[] h = H.diagonal().toArray();
+        for (int i = 0; i < nvars; ++i) {
+            if (h[i] <= 0) {
+                return null;
+            }
+        }
+        double[][] Z = new double[nvars][];
+        int[][] nz = new int[nvars][];
+        DataBlock z = DataBlock.make(dim);
+        for (int i = 0; i < nvars; ++i) {
+            z.set(0);
+            measurements.loading(i).Z(0, z);
+            Z[i] = z.toArray();
+            nz[i] = nonZero(Z[i]);
+        }
+
+        // collapsing of the observations
+        Map<BitSet, Pattern> patterns = new HashMap<>();
+        Pattern[] tpatterns = new Pattern[nobs];
+        double[][] ystar = new double[nobs][];
+        int rmax = 1, n = 0;
+        double ssq = 0, ldet = 0;
+        double[] e = new double[nobs * nvars];
+        int ne = 0;
+        for (int t = 0; t < nobs; ++t) {
+            BitSet obs = new BitSet(nvars);
+            for (int i = 0; i < nvars; ++i) {
+                if (!data.isMissing(t, i)) {
+                    obs.set(i);
+                }
+            }
+            if (obs.isEmpty()) {
+                continue;
+            }
+            Pattern pattern = patterns.computeIfAbsent(obs, o -> new Pattern(o, Z, nz, h, dim));
+            tpatterns[t] = pattern;
+            // g = R'(RR')^-1 y* (0 when the observations don't load on the states)
+            double[] g = new double[dim];
+            if (pattern.r > 0) {
+                if (pattern.r > rmax) {
+                    rmax = pattern.r;
+                }
+                // b = Z'H^-1 y
+                double[] b = new double[dim];
+                for (int i = obs.nextSetBit(0); i >= 0; i = obs.nextSetBit(i + 1)) {
+                    double yi = data.get(t, i) / h[i];
+                    double[] zi = Z[i];
+                    for (int k : nz[i]) {
+                        b[k] += yi * zi[k];
+                    }
+                }
+                // y* = (RR')^-1 R b
+                DataBlock y = DataBlock.make(pattern.r);
+                for (int k = 0; k < pattern.r; ++k) {
+                    y.set(k, dot(pattern.R[k], b));
+                }
+                pattern.solve(y);
+                ystar[t] = y.toArray();
+                pattern.solve(y);
+                for (int k = 0; k < pattern.r; ++k) {
+                    double yk = y.get(k);
+                    double[] rk = pattern.R[k];
+                    for (int j = 0; j < dim; ++j) {
+                        g[j] += yk * rk[j];
+                    }
+                }
+            }
+            // orthogonal part: e = H^-1/2 (y - Z g)
+            for (int i = obs.nextSetBit(0); i >= 0; i = obs.nextSetBit(i + 1)) {
+                double[] zi = Z[i];
+                double yi = data.get(t, i);
+                for (int k : nz[i]) {
+                    yi -= zi[k] * g[k];
+                }
+                yi /= Math.sqrt(h[i]);
+                ssq += yi * yi;
+                e[ne++] = yi;
+            }
+            n += pattern.n - pattern.r;
+            ldet += pattern.ldet;
+        }
+
+        // filtering of the collapsed observations
+        FastMatrix Y = FastMatrix.make(nobs, rmax);
+        Y.set(Double.NaN);
+        for (int t = 0; t < nobs; ++t) {
+            if (ystar[t] != null) {
+                Y.row(t).range(0, ystar[t].length).copyFrom(ystar[t], 0);
+            }
+        }
+        MultivariateSsf cssf = new MultivariateSsf(ssf.initialization(), ssf.dynamics(), new CollapsedMeasurements(tpatterns, rmax));
+        MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
+        PredictionErrorsDecompositionEx results = new PredictionErrorsDecompositionEx();
+        filter.process(cssf, new SsfMatrix(Y), results);
+
+        DoubleSeq cres = results.residuals();
+        double[] res = new double[cres.length() + ne];
+        cres.copyTo(res, 0);
+        System.arraycopy(e, 0, res, cres.length(), ne);
+        return Likelihood.builder(results.getObsCount() + n)
+                .scalingFactor(scalingfactor)
+                .ssqErr(results.getSsqErr() + ssq)
+                .residuals(DoubleSeq.of(res))
+                .logDeterminant(results.getLogDeterminant() + ldet).build();
+    }
+
+    private static int[] nonZero(double[] z) {
+        int n = 0;
+        for (int i = 0; i < z.length; ++i) {
+            if (z[i] != 0) {
+                ++n;
+            }
+        }
+        int[] nz = new int[n];
+        for (int i = 0, j = 0; i < z.length; ++i) {
+            if (z[i] != 0) {
+                nz[j++] = i;
+            }
+        }
+        return nz;
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double s = 0;
+        for (int i = 0; i < x.length; ++i) {
+            s += x[i] * y[i];
+        }
+        return s;
+    }
+
+    /**
+     * Collapsing information for a given set of observed variables.
+     * G = Z'H^-1Z = R'R (pivoted Cholesky, R is r x dim, with r the rank of G)
+     */
+    private static class Pattern {
+
+        private final int n, r;
+        private final double ldet;
+        private final double[][] R;
+        private final FastMatrix L;
+
+        private Pattern(BitSet obs, double[][] Z, int[][] nz, double[] h, int dim) {
+            n = obs.cardinality();
+            double[][] G = new double[dim][dim];
+            double ld = 0;
+            for (int i = obs.nextSetBit(0); i >= 0; i = obs.nextSetBit(i + 1)) {
+                double[] zi = Z[i];
+                double hi = h[i];
+                ld += Math.log(hi);
+                for (int k : nz[i]) {
+                    double zk = zi[k] / hi;
+                    for (int l : nz[i]) {
+                        G[k][l] += zk * zi[l];
+                    }
+                }
+            }
+            ldet = ld;
+            // pivoted Cholesky (outer product form)
+            double dmax = 0;
+            for (int k = 0; k < dim; ++k) {
+                if (G[k][k] > dmax) {
+                    dmax = G[k][k];
+                }
+            }
+            double tol = EPS * dmax;
+            double[][] rows = new double[Math.min(n, dim)][];
+            int rank = 0;
+            while (rank < rows.length) {
+                int piv = -1;
+                double gmax = tol;
+                for (int k = 0; k < dim; ++k) {
+                    if (G[k][k] > gmax) {
+                        gmax = G[k][k];
+                        piv = k;
+                    }
+                }
+                if (piv < 0) {
+                    break;
+                }
+                double s = Math.sqrt(gmax);
+                double[] l = new double[dim];
+                for (int k = 0; k < dim; ++k) {
+                    l[k] = G[k][piv] / s;
+                }
+                for (int k = 0; k < dim; ++k) {
+                    if (l[k] != 0) {
+                        for (int j = 0; j < dim; ++j) {
+                            G[k][j] -= l[k] * l[j];
+                        }
+                    }
+                }
+                G[piv][piv] = 0;
+                rows[rank++] = l;
+            }
+            r = rank;
+            R = new double[r][];
+            System.arraycopy(rows, 0, R, 0, r);
+            if (r > 0) {
+                L = FastMatrix.square(r);
+                for (int i = 0; i < r; ++i) {
+                    for (int j = 0; j <= i; ++j) {
+                        double q = dot(R[i], R[j]);
+                        L.set(i, j, q);
+                        L.set(j, i, q);
+                    }
+                }
+                SymmetricMatrix.lcholesky(L, State.ZERO);
+            } else {
+                L = FastMatrix.EMPTY;
+            }
+        }
+
+        /**
+         * y = (RR')^-1 y
+         *
+         * @param y
+         */
+        private void solve(DataBlock y) {
+            LowerTriangularMatrix.solveLx(L, y, State.ZERO);
+            LowerTriangularMatrix.solvexL(L, y, State.ZERO);
+        }
+    }
+
+    /**
+     * Measurements of the collapsed model: y*(t) = R(t) a(t) + e*(t), with
+     * var(e*(t)) = I
+     */
+    private static class CollapsedMeasurements implements ISsfMeasurements {
+
+        private final Pattern[] patterns;
+        private final int count;
+
+        private CollapsedMeasurements(Pattern[] patterns, int count) {
+            this.patterns = patterns;
+            this.count = count;
+        }
+
+        @Override
+        public boolean isTimeInvariant() {
+            return false;
+        }
+
+        @Override
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public ISsfLoading loading(int equation) {
+            return new Loading(equation);
+        }
+
+        @Override
+        public ISsfErrors errors() {
+            return MeasurementsErrorC.of(1);
+        }
+
+        private double[] row(int pos, int var) {
+            Pattern p = patterns[pos];
+            return p != null && var < p.r ? p.R[var] : null;
+        }
+
+        private class Loading implements ISsfLoading {
+
+            private final int var;
+
+            private Loading(int var) {
+                this.var = var;
+            }
+
+            @Override
+            public double ZX(int pos, DataBlock m) {
+                double[] z = row(pos, var);
+                if (z == null) {
+                    return 0;
+                }
+                double s = 0;
+                for (int i = 0; i < z.length; ++i) {
+                    if (z[i] != 0) {
+                        s += z[i] * m.get(i);
+                    }
+                }
+                return s;
+            }
+
+            @Override
+            public void Z(int pos, DataBlock z) {
+                double[] r = row(pos, var);
+                if (r == null) {
+                    z.set(0);
+                } else {
+                    z.copyFrom(r, 0);
+                }
+            }
+
+            @Override
+            public double ZVZ(int pos, FastMatrix V) {
+                double[] z = row(pos, var);
+                if (z == null) {
+                    return 0;
+                }
+                double s = 0;
+                for (int i = 0; i < z.length; ++i) {
+                    if (z[i] != 0) {
+                        double q = 0;
+                        for (int j = 0; j < z.length; ++j) {
+                            if (z[j] != 0) {
+                                q += V.get(i, j) * z[j];
+                            }
+                        }
+                        s += z[i] * q;
+                    }
+                }
+                return s;
+            }
+
+            @Override
+            public void VpZdZ(int pos, FastMatrix V, double d) {
+                double[] z = row(pos, var);
+                if (z != null) {
+                    V.addXaXt(d, DataBlock.of(z));
+                }
+            }
+
+            @Override
+            public void XpZd(int pos, DataBlock x, double d) {
+                double[] z = row(pos, var);
+                if (z != null) {
+                    x.addAY(d, DataBlock.of(z));
+                }
+            }
+
+            @Override
+            public boolean isTimeInvariant() {
+                return false;
+            }
+        }
+    }
+}
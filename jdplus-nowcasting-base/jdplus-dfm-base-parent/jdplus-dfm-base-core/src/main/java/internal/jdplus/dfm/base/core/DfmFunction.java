@@ -36,7 +36,8 @@ public class DfmFunction implements LikelihoodFunction<Likelihood> {
 
         private final IDfmMapping mapping;
         private final IMultivariateSsfData data;
-        private boolean log = false, mt = false, sym = false;
+        private boolean log = false, mt = false, sym = false, collapsed = false, univariate = false, agradient = false, steadyState = false;
+        private int cacheSize = InitialCovarianceCache.DEF_SIZE;
 
         private Builder(final IMultivariateSsfData data, final IDfmMapping mapping) {
             this.data = data;
@@ -58,6 +59,68 @@ public class DfmFunction implements LikelihoodFunction<Likelihood> {
             return this;
         }
 
+        /**
+         * Computes the likelihood on the collapsed observations. Much faster
+         * for large panels (the cost of the filter doesn't depend on the
+         * number of series), with identical results.
+         *
+         * @param collapsed
+         * @return
+         */
+        public Builder collapsed(boolean collapsed) {
+            this.collapsed = collapsed;
+            return this;
+        }
+
+        /**
+         * Uses the univariate treatment of the observations (scalar updates)
+         *
+         * @param univariate
+         * @return
+         */
+        public Builder univariate(boolean univariate) {
+            this.univariate = univariate;
+            return this;
+        }
+
+        /**
+         * Re-uses the gains of the filter when its steady state is reached
+         * (time invariant models, periodic pattern of observations). Implies
+         * the univariate treatment of the observations
+         *
+         * @param steadyState
+         * @return
+         */
+        public Builder steadyState(boolean steadyState) {
+            this.steadyState = steadyState;
+            return this;
+        }
+
+        /**
+         * Computes the gradient of the function analytically (score of the
+         * likelihood), using one filter/smoother pass instead of one
+         * filtering by parameter. The hessian is still computed numerically
+         *
+         * @param agradient
+         * @return
+         */
+        public Builder analyticalGradient(boolean agradient) {
+            this.agradient = agradient;
+            return this;
+        }
+
+        /**
+         * Size of the cache of the initial covariances (unconditional
+         * initialization). 0 to disable the cache
+         *
+         * @param size
+         * @return
+         */
+        public Builder initialCovarianceCacheSize(int size) {
+            this.cacheSize = size;
+            return this;
+        }
+
         public DfmFunction build() {
             return new DfmFunction(this);
         }
@@ -69,7 +132,13 @@ public class DfmFunction implements LikelihoodFunction<Likelihood> {
 
     private final IDfmMapping mapping; // mapping from an array of double to an object S
     private final IMultivariateSsfData data;
-    private final boolean log, mt, sym;
+    private final boolean log, mt, sym, collapsed, univariate, agradient, steadyState;
+    private final InitialCovarianceCache cache;
+    // workspaces of the evaluations without/with residuals (one by thread)
+    private final ThreadLocal<PredictionErrorsDecompositionEx> workspace
+            = ThreadLocal.withInitial(() -> new PredictionErrorsDecompositionEx(false));
+    private final ThreadLocal<PredictionErrorsDecompositionEx> rworkspace
+            = ThreadLocal.withInitial(() -> new PredictionErrorsDecompositionEx(true));
 
     private DfmFunction(Builder builder) {
         this.data = builder.data;
@@ -77,11 +146,16 @@ public class DfmFunction implements LikelihoodFunction<Likelihood> {
         this.log = builder.log;
         this.mt = builder.mt;
         this.sym = builder.sym;
+        this.collapsed = builder.collapsed;
+        this.univariate = builder.univariate;
+        this.agradient = builder.agradient;
+        this.steadyState = builder.steadyState;
+        this.cache = builder.cacheSize > 0 ? new InitialCovarianceCache(builder.cacheSize) : null;
     }
 
     @Override
     public DfmFunctionPoint evaluate(DoubleSeq parameters) {
-        return new DfmFunctionPoint(this, parameters);
+        return new DfmFunctionPoint(this, parameters, false);
     }
 
     /**
@@ -95,7 +169,18 @@ public class DfmFunction implements LikelihoodFunction<Likelihood> {
 
     @Override
     public DfmFunctionPoint ssqEvaluate(DoubleSeq parameters) {
-        return new DfmFunctionPoint(this, parameters);
+        return new DfmFunctionPoint(this, parameters, true);
+    }
+
+    /**
+     * Re-usable filtering results, specific to the current thread. The
+     * likelihood built from them doesn't share their buffers
+     *
+     * @param residuals True if the residuals must be stored
+     * @return
+     */
+    PredictionErrorsDecompositionEx workspace(boolean residuals) {
+        return residuals ? rworkspace.get() : workspace.get();
     }
 
     /**
@@ -127,4 +212,30 @@ public class DfmFunction implements LikelihoodFunction<Likelihood> {
         return log;
     }
 
+    public boolean isCollapsed() {
+        return collapsed;
+    }
+
+    public boolean isUnivariate() {
+        return univariate;
+    }
+
+    /**
+     * Cache of the unconditional initial covariances, shared by the
+     * evaluations of the function
+     *
+     * @return May be null
+     */
+    public InitialCovarianceCache getInitialCovarianceCache() {
+        return cache;
+    }
+
+    public boolean isSteadyState() {
+        return steadyState;
+    }
+
+    public boolean isAnalyticalGradient() {
+        return agradient;
+    }
+
 }
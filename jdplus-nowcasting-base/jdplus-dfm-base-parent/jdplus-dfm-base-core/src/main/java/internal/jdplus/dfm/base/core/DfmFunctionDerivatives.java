@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.dfm.base.core.DfmGradient;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.functions.IFunction;
+import jdplus.toolkit.base.core.math.functions.IFunctionDerivatives;
+import jdplus.toolkit.base.core.math.functions.NumericalDerivatives;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.stats.likelihood.Likelihood;
+
+/**
+ * Derivatives of the DFM function. The gradient is computed analytically
+ * (see DfmScore); the hessian is computed numerically
+ *
+ * @author Jean Palate
+ */
+class DfmFunctionDerivatives implements IFunctionDerivatives {
+
+    private final DfmFunctionPoint point;
+    private final DfmFunction fn;
+    private DoubleSeq gradient;
+    private NumericalDerivatives nd;
+
+    DfmFunctionDerivatives(DfmFunctionPoint point, DfmFunction fn) {
+        this.point = point;
+        this.fn = fn;
+    }
+
+    @Override
+    public IFunction getFunction() {
+        return fn;
+    }
+
+    @Override
+    public synchronized DoubleSeq gradient() {
+        if (gradient == null) {
+            gradient = computeGradient();
+            if (gradient == null) {
+                gradient = numerical().gradient();
+            }
+        }
+        return gradient;
+    }
+
+    @Override
+    public void hessian(FastMatrix hessian) {
+        numerical().hessian(hessian);
+    }
+
+    private synchronized NumericalDerivatives numerical() {
+        if (nd == null) {
+            nd = new NumericalDerivatives(point, fn.isSymmetric(), fn.isMultiThreaded());
+        }
+        return nd;
+    }
+
+    private DoubleSeq computeGradient() {
+        Likelihood ll = point.likelihood();
+        if (ll == null) {
+            return null;
+        }
+        DfmGradient g = DfmScore.of(point.getCore(), ll.sigma2(), fn.getData());
+        if (g == null) {
+            return null;
+        }
+        DoubleSeq gp = fn.getMapping().gradient(point.getParameters(), g);
+        if (gp == null) {
+            return null;
+        }
+        // gp is the gradient of the log-likelihood
+        DataBlock d = DataBlock.of(gp.toArray());
+        if (fn.isLog()) {
+            d.mul(-1);
+        } else {
+            // value = n*sigma2*exp(ldet/n), log(value) = -2/n*logl + cte
+            d.mul(-2 * point.getValue() / ll.dim());
+        }
+        return d;
+    }
+}
@@ -49,6 +49,8 @@ public class DfmFunctionPoint implements
     private final Likelihood ll;
     private final DoubleSeq p;
     private final DfmFunction fn;
+    private final boolean residuals;
+    private volatile Likelihood fll;
 
     /**
      *
@@ -56,19 +58,78 @@ public class DfmFunctionPoint implements
      * @param p
      */
     public DfmFunctionPoint(DfmFunction fn, DoubleSeq p) {
+        this(fn, p, true);
+    }
+
+    /**
+     *
+     * @param fn
+     * @param p
+     * @param residuals Computes the residuals. If false, they will be computed
+     * on demand (getE(), getLikelihood())
+     */
+    public DfmFunctionPoint(DfmFunction fn, DoubleSeq p, boolean residuals) {
         this.fn = fn;
         this.p = p;
+        this.residuals = residuals;
         current = fn.getMapping().map(p);
-        currentSsf = current.ssfRepresentation(0);
-        Likelihood l=null;
+        currentSsf = SsfDfm.withBlockLength(current, current.defaultSsfBlockLength(), fn.getInitialCovarianceCache());
+        ll = compute(residuals);
+    }
+
+    private Likelihood compute(boolean residuals) {
+        Likelihood l = null;
         try {
-            MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
-            PredictionErrorsDecompositionEx results = new PredictionErrorsDecompositionEx();
-            filter.process(currentSsf, fn.getData(), results);
-            l = results.likelihood(true);
+            if (fn.isCollapsed()) {
+                l = new CollapsedFilter(currentSsf).likelihood(fn.getData(), true);
+            }
+            if (l == null && (fn.isUnivariate() || fn.isSteadyState())) {
+                UFilter filter = new UFilter(currentSsf, false, fn.isSteadyState() ? UFilter.DEF_STEADYSTATE_EPS : 0);
+                if (filter.process(fn.getData())) {
+                    l = filter.likelihood(true);
+                }
+            }
+            if (l == null) {
+                MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
+                PredictionErrorsDecompositionEx results = fn.workspace(residuals);
+                filter.process(currentSsf, fn.getData(), results);
+                l = results.likelihood(true);
+            }
         } catch (SsfException err) {
         }
-        ll=l;
+        return l;
+    }
+
+    /**
+     * Likelihood with the residuals
+     *
+     * @return
+     */
+    private Likelihood fullLikelihood() {
+        if (residuals || ll == null) {
+            return ll;
+        }
+        Likelihood cur = fll;
+        if (cur == null) {
+            synchronized (this) {
+                cur = fll;
+                if (cur == null) {
+                    cur = compute(true);
+                    fll = cur;
+                }
+            }
+        }
+        return cur;
+    }
+
+    /**
+     * Likelihood, without the residuals if they have not been computed. To be
+     * preferred to getLikelihood() when the deviances are not needed
+     *
+     * @return
+     */
+    public Likelihood likelihood() {
+        return ll;
     }
 
     public DynamicFactorModel getCore() {
@@ -77,7 +138,8 @@ public class DfmFunctionPoint implements
 
     @Override
     public DoubleSeq getE() {
-        return ll == null ? null : ll.deviances();
+        Likelihood l = fullLikelihood();
+        return l == null ? null : l.deviances();
     }
 
     /**
@@ -86,7 +148,7 @@ public class DfmFunctionPoint implements
      */
     @Override
     public Likelihood getLikelihood() {
-        return ll;
+        return fullLikelihood();
     }
 
     @Override
@@ -126,6 +188,9 @@ public class DfmFunctionPoint implements
 
     @Override
     public IFunctionDerivatives derivatives() {
+        if (fn.isAnalyticalGradient()) {
+            return new DfmFunctionDerivatives(this, fn);
+        }
         return new NumericalDerivatives(this, fn.isSymmetric(), fn.isMultiThreaded());
     }
 
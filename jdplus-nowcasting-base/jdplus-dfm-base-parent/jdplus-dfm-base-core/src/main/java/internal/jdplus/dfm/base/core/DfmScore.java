@@ -0,0 +1,352 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import jdplus.dfm.base.core.DfmGradient;
+import jdplus.dfm.base.core.DynamicFactorModel;
+import jdplus.dfm.base.core.IDfmMeasurement;
+import jdplus.dfm.base.core.MeasurementDescriptor;
+import jdplus.dfm.base.core.var.VarDescriptor;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.math.matrices.LowerTriangularMatrix;
+import jdplus.toolkit.base.core.math.matrices.MatrixException;
+import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
+import jdplus.toolkit.base.core.ssf.ISsfInitialization;
+import jdplus.toolkit.base.core.ssf.State;
+import jdplus.toolkit.base.core.ssf.StateStorage;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsfData;
+
+/**
+ * Analytical score of the (concentrated) log-likelihood of a dynamic factor
+ * model. The score is computed by means of the Fisher identity: it is the
+ * gradient of the expected complete-data log-likelihood, evaluated with the
+ * smoothed states (one filter + one smoother pass).
+ * The contribution of the initial conditions is computed exactly for zero and
+ * unconditional initializations. In the latter case, the derivatives of the
+ * unconditional covariance are obtained through an adjoint Lyapunov equation.
+ *
+ * @author Jean Palate
+ */
+@lombok.experimental.UtilityClass
+public class DfmScore {
+
+    /**
+     * Computes the derivatives of the concentrated log-likelihood
+     *
+     * @param model The model
+     * @param sigma2 The maximum likelihood estimate of the scaling factor of
+     * the model
+     * @param data The data
+     * @return The gradient (in the coefficients of the model) or null if it
+     * can't be computed analytically
+     */
+    public DfmGradient of(DynamicFactorModel model, double sigma2, IMultivariateSsfData data) {
+        try {
+            return compute(model, sigma2, data);
+        } catch (MatrixException err) {
+            return null;
+        }
+    }
+
+    private DfmGradient compute(DynamicFactorModel model, double sigma2, IMultivariateSsfData data) {
+        DynamicFactorModel smodel = model.rescaleVariances(sigma2);
+        VarDescriptor var = smodel.getVar();
+        int nf = smodel.getNfactors(), nl = smodel.getNlags(), c = smodel.defaultSsfBlockLength();
+        int nm = smodel.getMeasurementsCount(), nobs = data.getObsCount();
+        IMultivariateSsf ssf = SsfDfm.withBlockLength(smodel, c);
+        MSmoother smoother = MSmoother.builder(ssf)
+                .calcVariance(true)
+                .build();
+        if (!smoother.process(data)) {
+            return null;
+        }
+        StateStorage ss = smoother.getSmoothingResults();
+
+        // measurements
+        MeasurementDescriptor[] mdesc = smodel.getMeasurements().toArray(MeasurementDescriptor[]::new);
+        List<IDfmMeasurement> types = new ArrayList<>();
+        int[] mtype = new int[nm];
+        double[] h = new double[nm];
+        double[][] coef = new double[nm][];
+        for (int i = 0; i < nm; ++i) {
+            IDfmMeasurement type = mdesc[i].getType();
+            int k = types.indexOf(type);
+            if (k < 0) {
+                k = types.size();
+                types.add(type);
+            }
+            mtype[i] = k;
+            h[i] = mdesc[i].getVariance();
+            coef[i] = mdesc[i].getCoefficient().toArray();
+        }
+        int ntypes = types.size();
+        double[][] w = new double[ntypes][];
+        for (int k = 0; k < ntypes; ++k) {
+            DataBlock z = DataBlock.make(types.get(k).getLength());
+            types.get(k).fill(z);
+            w[k] = z.toArray();
+        }
+
+        double[][] gl = new double[nm][nf];
+        double[] gh = new double[nm];
+        // positions of the factors (and of their lags) in the state vector
+        int nv = nf * (nl + 1);
+        int[] vidx = new int[nv];
+        for (int l = 0, q = 0; l <= nl; ++l) {
+            for (int j = 0; j < nf; ++j, ++q) {
+                vidx[q] = j * c + l;
+            }
+        }
+        double[][] S = new double[nv][nv];
+        boolean unconditional = var.getInitialization() == ISsfInitialization.Type.Unconditional;
+        int t0 = unconditional ? 1 : 0;
+        double[][] gm = new double[ntypes][nf];
+        double[][][] gg = new double[ntypes][nf][nf];
+        boolean[] computed = new boolean[ntypes];
+
+        for (int t = 0; t < nobs; ++t) {
+            DataBlock a = ss.a(t);
+            FastMatrix P = ss.P(t);
+            for (int k = 0; k < ntypes; ++k) {
+                computed[k] = false;
+            }
+            for (int i = 0; i < nm; ++i) {
+                if (data.isMissing(t, i)) {
+                    continue;
+                }
+                if (h[i] <= 0) {
+                    return null;
+                }
+                int k = mtype[i];
+                if (!computed[k]) {
+                    aggregate(a, P, w[k], c, gm[k], gg[k]);
+                    computed[k] = true;
+                }
+                double[] ci = coef[i], gmk = gm[k];
+                double[][] ggk = gg[k];
+                double y = data.get(t, i);
+                double pred = 0, e2 = y * y;
+                for (int j = 0; j < nf; ++j) {
+                    if (!Double.isNaN(ci[j])) {
+                        pred += ci[j] * gmk[j];
+                        for (int l = 0; l < nf; ++l) {
+                            if (!Double.isNaN(ci[l])) {
+                                e2 += ci[j] * ci[l] * ggk[j][l];
+                            }
+                        }
+                    }
+                }
+                e2 -= 2 * y * pred;
+                double hi = h[i];
+                for (int j = 0; j < nf; ++j) {
+                    if (!Double.isNaN(ci[j])) {
+                        double q = y * gmk[j];
+                        for (int l = 0; l < nf; ++l) {
+                            if (!Double.isNaN(ci[l])) {
+                                q -= ci[l] * ggk[j][l];
+                            }
+                        }
+                        gl[i][j] += q / hi;
+                    }
+                }
+                gh[i] -= .5 * (1 / hi - e2 / (hi * hi));
+            }
+            if (t >= t0) {
+                for (int q1 = 0; q1 < nv; ++q1) {
+                    int s1 = vidx[q1];
+                    double a1 = a.get(s1);
+                    for (int q2 = 0; q2 <= q1; ++q2) {
+                        int s2 = vidx[q2];
+                        S[q1][q2] += P.get(s1, s2) + a1 * a.get(s2);
+                    }
+                }
+            }
+        }
+        for (int q1 = 0; q1 < nv; ++q1) {
+            for (int q2 = 0; q2 < q1; ++q2) {
+                S[q2][q1] = S[q1][q2];
+            }
+        }
+
+        // VAR
+        int nx = nf * nl;
+        FastMatrix A = FastMatrix.of(var.getCoefficients());
+        FastMatrix Q = FastMatrix.of(var.getInnovationsVariance());
+        FastMatrix S11 = FastMatrix.square(nf), S10 = FastMatrix.make(nf, nx), S00 = FastMatrix.square(nx);
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j < nf; ++j) {
+                S11.set(i, j, S[i][j]);
+            }
+            for (int j = 0; j < nx; ++j) {
+                S10.set(i, j, S[i][nf + j]);
+            }
+        }
+        for (int i = 0; i < nx; ++i) {
+            for (int j = 0; j < nx; ++j) {
+                S00.set(i, j, S[nf + i][nf + j]);
+            }
+        }
+        FastMatrix Qi = inverse(Q);
+        // dA = Q^-1 (S10 - A S00)
+        FastMatrix AS00 = product(A, S00);
+        FastMatrix D = S10.deepClone();
+        D.sub(AS00);
+        FastMatrix gA = product(Qi, D);
+        // Su = S11 - A S10' - S10 A' + A S00 A'
+        FastMatrix Su = S11.deepClone();
+        FastMatrix AS10t = productABt(A, S10);
+        Su.sub(AS10t);
+        Su.sub(transpose(AS10t));
+        Su.add(productABt(AS00, A));
+        // dQ = -1/2 (n Q^-1 - Q^-1 Su Q^-1)
+        FastMatrix gQ = product(product(Qi, Su), Qi);
+        FastMatrix nQi = Qi.deepClone();
+        nQi.mul(nobs - t0);
+        gQ.sub(nQi);
+        gQ.mul(.5);
+
+        if (unconditional) {
+            // initial conditions: -1/2 (log|P0| + tr(P0^-1 S0))
+            int m = nf * c;
+            FastMatrix P0 = FastMatrix.square(m);
+            ssf.initialization().Pf0(P0);
+            FastMatrix T = FastMatrix.square(m);
+            ssf.dynamics().T(0, T);
+            FastMatrix S0 = ss.P(0).deepClone();
+            S0.addXaXt(1, ss.a(0));
+            FastMatrix P0i = inverse(P0);
+            FastMatrix W = P0i.deepClone();
+            W.sub(product(product(P0i, S0), P0i));
+            // X = T'XT + W
+            FastMatrix X = LyapunovSolver.doubling(transpose(T), W);
+            if (X == null) {
+                return null;
+            }
+            FastMatrix XTP = product(product(X, T), P0);
+            for (int i = 0; i < nf; ++i) {
+                for (int j = 0; j < nf; ++j) {
+                    for (int l = 1; l <= nl; ++l) {
+                        gA.add(i, (l - 1) * nf + j, -XTP.get(i * c, j * c + l - 1));
+                    }
+                    gQ.add(i, j, -.5 * X.get(i * c, j * c));
+                }
+            }
+        }
+
+        // back to the unscaled model
+        for (int i = 0; i < nm; ++i) {
+            gh[i] *= sigma2;
+            for (int j = 0; j < nf; ++j) {
+                if (Double.isNaN(coef[i][j])) {
+                    gl[i][j] = 0;
+                }
+            }
+        }
+        gQ.mul(sigma2);
+        FastMatrix L = FastMatrix.make(nm, nf);
+        for (int i = 0; i < nm; ++i) {
+            L.row(i).copyFrom(gl[i], 0);
+        }
+        return DfmGradient.builder()
+                .loadings(L)
+                .measurementsVariance(DoubleSeq.of(gh))
+                .varCoefficients(gA)
+                .innovationsVariance(gQ)
+                .build();
+    }
+
+    /**
+     * Computes E(g(j)) and E(g(j)g(l)), where g(j) is the aggregation of the
+     * factor j by the weights w
+     */
+    private void aggregate(DataBlock a, FastMatrix P, double[] w, int c, double[] gm, double[][] gg) {
+        int nf = gm.length;
+        for (int j = 0; j < nf; ++j) {
+            double s = 0;
+            for (int k = 0; k < w.length; ++k) {
+                if (w[k] != 0) {
+                    s += w[k] * a.get(j * c + k);
+                }
+            }
+            gm[j] = s;
+        }
+        for (int j = 0; j < nf; ++j) {
+            for (int l = 0; l <= j; ++l) {
+                double s = 0;
+                for (int k = 0; k < w.length; ++k) {
+                    if (w[k] != 0) {
+                        for (int q = 0; q < w.length; ++q) {
+                            if (w[q] != 0) {
+                                s += w[k] * w[q] * P.get(j * c + k, l * c + q);
+                            }
+                        }
+                    }
+                }
+                s += gm[j] * gm[l];
+                gg[j][l] = s;
+                gg[l][j] = s;
+            }
+        }
+    }
+
+    private FastMatrix inverse(FastMatrix S) {
+        int n = S.getRowsCount();
+        FastMatrix L = S.deepClone();
+        SymmetricMatrix.lcholesky(L, State.ZERO);
+        FastMatrix I = FastMatrix.identity(n);
+        for (int i = 0; i < n; ++i) {
+            DataBlock col = I.column(i);
+            LowerTriangularMatrix.solveLx(L, col, State.ZERO);
+            LowerTriangularMatrix.solvexL(L, col, State.ZERO);
+        }
+        return I;
+    }
+
+    private FastMatrix product(FastMatrix A, FastMatrix B) {
+        int nr = A.getRowsCount(), nc = B.getColumnsCount(), n = A.getColumnsCount();
+        FastMatrix C = FastMatrix.make(nr, nc);
+        for (int k = 0; k < n; ++k) {
+            for (int j = 0; j < nc; ++j) {
+                double b = B.get(k, j);
+                if (b != 0) {
+                    for (int i = 0; i < nr; ++i) {
+                        C.add(i, j, A.get(i, k) * b);
+                    }
+                }
+            }
+        }
+        return C;
+    }
+
+    private FastMatrix productABt(FastMatrix A, FastMatrix B) {
+        return product(A, transpose(B));
+    }
+
+    private FastMatrix transpose(FastMatrix A) {
+        int nr = A.getRowsCount(), nc = A.getColumnsCount();
+        FastMatrix At = FastMatrix.make(nc, nr);
+        for (int i = 0; i < nr; ++i) {
+            At.column(i).copy(A.row(i));
+        }
+        return At;
+    }
+}
@@ -105,7 +105,7 @@ public class Dynamics implements ISsfDynamics {
         int nl = nl(), nf = nf();
         for (int i = 0, r = 0; i < nf; ++i, r += nxlags) {
             for (int j = 0, c = 0; j < nf; ++j, c += nxlags) {
-                FastMatrix B = tr.extract(r, r + nxlags, c, c + nxlags);
+                FastMatrix B = tr.extract(r, nxlags, c, nxlags);
                 if (i == j) {
                     B.subDiagonal(-1).set(1);
                 }
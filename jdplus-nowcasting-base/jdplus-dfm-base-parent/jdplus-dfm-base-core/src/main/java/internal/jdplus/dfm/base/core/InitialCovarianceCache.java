@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jdplus.dfm.base.core.var.VarDescriptor;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+
+/**
+ * Bounded (LRU) cache of the unconditional covariance of the initial state,
+ * keyed by the VAR (coefficients, innovations variance) and by the block
+ * length of the state. The cache is thread-safe. The cached matrices must not
+ * be modified.
+ * The Dynamics objects are not cached: they contain temporary buffers and
+ * can't be shared by concurrent evaluations (their creation is cheap).
+ *
+ * @author Jean Palate
+ */
+public class InitialCovarianceCache {
+
+    public static final int DEF_SIZE = 16;
+
+    @lombok.Value
+    private static class Key {
+
+        double[] coefficients;
+        double[] innovationsVariance;
+        int blockLength;
+    }
+
+    private final Map<Key, FastMatrix> map;
+
+    public InitialCovarianceCache() {
+        this(DEF_SIZE);
+    }
+
+    public InitialCovarianceCache(final int size) {
+        this.map = new LinkedHashMap<>(2 * size, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FastMatrix> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Gets the unconditional covariance of the initial state. The covariance is
+     * computed if it is not yet in the cache
+     *
+     * @param var
+     * @param blockLength
+     * @param dynamics The dynamics corresponding to the var and to the block
+     * length
+     * @return
+     */
+    public FastMatrix get(VarDescriptor var, int blockLength, Dynamics dynamics) {
+        Key key = new Key(var.getCoefficients().toArray(), var.getInnovationsVariance().toArray(), blockLength);
+        FastMatrix v0;
+        synchronized (map) {
+            v0 = map.get(key);
+        }
+        if (v0 == null) {
+            // computed outside of the lock. Concurrent computations are harmless
+            v0 = Initialization.of(dynamics);
+            synchronized (map) {
+                map.put(key, v0);
+            }
+        }
+        return v0;
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+}
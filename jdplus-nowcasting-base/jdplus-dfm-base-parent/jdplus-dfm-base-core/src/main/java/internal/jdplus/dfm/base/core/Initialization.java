@@ -46,6 +46,17 @@ public class Initialization implements ISsfInitialization {
         return new Initialization(null, v0, v0.getRowsCount());
     }
 
+    /**
+     * Unconditional initialization with a pre-computed covariance, which
+     * is not copied
+     *
+     * @param v0
+     * @return
+     */
+    public static Initialization unconditional(FastMatrix v0) {
+        return new Initialization(null, v0, v0.getRowsCount());
+    }
+
     public static Initialization user(DoubleSeq a0, Matrix V0) {
         return new Initialization(a0, FastMatrix.of(V0), V0.getRowsCount());
     }
@@ -57,7 +68,62 @@ public class Initialization implements ISsfInitialization {
         // We consider first the [nl*nf, nl*nf] sub-system
         FastMatrix v = dynamics.getV();
         FastMatrix t = dynamics.getT();
+        FastMatrix cov = LyapunovSolver.doubling(companion(t, nl), embed(v, nl));
+        if (cov == null) {
+            cov = reference(t, v, nl);
+        }
+        return extend(dynamics, cov);
+    }
+
+    /**
+     * Transition matrix of the [nl*nf, nl*nf] sub-system
+     *
+     * @param t The VAR coefficients (factor by factor)
+     * @param nl The number of lags
+     * @return
+     */
+    public static FastMatrix companion(FastMatrix t, int nl) {
+        int nf = t.getRowsCount(), n = nf * nl;
+        FastMatrix C = FastMatrix.square(n);
+        for (int i = 0; i < nf; ++i) {
+            int r = i * nl;
+            C.row(r).copy(t.row(i));
+            for (int k = 1; k < nl; ++k) {
+                C.set(r + k, r + k - 1, 1);
+            }
+        }
+        return C;
+    }
 
+    /**
+     * Covariance of the innovations of the [nl*nf, nl*nf] sub-system
+     *
+     * @param v
+     * @param nl
+     * @return
+     */
+    public static FastMatrix embed(FastMatrix v, int nl) {
+        int nf = v.getRowsCount(), n = nf * nl;
+        FastMatrix Q = FastMatrix.square(n);
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j < nf; ++j) {
+                Q.set(i * nl, j * nl, v.get(i, j));
+            }
+        }
+        return Q;
+    }
+
+    /**
+     * Resolution of the vectorized steady state equation (reference solution,
+     * O(n^6))
+     *
+     * @param t
+     * @param v
+     * @param nl
+     * @return
+     */
+    public static FastMatrix reference(FastMatrix t, FastMatrix v, int nl) {
+        int nf = t.getRowsCount();
         int n = nf * nl;
         FastMatrix cov = FastMatrix.square(n);
         int np = (n * (n + 1)) / 2;
@@ -100,6 +166,11 @@ public class Initialization implements ISsfInitialization {
             j += n - i;
         }
         SymmetricMatrix.fromLower(cov);
+        return cov;
+    }
+
+    private static FastMatrix extend(Dynamics dynamics, FastMatrix cov) {
+        int nl = dynamics.nl(), nf = dynamics.nf();
         int nlx = dynamics.nxlags;
         if (nl == nlx) {
             return cov;
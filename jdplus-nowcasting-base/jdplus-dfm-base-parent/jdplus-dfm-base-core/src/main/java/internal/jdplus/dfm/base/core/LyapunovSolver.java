@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.math.matrices.GeneralMatrix;
+import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
+
+/**
+ * Solver of the discrete Lyapunov equation X = T X T' + V, by means of the
+ * doubling algorithm: X(k+1) = X(k) + A(k) X(k) A(k)', A(k+1) = A(k)A(k), with
+ * X(0) = V, A(0) = T. Each iteration doubles the number of terms of the series
+ * sum(T^i V T'^i). The cost is O(n^3) by iteration, to be compared with the
+ * O(n^6) of the direct resolution of the vectorized system.
+ *
+ * @author Jean Palate
+ */
+@lombok.experimental.UtilityClass
+public class LyapunovSolver {
+
+    private final int MAXITER = 100;
+    private final double EPS = 1e-15;
+
+    /**
+     * Solves X = T X T' + V
+     *
+     * @param T The transition matrix (square)
+     * @param V The covariance matrix of the innovations (symmetric)
+     * @return The solution or null if the iterations didn't converge (T not
+     * stable or very close to the unit circle)
+     */
+    public FastMatrix doubling(FastMatrix T, FastMatrix V) {
+        FastMatrix X = V.deepClone();
+        FastMatrix A = T.deepClone();
+        for (int iter = 0; iter < MAXITER; ++iter) {
+            FastMatrix dX = GeneralMatrix.ABt(GeneralMatrix.AB(A, X), A);
+            X.add(dX);
+            double dmax = norm(dX);
+            if (!Double.isFinite(dmax)) {
+                return null;
+            }
+            if (dmax <= EPS * norm(X)) {
+                SymmetricMatrix.reenforceSymmetry(X);
+                return X;
+            }
+            A = GeneralMatrix.AB(A, A);
+        }
+        return null;
+    }
+
+    private double norm(FastMatrix M) {
+        double s = 0;
+        int nr = M.getRowsCount(), nc = M.getColumnsCount();
+        for (int j = 0; j < nc; ++j) {
+            for (int i = 0; i < nr; ++i) {
+                double x = Math.abs(M.get(i, j));
+                if (x > s || Double.isNaN(x)) {
+                    s = x;
+                }
+            }
+        }
+        return s;
+    }
+}
@@ -16,6 +16,8 @@
  */
 package internal.jdplus.dfm.base.core;
 
+import java.util.function.ObjIntConsumer;
+import jdplus.toolkit.base.core.stats.likelihood.Likelihood;
 import jdplus.toolkit.base.api.data.DoubleSeq;
 import jdplus.toolkit.base.core.data.DataBlock;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
@@ -31,6 +33,8 @@ import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsfData;
 import jdplus.toolkit.base.core.ssf.multivariate.ISsfMeasurements;
 import jdplus.toolkit.base.core.ssf.multivariate.MultivariateFilteringInformation;
 import jdplus.toolkit.base.core.ssf.multivariate.MultivariateOrdinaryFilter;
+import jdplus.toolkit.base.core.ssf.multivariate.MultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
 import jdplus.toolkit.base.core.ssf.multivariate.MultivariateUpdateInformation;
 
 /**
@@ -81,6 +85,7 @@ public class MSmoother {
     private FastMatrix M, K, R;
     private FastMatrix N;
     private int stop;
+    private Likelihood likelihood;
 
     public MSmoother(IMultivariateSsf ssf, boolean calcvar) {
         this.ssf = ssf;
@@ -101,6 +106,93 @@ public class MSmoother {
         return process(0, data.getObsCount(), fresults);
     }
 
+    public boolean process(IMultivariateSsfData data, ObjIntConsumer<State> consumer) {
+        if (ssf.initialization().isDiffuse()) {
+            return false;
+        }
+        MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
+        MultivariateFilteringInformation fresults = new MultivariateFilteringInformation();
+        if (!filter.process(ssf, data, fresults)) {
+            return false;
+        }
+        return process(0, data.getObsCount(), fresults, consumer);
+    }
+
+    /**
+     * Smoothing with checkpointed re-filtering. The filter is run once on the
+     * whole sample, keeping only the likelihood and the predicted states at
+     * the start of the blocks of periods. The blocks are then filtered again
+     * from their checkpoints, one at a time from the last one, and smoothed
+     * backwards. The memory used by the smoother is O((n/k + k)m^2) instead
+     * of O(n m^2) (n = number of periods, k = length of the blocks, m = state
+     * dimension). The smoothed states are provided to the consumer
+     * (backwards). Time varying models are smoothed without checkpoints
+     *
+     * @param data The observations (periods x variables)
+     * @param blockLength The length of the blocks (0 for the square root of
+     * the number of periods)
+     * @param consumer Consumer of the smoothed states. The state object is
+     * re-used between the periods
+     * @return
+     */
+    public boolean process(FastMatrix data, int blockLength, ObjIntConsumer<State> consumer) {
+        if (ssf.initialization().isDiffuse()) {
+            return false;
+        }
+        likelihood = null;
+        if (!dynamics.isTimeInvariant() || !measurements.isTimeInvariant()) {
+            if (!process(new SsfMatrix(data), consumer)) {
+                return false;
+            }
+            likelihood = frslts.likelihood(true);
+            return true;
+        }
+        int n = data.getRowsCount(), m = data.getColumnsCount();
+        int k = blockLength > 0 ? blockLength : defaultBlockLength(n);
+        int nblocks = (n + k - 1) / k;
+        MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
+        Checkpoints checkpoints = new Checkpoints(k, nblocks);
+        if (!filter.process(ssf, new SsfMatrix(data), checkpoints)) {
+            return false;
+        }
+        likelihood = checkpoints.likelihood(true);
+        stop = 0;
+        initSmoother(ssf);
+        for (int b = nblocks - 1; b >= 0; --b) {
+            int start = b * k, len = Math.min(k, n - start);
+            IMultivariateSsf bssf = ssf;
+            if (b > 0) {
+                if (checkpoints.a[b] == null) {
+                    return false;
+                }
+                bssf = new MultivariateSsf(Initialization.user(checkpoints.a[b], checkpoints.P[b]), dynamics, measurements);
+            }
+            MultivariateFilteringInformation fresults = new MultivariateFilteringInformation();
+            if (!filter.process(bssf, new SsfMatrix(data.extract(start, len, 0, m)), fresults)) {
+                return false;
+            }
+            // positions relative to the block (time invariant model)
+            frslts = fresults;
+            for (int t = len - 1; t >= 0; --t) {
+                loadInfo(t);
+                if (iterate(t)) {
+                    consumer.accept(state, start + t);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Default length of the blocks of the checkpointed smoothing
+     *
+     * @param n The number of periods
+     * @return
+     */
+    public static int defaultBlockLength(int n) {
+        return Math.max(1, (int) Math.ceil(Math.sqrt(n)));
+    }
+
     public boolean process(MultivariateFilteringInformation results) {
         if (ssf.initialization().isDiffuse()) {
             return false;
@@ -121,15 +213,30 @@ public class MSmoother {
     }
 
     public boolean process(final int start, final int end, MultivariateFilteringInformation results, StateStorage sresults) {
-        frslts = results;
         srslts = sresults;
+        return process(start, end, results, (st, t) -> sresults.save(t, st, StateInfo.Smoothed));
+    }
+
+    /**
+     * Smoothing without storage. The smoothed states are provided to the
+     * consumer (backwards)
+     *
+     * @param start
+     * @param end
+     * @param results
+     * @param consumer Consumer of the smoothed states. The state object is
+     * re-used between the periods
+     * @return
+     */
+    public boolean process(final int start, final int end, MultivariateFilteringInformation results, ObjIntConsumer<State> consumer) {
+        frslts = results;
         stop = start;
         initSmoother(ssf);
         int t = end;
         while (--t >= stop) {
             loadInfo(t);
             if (iterate(t)) {
-                srslts.save(t, state, StateInfo.Smoothed);
+                consumer.accept(state, t);
             }
         }
 
@@ -140,10 +247,25 @@ public class MSmoother {
         return srslts;
     }
 
+    /**
+     * Filtering results of the last processing. Only the results of the first
+     * block in the case of a checkpointed smoothing
+     *
+     * @return
+     */
     public MultivariateFilteringInformation getFilteringResults() {
         return frslts;
     }
 
+    /**
+     * Likelihood computed by the checkpointed smoothing
+     *
+     * @return Null if no checkpointed smoothing has been done
+     */
+    public Likelihood getLikelihood() {
+        return likelihood;
+    }
+
     public DataBlock getFinalR() {
         return r;
     }
@@ -269,4 +391,29 @@ public class MSmoother {
         r.apply(z -> Math.abs(z) < State.ZERO ? 0 : z);
     }
 
+    /**
+     * Likelihood and predicted states at the start of the blocks
+     */
+    private static class Checkpoints extends PredictionErrorsDecompositionEx {
+
+        private final int k;
+        private final DataBlock[] a;
+        private final FastMatrix[] P;
+
+        private Checkpoints(int k, int nblocks) {
+            super(false);
+            this.k = k;
+            this.a = new DataBlock[nblocks];
+            this.P = new FastMatrix[nblocks];
+        }
+
+        @Override
+        public void save(final int t, final State state, final StateInfo info) {
+            if (info == StateInfo.Forecast && t % k == 0) {
+                a[t / k] = state.a().deepClone();
+                P[t / k] = state.P().deepClone();
+            }
+        }
+    }
+
 }
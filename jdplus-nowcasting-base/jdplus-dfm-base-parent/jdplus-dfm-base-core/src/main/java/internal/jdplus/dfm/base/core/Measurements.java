@@ -16,12 +16,12 @@
  */
 package internal.jdplus.dfm.base.core;
 
+import java.util.Arrays;
 import jdplus.dfm.base.core.IDfmMeasurement;
 import jdplus.dfm.base.core.MeasurementDescriptor;
 import jdplus.toolkit.base.api.data.DoubleSeq;
 import jdplus.toolkit.base.core.data.DataBlock;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
-import jdplus.toolkit.base.core.math.matrices.QuadraticForm;
 import jdplus.toolkit.base.core.ssf.ISsfLoading;
 import jdplus.toolkit.base.core.ssf.multivariate.ISsfErrors;
 import jdplus.toolkit.base.core.ssf.multivariate.ISsfMeasurements;
@@ -39,26 +39,53 @@ public class Measurements implements ISsfMeasurements {
 
     private final MeasurementDescriptor[] mdesc;
     private final int nf, c;
-    private final FastMatrix Z;
+    /**
+     * Loadings in compressed rows: the non-zero elements of the loading i are
+     * at the positions zidx[zstart[i]..zstart[i+1][] of the state, with the
+     * weights zw[zstart[i]..zstart[i+1][]
+     */
+    private final int[] zstart, zidx;
+    private final double[] zw;
 
-    private static FastMatrix Z(MeasurementDescriptor[] mdesc, int nf, int c) {
-        int mdim = nf * c, vdim = mdesc.length;
-        FastMatrix Z = FastMatrix.make(vdim, mdim);
-        // Measurement
+    private Measurements(MeasurementDescriptor[] mdesc, int nf, int c) {
+        this.mdesc = mdesc;
+        this.nf = nf;
+        this.c = c;
+        int vdim = mdesc.length;
+        zstart = new int[vdim + 1];
+        int nz = 0;
+        for (int i = 0; i < vdim; ++i) {
+            for (int j = 0; j < nf; ++j) {
+                if (mused(mdesc[i], j)) {
+                    nz += mdesc[i].getType().getLength();
+                }
+            }
+        }
+        int[] idx = new int[nz];
+        double[] w = new double[nz];
+        int k = 0;
         for (int i = 0; i < vdim; ++i) {
             MeasurementDescriptor zdesc = mdesc[i];
-            DataBlock z = Z.row(i);
+            IDfmMeasurement m = zdesc.getType();
+            DataBlock cur = DataBlock.make(m.getLength());
             for (int j = 0, start = 0; j < nf; ++j, start += c) {
                 if (mused(zdesc, j)) {
-                    IDfmMeasurement m = zdesc.getType();
-                    DataBlock cur = z.range(start, start + m.getLength());
+                    cur.set(0);
                     m.fill(cur);
-                    cur.mul(zdesc.getCoefficient(j));
+                    double cj = zdesc.getCoefficient(j);
+                    for (int l = 0; l < cur.length(); ++l) {
+                        double z = cur.get(l);
+                        if (z != 0) {
+                            idx[k] = start + l;
+                            w[k++] = z * cj;
+                        }
+                    }
                 }
             }
+            zstart[i + 1] = k;
         }
-        return Z;
-
+        zidx = k == nz ? idx : Arrays.copyOf(idx, k);
+        zw = k == nz ? w : Arrays.copyOf(w, k);
     }
 
     private static FastMatrix H(MeasurementDescriptor[] mdesc) {
@@ -81,13 +108,6 @@ public class Measurements implements ISsfMeasurements {
         return r;
     }
 
-    private Measurements(MeasurementDescriptor[] mdesc, int nf, int c) {
-        this.mdesc = mdesc;
-        this.nf = nf;
-        this.c = c;
-        this.Z = Z(mdesc, nf, c);
-    }
-
     private static boolean mused(MeasurementDescriptor m, int i) {
         double z = m.getCoefficient(i);
         return z != 0 && !Double.isNaN(z);
@@ -115,44 +135,69 @@ public class Measurements implements ISsfMeasurements {
 
     class Loading implements ISsfLoading {
 
-        private final int var;
+        private final int start, end;
 
         private Loading(int var) {
-            this.var = var;
+            this.start = zstart[var];
+            this.end = zstart[var + 1];
         }
 
         @Override
         public double ZX(int pos, DataBlock m) {
-            MeasurementDescriptor zdesc = mdesc[var];
             double r = 0;
-            for (int j = 0, start = 0; j < nf; ++j, start += c) {
-                if (mused(zdesc, j)) {
-                    IDfmMeasurement dfm = zdesc.getType();
-                    DataBlock cur = m.range(start, start + dfm.getLength());
-                    r += zdesc.getCoefficient(j) * dfm.dot(cur);
-                }
+            for (int k = start; k < end; ++k) {
+                r += zw[k] * m.get(zidx[k]);
             }
             return r;
         }
 
         @Override
         public void Z(int pos, DataBlock z) {
-            z.copy(Z.row(var));
+            z.set(0);
+            for (int k = start; k < end; ++k) {
+                z.set(zidx[k], zw[k]);
+            }
         }
 
         @Override
         public double ZVZ(int pos, FastMatrix V) {
-            return QuadraticForm.apply(V, Z.row(var));
+            double r = 0;
+            for (int k = start; k < end; ++k) {
+                int ik = zidx[k];
+                double wk = zw[k];
+                double s = .5 * wk * V.get(ik, ik);
+                for (int l = start; l < k; ++l) {
+                    s += zw[l] * V.get(ik, zidx[l]);
+                }
+                r += 2 * wk * s;
+            }
+            return r;
         }
 
         @Override
         public void VpZdZ(int pos, FastMatrix V, double d) {
-            V.addXaXt(d, Z.row(var));
+            if (d == 0) {
+                return;
+            }
+            for (int k = start; k < end; ++k) {
+                int ik = zidx[k];
+                double dwk = d * zw[k];
+                for (int l = start; l < end; ++l) {
+                    int il = zidx[l];
+                    V.set(ik, il, V.get(ik, il) + dwk * zw[l]);
+                }
+            }
         }
 
         @Override
         public void XpZd(int pos, DataBlock x, double d) {
-            x.addAY(d, Z.row(var));
+            if (d == 0) {
+                return;
+            }
+            for (int k = start; k < end; ++k) {
+                int ik = zidx[k];
+                x.set(ik, x.get(ik) + d * zw[k]);
+            }
         }
 
         @Override
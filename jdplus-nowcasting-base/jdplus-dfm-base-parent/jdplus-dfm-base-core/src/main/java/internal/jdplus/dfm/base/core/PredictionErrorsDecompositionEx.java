@@ -40,14 +40,23 @@ public class PredictionErrorsDecompositionEx implements
         IPredictionErrorDecomposition, IMultivariateFilteringResults {
 
     private final ResidualsCumulator cumulator = new ResidualsCumulator();
+    private final boolean bres;
     private double[] res;
     private int resPos;
 
+    public PredictionErrorsDecompositionEx() {
+        this(true);
+    }
+
     /**
+     * The object can be re-used for successive filterings. The buffer of the
+     * residuals is then re-used
      *
-     * @param bres
+     * @param bres Stores the residuals. If false, the likelihood doesn't
+     * contain the residuals
      */
-    public PredictionErrorsDecompositionEx() {
+    public PredictionErrorsDecompositionEx(boolean bres) {
+        this.bres = bres;
     }
 
     /**
@@ -65,7 +74,12 @@ public class PredictionErrorsDecompositionEx implements
     @Override
     public void open(final IMultivariateSsf ssf, final IMultivariateSsfData data) {
         cumulator.clear();
-        res=new double[data.getVarsCount()*data.getObsCount()];
+        if (bres) {
+            int n = data.getVarsCount() * data.getObsCount();
+            if (res == null || res.length < n) {
+                res = new double[n];
+            }
+        }
         resPos=0;
     }
 
@@ -96,7 +110,9 @@ public class PredictionErrorsDecompositionEx implements
                     double r = diag.get(iv);
                     if (r != 0) {
                         cumulator.addStd(err.get(iv), r);
-                        res[resPos++]=err.get(iv);
+                        if (bres) {
+                            res[resPos++] = err.get(iv);
+                        }
                     }
                 }
                 ++iv;
@@ -106,13 +122,41 @@ public class PredictionErrorsDecompositionEx implements
 
     @Override
     public Likelihood likelihood(boolean scalingfactor) {
-        double[] e=new double[resPos];
-        System.arraycopy(res, 0, e, 0, resPos);
-        return Likelihood.builder(cumulator.getObsCount())
+        Likelihood.Builder builder = Likelihood.builder(cumulator.getObsCount())
                 .scalingFactor(scalingfactor)
                 .ssqErr(cumulator.getSsqErr())
-                .residuals(DoubleSeq.of(e))
-                .logDeterminant(cumulator.getLogDeterminant()).build();
+                .logDeterminant(cumulator.getLogDeterminant());
+        if (bres) {
+            double[] e = new double[resPos];
+            System.arraycopy(res, 0, e, 0, resPos);
+            builder.residuals(DoubleSeq.of(e));
+        }
+        return builder.build();
+    }
+
+    public boolean hasResiduals() {
+        return bres;
+    }
+
+    public int getObsCount() {
+        return cumulator.getObsCount();
+    }
+
+    public double getSsqErr() {
+        return cumulator.getSsqErr();
+    }
+
+    public double getLogDeterminant() {
+        return cumulator.getLogDeterminant();
+    }
+
+    /**
+     * Standardized residuals (without copy)
+     *
+     * @return
+     */
+    public DoubleSeq residuals() {
+        return bres ? DoubleSeq.of(res).extract(0, resPos) : null;
     }
 
 }
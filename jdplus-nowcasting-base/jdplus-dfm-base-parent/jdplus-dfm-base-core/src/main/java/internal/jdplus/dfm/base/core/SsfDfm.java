@@ -68,6 +68,17 @@ public class SsfDfm {
     }
         
     public MultivariateSsf withBlockLength(DynamicFactorModel dfm, int blockLength){
+        return withBlockLength(dfm, blockLength, null);
+    }
+
+    /**
+     * 
+     * @param dfm
+     * @param blockLength
+     * @param cache Cache for the unconditional initial covariance. May be null
+     * @return 
+     */
+    public MultivariateSsf withBlockLength(DynamicFactorModel dfm, int blockLength, InitialCovarianceCache cache){
         VarDescriptor var = dfm.getVar();
         MeasurementDescriptor[] mdesc = dfm.getMeasurements().toArray(MeasurementDescriptor[]::new);
         int nf = var.getNfactors();
@@ -76,7 +87,8 @@ public class SsfDfm {
             case Zero ->
                 Initialization.zero(var.getInnovationsVariance(), blockLength);
             case Unconditional ->
-                Initialization.unconditional(dyn);
+                cache == null ? Initialization.unconditional(dyn)
+                        : Initialization.unconditional(cache.get(var, blockLength, dyn));
             default ->
                 throw new IllegalArgumentException();
         };
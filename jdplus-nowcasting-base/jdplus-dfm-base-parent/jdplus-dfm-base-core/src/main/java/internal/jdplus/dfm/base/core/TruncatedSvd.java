@@ -0,0 +1,267 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import java.util.Arrays;
+import java.util.Random;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.math.matrices.GeneralMatrix;
+
+/**
+ * Leading singular triplets of a matrix, computed by randomized subspace
+ * iterations (Halko, Martinsson and Tropp). The matrix is projected on an
+ * orthonormal basis of its approximate range; the singular values of the
+ * (small) projection are computed by Jacobi rotations on its cross-product.
+ * A = U*S*V' (truncated)
+ *
+ * @author Jean Palate
+ */
+public class TruncatedSvd {
+
+    public static class Builder {
+
+        private int rank = 1;
+        private int oversampling = 5;
+        private int powerIterations = 3;
+        private long seed = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * Number of singular triplets
+         *
+         * @param rank
+         * @return
+         */
+        public Builder rank(int rank) {
+            this.rank = rank;
+            return this;
+        }
+
+        public Builder oversampling(int oversampling) {
+            this.oversampling = oversampling;
+            return this;
+        }
+
+        /**
+         * Number of subspace (power) iterations. Each iteration improves the
+         * accuracy when the singular values decrease slowly
+         *
+         * @param n
+         * @return
+         */
+        public Builder powerIterations(int n) {
+            this.powerIterations = n;
+            return this;
+        }
+
+        /**
+         * Seed of the random test matrix (the results are reproducible)
+         *
+         * @param seed
+         * @return
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public TruncatedSvd build() {
+            return new TruncatedSvd(rank, oversampling, powerIterations, seed);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static final int JACOBI_SWEEPS = 50;
+    private static final double EPS = 1e-15;
+
+    private final int rank, oversampling, powerIterations;
+    private final long seed;
+    private FastMatrix U, V;
+    private double[] S;
+
+    private TruncatedSvd(int rank, int oversampling, int powerIterations, long seed) {
+        this.rank = rank;
+        this.oversampling = oversampling;
+        this.powerIterations = powerIterations;
+        this.seed = seed;
+    }
+
+    /**
+     *
+     * @param A The decomposed matrix (not modified)
+     */
+    public void decompose(FastMatrix A) {
+        int m = A.getRowsCount(), n = A.getColumnsCount();
+        int k = Math.min(rank, Math.min(m, n));
+        int l = Math.min(k + oversampling, Math.min(m, n));
+        // Range finder
+        Random rnd = new Random(seed);
+        FastMatrix Omega = FastMatrix.make(n, l);
+        for (int j = 0; j < l; ++j) {
+            DataBlock col = Omega.column(j);
+            for (int i = 0; i < n; ++i) {
+                col.set(i, rnd.nextGaussian());
+            }
+        }
+        FastMatrix Q = GeneralMatrix.AB(A, Omega);
+        orthonormalize(Q);
+        for (int it = 0; it < powerIterations; ++it) {
+            FastMatrix Z = AtB(A, Q);
+            orthonormalize(Z);
+            Q = GeneralMatrix.AB(A, Z);
+            orthonormalize(Q);
+        }
+        // B = Q'A (l x n) and its cross-product C = BB' (l x l)
+        FastMatrix Bt = AtB(A, Q);
+        FastMatrix C = AtB(Bt, Bt);
+        FastMatrix W = FastMatrix.square(l);
+        W.diagonal().set(1);
+        double[] lambda = jacobi(C, W);
+        // sort the eigen values by decreasing order
+        Integer[] order = new Integer[l];
+        for (int i = 0; i < l; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(lambda[b], lambda[a]));
+        S = new double[k];
+        U = FastMatrix.make(m, k);
+        V = FastMatrix.make(n, k);
+        for (int c = 0; c < k; ++c) {
+            int o = order[c];
+            double s = Math.sqrt(Math.max(lambda[o], 0));
+            S[c] = s;
+            DataBlock w = W.column(o);
+            // U = Q*w, V = B'w/s
+            DataBlock u = U.column(c);
+            for (int j = 0; j < l; ++j) {
+                u.addAY(w.get(j), Q.column(j));
+            }
+            if (s > 0) {
+                DataBlock v = V.column(c);
+                for (int j = 0; j < l; ++j) {
+                    v.addAY(w.get(j) / s, Bt.column(j));
+                }
+            }
+        }
+    }
+
+    public FastMatrix U() {
+        return U;
+    }
+
+    public FastMatrix V() {
+        return V;
+    }
+
+    public DoubleSeq S() {
+        return DoubleSeq.of(S);
+    }
+
+    /**
+     * X'Y
+     */
+    private static FastMatrix AtB(FastMatrix X, FastMatrix Y) {
+        int nx = X.getColumnsCount(), ny = Y.getColumnsCount();
+        FastMatrix R = FastMatrix.make(nx, ny);
+        for (int i = 0; i < nx; ++i) {
+            DataBlock xi = X.column(i);
+            for (int j = 0; j < ny; ++j) {
+                R.set(i, j, xi.dot(Y.column(j)));
+            }
+        }
+        return R;
+    }
+
+    /**
+     * Modified Gram-Schmidt on the columns. Dependent columns are set to 0
+     */
+    private static void orthonormalize(FastMatrix X) {
+        int n = X.getColumnsCount();
+        for (int j = 0; j < n; ++j) {
+            DataBlock xj = X.column(j);
+            for (int i = 0; i < j; ++i) {
+                DataBlock xi = X.column(i);
+                xj.addAY(-xi.dot(xj), xi);
+            }
+            double norm = xj.norm2();
+            if (norm > EPS) {
+                xj.mul(1 / norm);
+            } else {
+                xj.set(0);
+            }
+        }
+    }
+
+    /**
+     * Cyclic Jacobi method for a symmetric matrix. C is destroyed; the
+     * eigen vectors are accumulated in the columns of W
+     *
+     * @return The eigen values
+     */
+    private static double[] jacobi(FastMatrix C, FastMatrix W) {
+        int n = C.getRowsCount();
+        for (int sweep = 0; sweep < JACOBI_SWEEPS; ++sweep) {
+            double off = 0, diag = 0;
+            for (int p = 0; p < n; ++p) {
+                diag += C.get(p, p) * C.get(p, p);
+                for (int q = p + 1; q < n; ++q) {
+                    off += C.get(p, q) * C.get(p, q);
+                }
+            }
+            if (off <= EPS * EPS * diag) {
+                break;
+            }
+            for (int p = 0; p < n - 1; ++p) {
+                for (int q = p + 1; q < n; ++q) {
+                    double cpq = C.get(p, q);
+                    if (cpq == 0) {
+                        continue;
+                    }
+                    double theta = (C.get(q, q) - C.get(p, p)) / (2 * cpq);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0) {
+                        t = 1;
+                    }
+                    double c = 1 / Math.sqrt(t * t + 1), s = t * c;
+                    rotate(C.column(p), C.column(q), c, s);
+                    rotate(C.row(p), C.row(q), c, s);
+                    rotate(W.column(p), W.column(q), c, s);
+                }
+            }
+        }
+        double[] lambda = new double[n];
+        for (int i = 0; i < n; ++i) {
+            lambda[i] = C.get(i, i);
+        }
+        return lambda;
+    }
+
+    private static void rotate(DataBlock x, DataBlock y, double c, double s) {
+        for (int i = 0; i < x.length(); ++i) {
+            double xi = x.get(i), yi = y.get(i);
+            x.set(i, c * xi - s * yi);
+            y.set(i, s * xi + c * yi);
+        }
+    }
+}
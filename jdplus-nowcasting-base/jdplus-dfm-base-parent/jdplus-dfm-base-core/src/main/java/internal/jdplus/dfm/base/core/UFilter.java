@@ -0,0 +1,501 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import java.util.Arrays;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
+import jdplus.toolkit.base.core.ssf.ISsfDynamics;
+import jdplus.toolkit.base.core.ssf.ISsfLoading;
+import jdplus.toolkit.base.core.ssf.State;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsfData;
+import jdplus.toolkit.base.core.ssf.multivariate.ISsfErrors;
+import jdplus.toolkit.base.core.ssf.multivariate.ISsfMeasurements;
+import jdplus.toolkit.base.core.stats.likelihood.Likelihood;
+import nbbrd.design.Development;
+
+/**
+ * Univariate treatment of a multivariate state space model with independent
+ * measurement errors. The observations of each period are processed one at a
+ * time (scalar updates). Missing values are simply skipped.
+ * For time invariant models, the filter can detect the convergence of the
+ * covariance matrix for a periodic pattern of observations (for instance
+ * the alternance of monthly and quarterly observations). The pattern and the
+ * covariance of each period are compared with those of one cycle earlier;
+ * once they are stable over a whole cycle, the gains of the different phases
+ * of the cycle are re-used until the pattern changes.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class UFilter {
+
+    public static final double DEF_STEADYSTATE_EPS = 1e-9;
+    /**
+     * Maximal length of the cycles of the patterns of observations (12 covers
+     * the monthly, quarterly and annual series of a monthly panel)
+     */
+    public static final int MAX_CYCLE = 12;
+
+    private final IMultivariateSsf ssf;
+    private final ISsfDynamics dynamics;
+    private final ISsfMeasurements measurements;
+    private final boolean store;
+    private final double sseps;
+    private final int cblock;
+
+    // filtering results
+    private int size;
+    private DataBlock[] A;
+    private FastMatrix[] P;
+    private int[][] used;
+    private double[][] E, F;
+    private DataBlock[][] M;
+
+    // steady state
+    private int ssstart;
+
+    // predicted states at the start of the blocks of periods
+    private DataBlock[] cA;
+    private FastMatrix[] cP;
+
+    // likelihood
+    private int n;
+    private double ssq, ldet;
+    private double[] res;
+
+    /**
+     *
+     * @param ssf
+     * @param store Stores the filtering results (needed by the smoother)
+     */
+    public UFilter(IMultivariateSsf ssf, boolean store) {
+        this(ssf, store, 0);
+    }
+
+    /**
+     *
+     * @param ssf
+     * @param store Stores the filtering results (needed by the smoother)
+     * @param steadyStateTolerance Tolerance used in the detection of the
+     * steady state (relative max difference between the predicted covariances
+     * of two periods separated by one cycle). 0 to disable the detection
+     */
+    public UFilter(IMultivariateSsf ssf, boolean store, double steadyStateTolerance) {
+        this(ssf, store, steadyStateTolerance, 0);
+    }
+
+    /**
+     *
+     * @param ssf
+     * @param store Stores the filtering results (needed by the smoother)
+     * @param steadyStateTolerance Tolerance used in the detection of the
+     * steady state. 0 to disable the detection
+     * @param blockLength Length of the blocks of periods. The predicted
+     * states (and their covariances) at the start of each block are stored
+     * (see checkpointA/checkpointP). 0 to disable the checkpoints
+     */
+    public UFilter(IMultivariateSsf ssf, boolean store, double steadyStateTolerance, int blockLength) {
+        this.ssf = ssf;
+        this.dynamics = ssf.dynamics();
+        this.measurements = ssf.measurements();
+        this.store = store;
+        this.sseps = steadyStateTolerance;
+        this.cblock = blockLength;
+    }
+
+    /**
+     * Pattern of observations, predicted covariance and gains of a period
+     */
+    private static class Gains {
+
+        final int[] obs, used;
+        final FastMatrix P;
+        final double[] F;
+        final DataBlock[] M;
+
+        Gains(int[] obs, FastMatrix P, int[] used, double[] F, DataBlock[] M, int n) {
+            this.obs = obs;
+            this.P = P;
+            this.used = Arrays.copyOf(used, n);
+            this.F = Arrays.copyOf(F, n);
+            this.M = Arrays.copyOf(M, n);
+        }
+    }
+
+    /**
+     * The univariate treatment is only possible with independent measurement
+     * errors
+     *
+     * @param ssf
+     * @return
+     */
+    public static boolean isApplicable(IMultivariateSsf ssf) {
+        ISsfErrors errors = ssf.measurements().errors();
+        return errors == null || errors.areIndependent();
+    }
+
+    public boolean process(IMultivariateSsfData data) {
+        if (!isApplicable(ssf) || ssf.initialization().isDiffuse()) {
+            return false;
+        }
+        int dim = ssf.getStateDim(), nvars = measurements.getCount(), nobs = data.getObsCount();
+        clear(nobs, nvars);
+        DataBlock a = DataBlock.make(dim);
+        FastMatrix pt = FastMatrix.square(dim);
+        ssf.initialization().a0(a);
+        ssf.initialization().Pf0(pt);
+        ISsfErrors errors = measurements.errors();
+        boolean hvar = errors != null && !errors.isTimeInvariant();
+        double[] h = variances(errors, 0, nvars);
+        ISsfLoading[] loadings = new ISsfLoading[nvars];
+        for (int i = 0; i < nvars; ++i) {
+            loadings[i] = measurements.loading(i);
+        }
+        int[] tused = new int[nvars];
+        double[] te = new double[nvars], tf = new double[nvars];
+        DataBlock[] tm = new DataBlock[nvars];
+        DataBlock mtmp = store ? null : DataBlock.make(dim);
+        boolean steady = sseps > 0 && !hvar && dynamics.isTimeInvariant() && measurements.isTimeInvariant();
+        // gains of the last periods (history[t % MAX_CYCLE]) and number of
+        // consecutive periods that are identical to the periods one cycle
+        // (of length c) earlier (nconv[c])
+        Gains[] history = steady ? new Gains[MAX_CYCLE] : null;
+        int[] nconv = steady ? new int[MAX_CYCLE + 1] : null;
+        int nhistory = 0;
+        // steady state: gains of the successive phases of the cycle,
+        // starting at cstart
+        Gains[] cycle = null;
+        int cstart = 0;
+        for (int t = 0; t < nobs; ++t) {
+            if (t > 0 && hvar) {
+                h = variances(errors, t, nvars);
+            }
+            int[] obs = steady ? observations(data, t, nvars) : null;
+            if (cycle != null) {
+                Gains g = cycle[(t - cstart) % cycle.length];
+                if (Arrays.equals(obs, g.obs)) {
+                    steadyStep(t, data, a, g);
+                    continue;
+                }
+                // back to the usual recursions
+                pt.copy(g.P);
+                cycle = null;
+                nhistory = 0;
+                Arrays.fill(nconv, 0);
+            }
+            if (steady) {
+                int c = 0;
+                for (int k = 1; k <= nhistory; ++k) {
+                    Gains g = history[(t - k) % MAX_CYCLE];
+                    if (Arrays.equals(obs, g.obs) && converged(pt, g.P)) {
+                        if (++nconv[k] >= k && c == 0) {
+                            c = k;
+                        }
+                    } else {
+                        nconv[k] = 0;
+                    }
+                }
+                if (c > 0) {
+                    // the gains of the last cycle are re-used
+                    cycle = new Gains[c];
+                    for (int k = 0; k < c; ++k) {
+                        cycle[k] = history[(t - c + k) % MAX_CYCLE];
+                    }
+                    cstart = t;
+                    ++ssstart;
+                    steadyStep(t, data, a, cycle[0]);
+                    continue;
+                }
+            }
+            checkpoint(t, a, pt);
+            FastMatrix p0 = store || steady ? pt.deepClone() : null;
+            if (store) {
+                A[t] = a.deepClone();
+                P[t] = p0;
+            }
+            int nused = 0;
+            for (int i = 0; i < nvars; ++i) {
+                if (data.isMissing(t, i)) {
+                    continue;
+                }
+                ISsfLoading loading = loadings[i];
+                // M = P Z'
+                DataBlock m = p0 != null ? DataBlock.make(dim) : mtmp;
+                for (int k = 0; k < dim; ++k) {
+                    m.set(k, loading.ZX(t, pt.column(k)));
+                }
+                double f = loading.ZX(t, m) + h[i];
+                if (f <= State.ZERO) {
+                    continue;
+                }
+                double e = data.get(t, i) - loading.ZX(t, a);
+                a.addAY(e / f, m);
+                pt.addXaXt(-1 / f, m);
+                ssq += e * e / f;
+                ldet += Math.log(f);
+                res[n++] = e / Math.sqrt(f);
+                tused[nused] = i;
+                te[nused] = e;
+                tf[nused] = f;
+                tm[nused++] = m;
+            }
+            if (store) {
+                used[t] = new int[nused];
+                System.arraycopy(tused, 0, used[t], 0, nused);
+                E[t] = new double[nused];
+                System.arraycopy(te, 0, E[t], 0, nused);
+                F[t] = new double[nused];
+                System.arraycopy(tf, 0, F[t], 0, nused);
+                M[t] = new DataBlock[nused];
+                System.arraycopy(tm, 0, M[t], 0, nused);
+            }
+            if (steady) {
+                history[t % MAX_CYCLE] = new Gains(obs, p0, tused, tf, tm, nused);
+                if (nhistory < MAX_CYCLE) {
+                    ++nhistory;
+                }
+            }
+            // prediction
+            dynamics.TX(t, a);
+            dynamics.TVT(t, pt);
+            dynamics.addV(t, pt);
+            SymmetricMatrix.reenforceSymmetry(pt);
+        }
+        size = nobs;
+        return true;
+    }
+
+    /**
+     * Filtering step in the steady state: the covariance and the gains are
+     * not updated
+     */
+    private void steadyStep(int t, IMultivariateSsfData data, DataBlock a, Gains ss) {
+        checkpoint(t, a, ss.P);
+        int nused = ss.used.length;
+        double[] te = store ? new double[nused] : null;
+        if (store) {
+            A[t] = a.deepClone();
+            P[t] = ss.P;
+        }
+        for (int j = 0; j < nused; ++j) {
+            int i = ss.used[j];
+            double f = ss.F[j];
+            double e = data.get(t, i) - measurements.loading(i).ZX(t, a);
+            a.addAY(e / f, ss.M[j]);
+            ssq += e * e / f;
+            ldet += Math.log(f);
+            res[n++] = e / Math.sqrt(f);
+            if (store) {
+                te[j] = e;
+            }
+        }
+        if (store) {
+            used[t] = ss.used;
+            E[t] = te;
+            F[t] = ss.F;
+            M[t] = ss.M;
+        }
+        dynamics.TX(t, a);
+    }
+
+    private void checkpoint(int t, DataBlock a, FastMatrix pt) {
+        if (cblock > 0 && t % cblock == 0) {
+            cA[t / cblock] = a.deepClone();
+            cP[t / cblock] = pt.deepClone();
+        }
+    }
+
+    private static int[] observations(IMultivariateSsfData data, int t, int nvars) {
+        int[] obs = new int[nvars];
+        int n = 0;
+        for (int i = 0; i < nvars; ++i) {
+            if (!data.isMissing(t, i)) {
+                obs[n++] = i;
+            }
+        }
+        return Arrays.copyOf(obs, n);
+    }
+
+    private boolean converged(FastMatrix P, FastMatrix Pprev) {
+        int dim = P.getRowsCount();
+        double dmax = 0, pmax = 0;
+        for (int j = 0; j < dim; ++j) {
+            for (int i = 0; i < dim; ++i) {
+                double p = P.get(i, j);
+                double d = Math.abs(p - Pprev.get(i, j));
+                if (d > dmax) {
+                    dmax = d;
+                }
+                if (Math.abs(p) > pmax) {
+                    pmax = Math.abs(p);
+                }
+            }
+        }
+        return dmax <= sseps * pmax;
+    }
+
+    private void clear(int nobs, int nvars) {
+        size = 0;
+        ssstart = 0;
+        n = 0;
+        ssq = 0;
+        ldet = 0;
+        res = new double[nobs * nvars];
+        if (cblock > 0) {
+            int nblocks = (nobs + cblock - 1) / cblock;
+            cA = new DataBlock[nblocks];
+            cP = new FastMatrix[nblocks];
+        }
+        if (store) {
+            A = new DataBlock[nobs];
+            P = new FastMatrix[nobs];
+            used = new int[nobs][];
+            E = new double[nobs][];
+            F = new double[nobs][];
+            M = new DataBlock[nobs][];
+        }
+    }
+
+    private double[] variances(ISsfErrors errors, int pos, int nvars) {
+        if (errors == null) {
+            return new double[nvars];
+        }
+        FastMatrix H = FastMatrix.square(nvars);
+        errors.H(pos, H);
+        return H.diagonal().toArray();
+    }
+
+    public Likelihood likelihood(boolean scalingfactor) {
+        return Likelihood.builder(n)
+                .scalingFactor(scalingfactor)
+                .ssqErr(ssq)
+                .residuals(DoubleSeq.of(res).extract(0, n))
+                .logDeterminant(ldet).build();
+    }
+
+    public IMultivariateSsf getSsf() {
+        return ssf;
+    }
+
+    public boolean isStored() {
+        return store;
+    }
+
+    /**
+     * Number of times the filter entered in a steady state
+     *
+     * @return
+     */
+    public int getSteadyStatesCount() {
+        return ssstart;
+    }
+
+    /**
+     * Predicted state at the start of a block of periods (position
+     * block*blockLength)
+     *
+     * @param block
+     * @return
+     */
+    public DataBlock checkpointA(int block) {
+        return cA[block];
+    }
+
+    /**
+     * Predicted covariance at the start of a block of periods
+     *
+     * @param block
+     * @return
+     */
+    public FastMatrix checkpointP(int block) {
+        return cP[block];
+    }
+
+    /**
+     * Number of periods
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Predicted state at the beginning of the period
+     *
+     * @param pos
+     * @return
+     */
+    public DataBlock a(int pos) {
+        return A[pos];
+    }
+
+    /**
+     * Predicted covariance at the beginning of the period
+     *
+     * @param pos
+     * @return
+     */
+    public FastMatrix P(int pos) {
+        return P[pos];
+    }
+
+    /**
+     * Indexes of the variables used in the period, in the order of their
+     * processing
+     *
+     * @param pos
+     * @return
+     */
+    public int[] used(int pos) {
+        return used[pos];
+    }
+
+    /**
+     * Prediction errors of the used variables
+     *
+     * @param pos
+     * @return
+     */
+    public double[] errors(int pos) {
+        return E[pos];
+    }
+
+    /**
+     * Variances of the prediction errors of the used variables
+     *
+     * @param pos
+     * @return
+     */
+    public double[] errorVariances(int pos) {
+        return F[pos];
+    }
+
+    /**
+     * P(t,i)Z(i)' for the used variables
+     *
+     * @param pos
+     * @return
+     */
+    public DataBlock[] M(int pos) {
+        return M[pos];
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import java.util.function.ObjIntConsumer;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
+import jdplus.toolkit.base.core.ssf.ISsfDynamics;
+import jdplus.toolkit.base.core.ssf.ISsfLoading;
+import jdplus.toolkit.base.core.ssf.State;
+import jdplus.toolkit.base.core.ssf.StateInfo;
+import jdplus.toolkit.base.core.ssf.StateStorage;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsfData;
+import jdplus.toolkit.base.core.ssf.multivariate.ISsfMeasurements;
+import jdplus.toolkit.base.core.ssf.multivariate.MultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import jdplus.toolkit.base.core.stats.likelihood.Likelihood;
+import nbbrd.design.Development;
+
+/**
+ * Smoother corresponding to the univariate filter (UFilter)
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class USmoother {
+
+    public static class Builder {
+
+        private final IMultivariateSsf ssf;
+        private boolean calcVariance = true;
+        private double steadyStateTolerance = 0;
+
+        public Builder(IMultivariateSsf ssf) {
+            this.ssf = ssf;
+        }
+
+        public Builder calcVariance(boolean calc) {
+            this.calcVariance = calc;
+            return this;
+        }
+
+        /**
+         * Tolerance used by the filter for the detection of the steady state
+         * (0 to disable it)
+         *
+         * @param eps
+         * @return
+         */
+        public Builder steadyStateTolerance(double eps) {
+            this.steadyStateTolerance = eps;
+            return this;
+        }
+
+        public USmoother build() {
+            return new USmoother(ssf, calcVariance, steadyStateTolerance);
+        }
+    }
+
+    public static Builder builder(IMultivariateSsf ssf) {
+        return new Builder(ssf);
+    }
+
+    private final IMultivariateSsf ssf;
+    private final ISsfDynamics dynamics;
+    private final ISsfMeasurements measurements;
+    private final boolean calcvar;
+    private final double sseps;
+    private State state;
+    private StateStorage srslts;
+    private UFilter frslts;
+    private DataBlock r, z;
+    private FastMatrix N;
+    private Likelihood likelihood;
+
+    public USmoother(IMultivariateSsf ssf, boolean calcvar) {
+        this(ssf, calcvar, 0);
+    }
+
+    public USmoother(IMultivariateSsf ssf, boolean calcvar, double steadyStateTolerance) {
+        this.ssf = ssf;
+        this.calcvar = calcvar;
+        this.sseps = steadyStateTolerance;
+        dynamics = ssf.dynamics();
+        measurements = ssf.measurements();
+    }
+
+    public boolean process(IMultivariateSsfData data) {
+        UFilter filter = new UFilter(ssf, true, sseps);
+        if (!filter.process(data)) {
+            return false;
+        }
+        return process(0, data.getObsCount(), filter);
+    }
+
+    public boolean process(IMultivariateSsfData data, ObjIntConsumer<State> consumer) {
+        UFilter filter = new UFilter(ssf, true, sseps);
+        if (!filter.process(data)) {
+            return false;
+        }
+        return process(0, data.getObsCount(), filter, consumer);
+    }
+
+    /**
+     * Smoothing with checkpointed re-filtering (see MSmoother). The filter is
+     * run once on the whole sample, keeping only the likelihood and the
+     * predicted states at the start of the blocks of periods. The blocks are
+     * then filtered again from their checkpoints, one at a time from the last
+     * one, and smoothed backwards. Time varying models are smoothed without
+     * checkpoints
+     *
+     * @param data The observations (periods x variables)
+     * @param blockLength The length of the blocks (0 for the square root of
+     * the number of periods)
+     * @param consumer Consumer of the smoothed states (backwards). The state
+     * object is re-used between the periods
+     * @return
+     */
+    public boolean process(FastMatrix data, int blockLength, ObjIntConsumer<State> consumer) {
+        likelihood = null;
+        if (!dynamics.isTimeInvariant() || !measurements.isTimeInvariant()) {
+            if (!process(new SsfMatrix(data), consumer)) {
+                return false;
+            }
+            likelihood = frslts.likelihood(true);
+            return true;
+        }
+        int n = data.getRowsCount(), m = data.getColumnsCount();
+        int k = blockLength > 0 ? blockLength : MSmoother.defaultBlockLength(n);
+        int nblocks = (n + k - 1) / k;
+        UFilter filter = new UFilter(ssf, false, sseps, k);
+        if (!filter.process(new SsfMatrix(data))) {
+            return false;
+        }
+        likelihood = filter.likelihood(true);
+        initSmoother();
+        for (int b = nblocks - 1; b >= 0; --b) {
+            int start = b * k, len = Math.min(k, n - start);
+            IMultivariateSsf bssf = ssf;
+            if (b > 0) {
+                bssf = new MultivariateSsf(Initialization.user(filter.checkpointA(b), filter.checkpointP(b)), dynamics, measurements);
+            }
+            UFilter bfilter = new UFilter(bssf, true, sseps);
+            if (!bfilter.process(new SsfMatrix(data.extract(start, len, 0, m)))) {
+                return false;
+            }
+            // positions relative to the block (time invariant model)
+            frslts = bfilter;
+            for (int t = len - 1; t >= 0; --t) {
+                iterate(t);
+                consumer.accept(state, start + t);
+                if (start + t > 0) {
+                    propagate(Math.max(t - 1, 0));
+                }
+            }
+        }
+        return true;
+    }
+
+    public boolean process(int start, int end, UFilter results) {
+        StateStorage sresults;
+        if (calcvar) {
+            sresults = StateStorage.full(StateInfo.Smoothed);
+        } else {
+            sresults = StateStorage.light(StateInfo.Smoothed);
+        }
+        sresults.prepare(ssf.getStateDim(), start, end);
+        return process(start, end, results, sresults);
+    }
+
+    public boolean process(final int start, final int end, UFilter results, StateStorage sresults) {
+        srslts = sresults;
+        return process(start, end, results, (st, t) -> sresults.save(t, st, StateInfo.Smoothed));
+    }
+
+    /**
+     * Smoothing without storage. The smoothed states are provided to the
+     * consumer (backwards)
+     *
+     * @param start
+     * @param end
+     * @param results
+     * @param consumer Consumer of the smoothed states. The state object is
+     * re-used between the periods
+     * @return
+     */
+    public boolean process(final int start, final int end, UFilter results, ObjIntConsumer<State> consumer) {
+        if (!results.isStored()) {
+            return false;
+        }
+        frslts = results;
+        initSmoother();
+        for (int t = end - 1; t >= start; --t) {
+            iterate(t);
+            consumer.accept(state, t);
+            if (t > start) {
+                propagate(t - 1);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * r(t-1) = T'r, N(t-1) = T'NT
+     */
+    private void propagate(int pos) {
+        dynamics.XT(pos, r);
+        if (calcvar) {
+            dynamics.MT(pos, N);
+            dynamics.TtM(pos, N);
+            SymmetricMatrix.reenforceSymmetry(N);
+        }
+    }
+
+    public StateStorage getSmoothingResults() {
+        return srslts;
+    }
+
+    /**
+     * Filtering results of the last processing. Only the results of the first
+     * block in the case of a checkpointed smoothing
+     *
+     * @return
+     */
+    public UFilter getFilteringResults() {
+        return frslts;
+    }
+
+    /**
+     * Likelihood computed by the checkpointed smoothing
+     *
+     * @return Null if no checkpointed smoothing has been done
+     */
+    public Likelihood getLikelihood() {
+        return likelihood;
+    }
+
+    public DataBlock getFinalR() {
+        return r;
+    }
+
+    public FastMatrix getFinalN() {
+        return N;
+    }
+
+    private void initSmoother() {
+        int dim = ssf.getStateDim();
+        state = new State(dim);
+        r = DataBlock.make(dim);
+        z = DataBlock.make(dim);
+        if (calcvar) {
+            N = FastMatrix.square(dim);
+        }
+    }
+
+    private void iterate(int pos) {
+        int[] used = frslts.used(pos);
+        double[] e = frslts.errors(pos), f = frslts.errorVariances(pos);
+        DataBlock[] M = frslts.M(pos);
+        for (int j = used.length - 1; j >= 0; --j) {
+            ISsfLoading loading = measurements.loading(used[j]);
+            DataBlock m = M[j];
+            double fj = f[j];
+            if (calcvar) {
+                // N = Z'Z/f + L'NL, with L = I - MZ/f
+                DataBlock u = DataBlock.make(m.length());
+                u.addProduct(m, N.columnsIterator());
+                double c = m.dot(u);
+                z.set(0);
+                loading.Z(pos, z);
+                updateN(z, u, -1 / fj, (c / fj + 1) / fj);
+            }
+            // r = Z'e/f + L'r
+            double mr = m.dot(r);
+            loading.XpZd(pos, r, (e[j] - mr) / fj);
+        }
+        // a = a + P r
+        DataBlock a = state.a();
+        FastMatrix fP = frslts.P(pos);
+        a.copy(frslts.a(pos));
+        a.addProduct(r, fP.columnsIterator());
+        if (calcvar) {
+            // P = P-PNP
+            FastMatrix P = state.P();
+            P.copy(fP);
+            FastMatrix V = SymmetricMatrix.XtSX(N, fP);
+            P.sub(V);
+        }
+    }
+
+    /**
+     * N = N + a(zu' + uz') + b zz'
+     *
+     * @param z
+     * @param u
+     * @param a
+     * @param b
+     */
+    private void updateN(DataBlock z, DataBlock u, double a, double b) {
+        int n = z.length();
+        for (int i = 0; i < n; ++i) {
+            double zi = z.get(i);
+            if (zi != 0) {
+                for (int k = 0; k < n; ++k) {
+                    double uk = u.get(k);
+                    N.add(i, k, a * zi * uk);
+                    N.add(k, i, a * zi * uk);
+                }
+                for (int k = 0; k < n; ++k) {
+                    double zk = z.get(k);
+                    if (zk != 0) {
+                        N.add(i, k, b * zi * zk);
+                    }
+                }
+            }
+        }
+    }
+}
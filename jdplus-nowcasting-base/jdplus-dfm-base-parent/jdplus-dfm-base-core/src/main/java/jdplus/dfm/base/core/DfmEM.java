@@ -17,23 +17,25 @@
 package jdplus.dfm.base.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import jdplus.dfm.base.api.MeasurementType;
 import jdplus.dfm.base.api.timeseries.TsInformationSet;
 import jdplus.toolkit.base.api.math.matrices.Matrix;
-import jdplus.toolkit.base.api.util.Table;
 import jdplus.toolkit.base.core.data.DataBlock;
 
 import java.util.EnumMap;
 import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
 import jdplus.dfm.base.api.EmSpec;
 import jdplus.dfm.base.core.var.VarDescriptor;
 import jdplus.toolkit.base.api.data.DoubleSeq;
-import jdplus.toolkit.base.api.data.DoubleSeqCursor;
 import jdplus.toolkit.base.api.information.GenericExplorable;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
 import jdplus.toolkit.base.core.math.matrices.GeneralMatrix;
+import jdplus.toolkit.base.core.math.matrices.MatrixException;
 import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
-import jdplus.toolkit.base.core.ssf.StateStorage;
+import jdplus.toolkit.base.core.ssf.State;
 import jdplus.toolkit.base.core.ssf.multivariate.MultivariateOrdinaryFilter;
 import jdplus.toolkit.base.core.ssf.multivariate.PredictionErrorsDecomposition;
 import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
@@ -47,6 +49,7 @@ public class DfmEM implements IDfmInitializer {
 
     public static final int MAXITER = 1000, MAXNUMITER = 50;
     public static final double DEF_EPS = 1e-6;
+    private static final int MAXBACKTRACK = 5;
 
     public static class Builder {
 
@@ -57,6 +60,9 @@ public class DfmEM implements IDfmInitializer {
 //        private boolean fixedInitialConditions = true
 //        private boolean computeAll = true;
         private boolean fixedVar = false;
+        private boolean steadyState = false;
+        private boolean accelerated = false;
+        private boolean parallelProcessing = true;
 
         public Builder initializer(IDfmInitializer initializer) {
             this.initializer = initializer;
@@ -83,6 +89,41 @@ public class DfmEM implements IDfmInitializer {
             return this;
         }
 
+        /**
+         * Re-uses the steady state of the filter in the E-steps
+         *
+         * @param steadyState
+         * @return
+         */
+        public Builder steadyState(boolean steadyState) {
+            this.steadyState = steadyState;
+            return this;
+        }
+
+        /**
+         * Uses SQUAREM extrapolations between two EM steps. The extrapolated
+         * models are only accepted if they don't decrease the likelihood
+         *
+         * @param accelerated
+         * @return
+         */
+        public Builder accelerated(boolean accelerated) {
+            this.accelerated = accelerated;
+            return this;
+        }
+
+        /**
+         * Processes the different measurements in parallel in the E-steps and
+         * in the M-steps
+         *
+         * @param mt
+         * @return
+         */
+        public Builder parallelProcessing(boolean mt) {
+            this.parallelProcessing = mt;
+            return this;
+        }
+
 //        public Builder fixedInitialConditions(boolean fic) {
 //            this.fixedInitialConditions = fic;
 //            return this;
@@ -105,6 +146,7 @@ public class DfmEM implements IDfmInitializer {
         return builder()
                 .maxIter(spec.getMaxIter())
                 .precision(spec.getPrecision())
+                .accelerated(spec.isAccelerated())
                 .build();
     }
 
@@ -115,6 +157,9 @@ public class DfmEM implements IDfmInitializer {
 //    private final boolean fixedInitialConditions;
 //    private final boolean computeAll;
     private final boolean fixedVar;
+    private final boolean steadyState;
+    private final boolean accelerated;
+    private final boolean mt;
 
     private DynamicFactorModel dfm;
     private int nxlags;
@@ -122,9 +167,7 @@ public class DfmEM implements IDfmInitializer {
     private DfmProcessor processor;
     private TsInformationSet data;
     private Matrix M;
-    private final EnumMap<MeasurementType, DataBlock[]> G = new EnumMap<>(MeasurementType.class);
-    private final EnumMap<MeasurementType, Table<DataBlock>> G2 = new EnumMap<>(MeasurementType.class);
-    private DataBlock Efij[];
+    private Moments moments;
     private int iter_;
     private int modelSize;
     private int dataSize;
@@ -138,6 +181,9 @@ public class DfmEM implements IDfmInitializer {
 //        this.fixedInitialConditions = builder.fixedInitialConditions;
 //        this.computeAll = builder.computeAll;
         this.fixedVar = builder.fixedVar;
+        this.steadyState = builder.steadyState;
+        this.accelerated = builder.accelerated;
+        this.mt = builder.parallelProcessing;
     }
 
     public double getFinalLogLikelihood() {
@@ -145,107 +191,12 @@ public class DfmEM implements IDfmInitializer {
     }
 
     /**
-     * E(f(i))
-     *
-     * @param ss
-     * @param i
-     * @return
-     */
-    private DataBlock ef(StateStorage ss, int i) {
-        return ss.item(i);
-    }
-
-    /**
-     * cov(f(i), f(j))
-     *
-     * @param ss
-     * @param i
-     * @param j
-     * @return
-     */
-    private DataBlock vf(StateStorage ss, int i, int j) {
-        return ss.covar(i, j);
-    }
-
-    /**
-     * Computes E(fi, fj) = cov(fi, fj) + E(fi)*E(fj)
+     * Number of EM steps of the last estimation
      *
-     * @param ss
-     * @param i
-     * @param j
      * @return
      */
-    private DataBlock efifj(StateStorage ss, int i, int j) {
-        if (i > j) {
-            return efifj(ss, j, i);
-        }
-        int idx = i + modelSize * j;
-        DataBlock cur = Efij[idx];
-        if (cur == null) {
-            cur = vf(ss, i, j);
-            cur.addAXY(1, ef(ss, i), ef(ss, j));
-            Efij[idx] = cur;
-        }
-        return cur;
-    }
-
-    /**
-     * G, GG contain the smoothed states and their variances aggregated
-     * following the different measurement equations
-     *
-     * @param ss
-     */
-    private void calcG(StateStorage ss) {
-        G.clear();
-        G2.clear();
-        for (int i = 0; i < Efij.length; ++i) {
-            Efij[i] = null;
-        }
-        int nf = dfm.getNfactors();
-
-        for (MeasurementDescriptor desc : dfm.getMeasurements()) {
-            MeasurementType type = IDfmMeasurement.getMeasurementType(desc.getType());
-            if (!G.containsKey(type)) {
-                int len = desc.getType().getLength();
-                DataBlock z = DataBlock.make(len);
-                desc.getType().fill(z);
-                DataBlock[] g = new DataBlock[nf];
-                Table<DataBlock> g2 = new Table<>(nf, nf);
-                for (int i = 0, j = 0; i < nf; ++i, j += nxlags) {
-                    DataBlock column = DataBlock.make(dataSize);
-                    for (int k = 0; k < len; ++k) {
-                        column.addAY(z.get(k), ef(ss, j + k));
-                    }
-                    // g[i] = L
-                    g[i] = column;
-                }
-                for (int i = 0, j = 0; i < nf; ++i, j += nxlags) {
-                    for (int k = 0, l = 0; k <= i; ++k, l += nxlags) {
-                        DataBlock column = DataBlock.make(dataSize);
-                        for (int pr = 0; pr < len; ++pr) {
-                            double zr = z.get(pr);
-                            if (zr != 0) {
-                                for (int pc = 0; pc < len; ++pc) {
-                                    double zc = z.get(pc);
-                                    if (zc != 0) {
-                                        column.addAY(zr * zc, vf(ss, j + pr, l + pc));
-                                    }
-                                }
-                            }
-                        }
-                        column.addAXY(1, g[i], g[k]);
-                        g2.set(i, k, column);
-                        if (i != k) {
-                            g2.set(k, i, column);
-                        }
-
-                    }
-                }
-
-                G.put(type, g);
-                G2.put(type, g2);
-            }
-        }
+    public int getIterationsCount() {
+        return iter_;
     }
 
     @Override
@@ -258,7 +209,6 @@ public class DfmEM implements IDfmInitializer {
                 .build();
         modelSize = nxlags * rdfm.getNfactors();
         dataSize = data.getCurrentDomain().getLength();
-        Efij = new DataBlock[modelSize * modelSize];
         M = data.generateMatrix(null);
         if (initializer != null) {
             initializer.initialize(dfm, data);
@@ -266,12 +216,19 @@ public class DfmEM implements IDfmInitializer {
         iter_ = 0;
         logLikelihood = 0;
         filter(true);
-        while (iter_++ < maxIter) {
-            if (!EStep()) {
-                break;
-            }
-            if (!MStep()) {
-                break;
+        while (iter_ < maxIter) {
+            ++iter_;
+            if (accelerated) {
+                if (!squaremStep()) {
+                    break;
+                }
+            } else {
+                if (!EStep()) {
+                    break;
+                }
+                if (!MStep()) {
+                    break;
+                }
             }
         }
 
@@ -282,12 +239,16 @@ public class DfmEM implements IDfmInitializer {
         return dfm;
     }
 
+    private Likelihood likelihood(DynamicFactorModel model) {
+        MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
+        PredictionErrorsDecomposition results = new PredictionErrorsDecomposition();
+        filter.process(model.ssfRepresentation(0), new SsfMatrix(FastMatrix.of(M)), results);
+        return results.likelihood(true);
+    }
+
     private void filter(boolean adjust) {
         try {
-            MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
-            PredictionErrorsDecomposition results = new PredictionErrorsDecomposition();
-            filter.process(dfm.ssfRepresentation(0), new SsfMatrix(FastMatrix.of(data.generateMatrix(null))), results);
-            Likelihood ll = results.likelihood(true);
+            Likelihood ll = likelihood(dfm);
             logLikelihood = ll.logLikelihood();
             if (adjust) {
                 dfm = dfm.rescaleVariances(ll.sigma2());
@@ -301,11 +262,14 @@ public class DfmEM implements IDfmInitializer {
         this.processor = DfmProcessor.builder()
                 .calcVariance(true)
                 .extendedLags(0)
+                .steadyState(steadyState)
                 .build();
-        if (!processor.process(dfm, data)) {
+        moments = new Moments();
+        if (!processor.process(dfm, data, moments)) {
             return false;
         }
-        Likelihood ll = processor.getFilteringResults().likelihood(true);
+        moments.flush();
+        Likelihood ll = processor.getLikelihood();
         if (iter_ > 1 && Math.abs(logLikelihood - ll.logLikelihood()) < eps) {
             return false;
         }
@@ -317,132 +281,230 @@ public class DfmEM implements IDfmInitializer {
 //        if (hinfo.cancel) {
 //            return false;
 //        }
-        calcG(processor.getSmoothingResults());
         return true;
     }
 
-    private boolean MStep() {
-        List<MeasurementDescriptor> loading = mloadings();
-        VarDescriptor var = mvar();
-        DynamicFactorModel tmp = new DynamicFactorModel(var, loading);
-        if (fixedVar || tmp.isValid()) {
-            dfm = tmp;
+    /**
+     * SQUAREM iteration (Varadhan and Roland, 2008): two EM steps followed by
+     * an extrapolation (S3 scheme), with backtracking when the likelihood
+     * decreases
+     *
+     * @return
+     */
+    private boolean squaremStep() {
+        DynamicFactorModel m0 = dfm;
+        if (!EStep() || !MStep()) {
+            return false;
+        }
+        DynamicFactorModel m1 = dfm;
+        if (iter_ >= maxIter) {
             return true;
-        } else {
+        }
+        ++iter_;
+        if (!EStep() || !MStep()) {
             return false;
         }
-    }
-
-    private static double dot(DoubleSeq y, DataBlock g) {
-        DoubleSeqCursor ycursor = y.cursor();
-        DoubleSeqCursor gcursor = g.cursor();
-        int n = y.length();
-        double s = 0;
+        DynamicFactorModel m2 = dfm;
+        double[] p0 = parameters(m0), p1 = parameters(m1), p2 = parameters(m2);
+        if (p0 == null || p1 == null || p2 == null) {
+            return true;
+        }
+        int n = p0.length;
+        double[] r = new double[n], v = new double[n];
+        double rr = 0, vv = 0;
         for (int i = 0; i < n; ++i) {
-            double ycur = ycursor.getAndNext();
-            if (Double.isFinite(ycur)) {
-                s += ycur * gcursor.getAndNext();
-            } else {
-                gcursor.skip(1);
+            r[i] = p1[i] - p0[i];
+            v[i] = p2[i] - 2 * p1[i] + p0[i];
+            rr += r[i] * r[i];
+            vv += v[i] * v[i];
+        }
+        if (vv == 0) {
+            return true;
+        }
+        double alpha = -Math.sqrt(rr / vv);
+        if (alpha >= -1) {
+            return true;
+        }
+        double ll2;
+        try {
+            ll2 = likelihood(m2).logLikelihood();
+        } catch (RuntimeException err) {
+            return true;
+        }
+        double[] p = new double[n];
+        for (int k = 0; k < MAXBACKTRACK && alpha < -1; ++k) {
+            for (int i = 0; i < n; ++i) {
+                p[i] = p0[i] - 2 * alpha * r[i] + alpha * alpha * v[i];
+            }
+            DynamicFactorModel m = model(p, m0);
+            if (m != null && (fixedVar || m.isValid())) {
+                try {
+                    double ll = likelihood(m).logLikelihood();
+                    if (Double.isFinite(ll) && ll >= ll2) {
+                        dfm = m;
+                        return true;
+                    }
+                } catch (RuntimeException err) {
+                }
             }
+            alpha = (alpha - 1) / 2;
         }
-        return s;
+        // keep m2
+        return true;
     }
 
     /**
-     * Sum the items of g for non missing y
+     * Unconstrained parameters used in the extrapolations: loadings, square
+     * roots of the measurement variances, VAR coefficients and Cholesky factor
+     * of the innovations covariance (by row)
      *
-     * @param y
-     * @param g
+     * @param model
      * @return
      */
-    private static double sum(DoubleSeq y, DataBlock g) {
-        DoubleSeqCursor ycursor = y.cursor();
-        DoubleSeqCursor gcursor = g.cursor();
-        int n = y.length();
-        double s = 0;
-        for (int i = 0; i < n; ++i) {
-            double ycur = ycursor.getAndNext();
-            if (Double.isFinite(ycur)) {
-                s += gcursor.getAndNext();
-            } else {
-                gcursor.skip(1);
+    private double[] parameters(DynamicFactorModel model) {
+        int nf = model.getNfactors();
+        FastMatrix L = FastMatrix.of(model.getVar().getInnovationsVariance());
+        try {
+            SymmetricMatrix.lcholesky(L);
+        } catch (MatrixException err) {
+            return null;
+        }
+        double[] a = model.getVar().getCoefficients().toArray();
+        int n = a.length + nf * (nf + 1) / 2;
+        for (MeasurementDescriptor desc : model.getMeasurements()) {
+            n += desc.getUsedFactorsCount() + 1;
+        }
+        double[] p = new double[n];
+        int pos = 0;
+        for (MeasurementDescriptor desc : model.getMeasurements()) {
+            for (int j = 0; j < nf; ++j) {
+                double c = desc.getCoefficient(j);
+                if (!Double.isNaN(c)) {
+                    p[pos++] = c;
+                }
+            }
+            p[pos++] = Math.sqrt(desc.getVariance());
+        }
+        System.arraycopy(a, 0, p, pos, a.length);
+        pos += a.length;
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                p[pos++] = L.get(i, j);
             }
         }
-        return s;
+        return p;
+    }
+
+    private DynamicFactorModel model(double[] p, DynamicFactorModel template) {
+        int nf = template.getNfactors();
+        int pos = 0;
+        List<MeasurementDescriptor> ndescs = new ArrayList<>();
+        for (MeasurementDescriptor desc : template.getMeasurements()) {
+            double[] c = desc.getCoefficient().toArray();
+            for (int j = 0; j < c.length; ++j) {
+                if (!Double.isNaN(c[j])) {
+                    c[j] = p[pos++];
+                }
+            }
+            double e = p[pos++];
+            ndescs.add(desc.toBuilder()
+                    .coefficient(DoubleSeq.of(c))
+                    .variance(e * e)
+                    .build());
+        }
+        VarDescriptor var = template.getVar();
+        FastMatrix A = FastMatrix.of(var.getCoefficients());
+        double[] a = A.getStorage();
+        System.arraycopy(p, pos, a, 0, a.length);
+        pos += a.length;
+        FastMatrix L = FastMatrix.square(nf);
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                L.set(i, j, p[pos++]);
+            }
+        }
+        FastMatrix Q = FastMatrix.square(nf);
+        SymmetricMatrix.LLt(L, Q);
+        return new DynamicFactorModel(new VarDescriptor(A, Q, var.getInitialization()), ndescs);
+    }
+
+    private boolean MStep() {
+        List<MeasurementDescriptor> loading = mloadings();
+        VarDescriptor var = mvar();
+        DynamicFactorModel tmp = new DynamicFactorModel(var, loading);
+        if (fixedVar || tmp.isValid()) {
+            dfm = tmp;
+            return true;
+        } else {
+            return false;
+        }
     }
 
     private List<MeasurementDescriptor> mloadings() {
         // maximize loading
-        int i = 0;
-        List<MeasurementDescriptor> ndescs = new ArrayList<>();
         // each measurement descriptor corresponds to a variable
-        for (MeasurementDescriptor mdesc : dfm.getMeasurements()) {
-            MeasurementType type = IDfmMeasurement.getMeasurementType(mdesc.getType());
-            DataBlock[] g = G.get(type);
-            Table<DataBlock> g2 = G2.get(type);
-            // actual variable
-            DoubleSeq y = M.column(i++);
-            int nobs = y.count(z -> Double.isFinite(z));
-            // gy[k] contains E(y*g[k]]
-            double[] gy = new double[mdesc.getUsedFactorsCount()];
-            FastMatrix g2cur = FastMatrix.square(gy.length);
-
-            for (int j = 0, u = 0; j < mdesc.getCoefficient().length(); ++j) {
-                // check that the factor j is used
-                if (!Double.isNaN(mdesc.getCoefficient(j))) {
-                    // gj
-                    DataBlock gj = g[j];
-                    gy[u] = dot(y, gj);
-                    for (int k = 0, v = 0; k <= j; ++k) {
-                        if (!Double.isNaN(mdesc.getCoefficient(k))) {
-                            DataBlock g2jk = g2.get(j, k);
-                            g2cur.set(u, v, sum(y, g2jk));
-                            ++v;
-                        }
+        List<MeasurementDescriptor> descs = dfm.getMeasurements();
+        MeasurementDescriptor[] ndescs = new MeasurementDescriptor[descs.size()];
+        IntStream range = IntStream.range(0, ndescs.length);
+        if (mt) {
+            range = range.parallel();
+        }
+        range.forEach(i -> ndescs[i] = mloading(i, descs.get(i)));
+        return Arrays.asList(ndescs);
+    }
+
+    private MeasurementDescriptor mloading(int i, MeasurementDescriptor mdesc) {
+        double[] gyi = moments.gy[i];
+        double[][] ggi = moments.gg[i];
+        int nobs = moments.nobs[i];
+        double yy = moments.yy[i];
+        // gy[k] contains E(y*g[k]]
+        double[] gy = new double[mdesc.getUsedFactorsCount()];
+        FastMatrix g2cur = FastMatrix.square(gy.length);
+
+        for (int j = 0, u = 0; j < mdesc.getCoefficient().length(); ++j) {
+            // check that the factor j is used
+            if (!Double.isNaN(mdesc.getCoefficient(j))) {
+                gy[u] = gyi[j];
+                for (int k = 0, v = 0; k <= j; ++k) {
+                    if (!Double.isNaN(mdesc.getCoefficient(k))) {
+                        g2cur.set(u, v, ggi[j][k]);
+                        ++v;
                     }
-                    ++u;
                 }
+                ++u;
             }
-            SymmetricMatrix.fromLower(g2cur);
-            // C = gcur*g2cur^-1 or C * g2cur = gy
-            SymmetricMatrix.solve(g2cur, DataBlock.of(gy), false);
-            double[] c = mdesc.getCoefficient().toArray();
-            for (int j = 0, u = 0; j < c.length; ++j) {
-                if (!Double.isNaN(c[j])) {
-                    c[j] = gy[u++];
-                }
+        }
+        SymmetricMatrix.fromLower(g2cur);
+        // C = gcur*g2cur^-1 or C * g2cur = gy
+        SymmetricMatrix.solve(g2cur, DataBlock.of(gy), false);
+        double[] c = mdesc.getCoefficient().toArray();
+        for (int j = 0, u = 0; j < c.length; ++j) {
+            if (!Double.isNaN(c[j])) {
+                c[j] = gy[u++];
             }
-            double ee = 0;
-            for (int z = 0; z < dataSize; ++z) {
-                double yz = y.get(z);
-                if (!Double.isNaN(yz)) {
-                    ee += yz * yz;
-                    for (int j = 0; j < c.length; ++j) {
-                        double cj = c[j];
-                        if (!Double.isNaN(cj)) {
-                            double gj = g[j].get(z);
-                            ee -= 2 * cj * gj * yz;
-                            for (int k = 0; k < c.length; ++k) {
-                                double ck = c[k];
-                                if (!Double.isNaN(ck)) {
-                                    ee += g2.get(j, k).get(z) * cj * ck;
-                                }
-                            }
-                        }
+        }
+        double ee = yy;
+        for (int j = 0; j < c.length; ++j) {
+            double cj = c[j];
+            if (!Double.isNaN(cj)) {
+                ee -= 2 * cj * gyi[j];
+                for (int k = 0; k < c.length; ++k) {
+                    double ck = c[k];
+                    if (!Double.isNaN(ck)) {
+                        ee += ggi[j][k] * cj * ck;
                     }
                 }
             }
-            MeasurementDescriptor.Builder mbuilder = mdesc.toBuilder();
-            mbuilder.coefficient(DoubleSeq.of(c));
-            if (ee < 0) {
-                mbuilder.variance(1e-12);
-            } else {
-                mbuilder.variance(ee / nobs);
-            }
-            ndescs.add(mbuilder.build());
         }
-        return ndescs;
+        MeasurementDescriptor.Builder mbuilder = mdesc.toBuilder();
+        mbuilder.coefficient(DoubleSeq.of(c));
+        if (ee < 0) {
+            mbuilder.variance(1e-12);
+        } else {
+            mbuilder.variance(ee / nobs);
+        }
+        return mbuilder.build();
     }
 
     private VarDescriptor mvar() {
@@ -456,24 +518,18 @@ public class DfmEM implements IDfmInitializer {
         int n = nf * nl;
         FastMatrix f = FastMatrix.make(nf, n);
         FastMatrix f2 = FastMatrix.square(n);
-        StateStorage ss = processor.getSmoothingResults();
+        double[][] S = moments.S;
         // fill the matrices
         for (int i = 0; i < nf; ++i) {
             for (int j = 0; j < nl; ++j) {
                 for (int k = 0; k < nf; ++k) {
-                    double x = efifj(ss, i * nxlags, k * nxlags + j + 1).sum();
-                    f.set(i, j * nf + k, x);
+                    f.set(i, j * nf + k, S[i][(j + 1) * nf + k]);
                 }
             }
         }
-        for (int i = 1, r = 0; i <= nl; ++i) {
-            for (int k = 0; k < nf; ++k, ++r) {
-                for (int j = 1, c = 0; j <= nl; ++j) {
-                    for (int l = 0; l < nf; ++l, ++c) {
-                        double x = efifj(ss, k * nxlags + i, l * nxlags + j).sum();
-                        f2.set(r, c, x);
-                    }
-                }
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                f2.set(i, j, S[nf + i][nf + j]);
             }
         }
         // A = f/f2 <-> Af2 = f
@@ -486,7 +542,7 @@ public class DfmEM implements IDfmInitializer {
         );
         for (int i = 0; i < nf; ++i) {
             for (int j = 0; j <= i; ++j) {
-                Q.set(i, j, efifj(ss, i * nxlags, j * nxlags).sum());
+                Q.set(i, j, S[i][j]);
             }
         }
         SymmetricMatrix.fromLower(Q);
@@ -498,4 +554,167 @@ public class DfmEM implements IDfmInitializer {
         return new VarDescriptor(A, Q, var.getInitialization());
     }
 
+    /**
+     * Sufficient statistics of the M-step, accumulated on the smoothed states:
+     * E(y g(j)), E(g(j)g(k)) (for observed y) and sum of y*y for each
+     * measurement, where g(j) is the aggregation of the factor j following
+     * the measurement equation; E(f f') for the factors and their lags.
+     * The smoothed covariances are never stored and the filtering is
+     * checkpointed (see DfmProcessor), so that the memory of the E-step
+     * doesn't grow with the square of the state dimension times the length of
+     * the sample. The aggregated factors are buffered by chunks of periods,
+     * which are flushed in parallel on the different measurements.
+     */
+    private class Moments implements ObjIntConsumer<State> {
+
+        static final int CHUNK = 64;
+
+        final int nf, nl, nm, c;
+        final int[] mtype;
+        final double[][] z;
+        final double[][] gy, S;
+        final double[][][] gg;
+        final double[] yy;
+        final int[] nobs;
+        final int[] vidx;
+        // buffers (chunk x type x ...)
+        final double[][][] gm;
+        final double[][][][] gm2;
+        final int[] tchunk;
+        int nchunk;
+
+        Moments() {
+            nf = dfm.getNfactors();
+            nl = dfm.getNlags();
+            nm = dfm.getMeasurementsCount();
+            c = nxlags;
+            EnumMap<MeasurementType, Integer> types = new EnumMap<>(MeasurementType.class);
+            List<double[]> weights = new ArrayList<>();
+            mtype = new int[nm];
+            int i = 0;
+            for (MeasurementDescriptor desc : dfm.getMeasurements()) {
+                MeasurementType type = IDfmMeasurement.getMeasurementType(desc.getType());
+                Integer k = types.get(type);
+                if (k == null) {
+                    k = weights.size();
+                    types.put(type, k);
+                    DataBlock w = DataBlock.make(desc.getType().getLength());
+                    desc.getType().fill(w);
+                    weights.add(w.toArray());
+                }
+                mtype[i++] = k;
+            }
+            z = weights.toArray(double[][]::new);
+            gy = new double[nm][nf];
+            gg = new double[nm][nf][nf];
+            yy = new double[nm];
+            nobs = new int[nm];
+            int nv = nf * (nl + 1);
+            vidx = new int[nv];
+            for (int l = 0, q = 0; l <= nl; ++l) {
+                for (int j = 0; j < nf; ++j, ++q) {
+                    vidx[q] = j * c + l;
+                }
+            }
+            S = new double[nv][nv];
+            gm = new double[CHUNK][z.length][nf];
+            gm2 = new double[CHUNK][z.length][nf][nf];
+            tchunk = new int[CHUNK];
+        }
+
+        @Override
+        public void accept(State state, int t) {
+            DataBlock a = state.a();
+            FastMatrix P = state.P();
+            for (int k = 0; k < z.length; ++k) {
+                aggregate(a, P, z[k], gm[nchunk][k], gm2[nchunk][k]);
+            }
+            tchunk[nchunk++] = t;
+            if (nchunk == CHUNK) {
+                flush();
+            }
+            int nv = vidx.length;
+            for (int q1 = 0; q1 < nv; ++q1) {
+                int s1 = vidx[q1];
+                double a1 = a.get(s1);
+                for (int q2 = 0; q2 <= q1; ++q2) {
+                    int s2 = vidx[q2];
+                    double v = P.get(s1, s2) + a1 * a.get(s2);
+                    S[q1][q2] += v;
+                    if (q1 != q2) {
+                        S[q2][q1] += v;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the buffered periods to the statistics of the measurements
+         */
+        void flush() {
+            if (nchunk == 0) {
+                return;
+            }
+            IntStream range = IntStream.range(0, nm);
+            if (mt && nm * nchunk >= CHUNK * CHUNK) {
+                range = range.parallel();
+            }
+            range.forEach(i -> add(i));
+            nchunk = 0;
+        }
+
+        private void add(int i) {
+            int k = mtype[i];
+            double[] gyi = gy[i];
+            double[][] ggi = gg[i];
+            for (int p = 0; p < nchunk; ++p) {
+                double y = M.get(tchunk[p], i);
+                if (!Double.isFinite(y)) {
+                    continue;
+                }
+                double[] gmk = gm[p][k];
+                double[][] gm2k = gm2[p][k];
+                for (int j = 0; j < nf; ++j) {
+                    gyi[j] += y * gmk[j];
+                    for (int l = 0; l < nf; ++l) {
+                        ggi[j][l] += gm2k[j][l];
+                    }
+                }
+                yy[i] += y * y;
+                ++nobs[i];
+            }
+        }
+
+        /**
+         * E(g(j)) and E(g(j)g(l))
+         */
+        private void aggregate(DataBlock a, FastMatrix P, double[] w, double[] m, double[][] m2) {
+            for (int j = 0; j < nf; ++j) {
+                double s = 0;
+                for (int k = 0; k < w.length; ++k) {
+                    if (w[k] != 0) {
+                        s += w[k] * a.get(j * c + k);
+                    }
+                }
+                m[j] = s;
+            }
+            for (int j = 0; j < nf; ++j) {
+                for (int l = 0; l <= j; ++l) {
+                    double s = 0;
+                    for (int k = 0; k < w.length; ++k) {
+                        if (w[k] != 0) {
+                            for (int q = 0; q < w.length; ++q) {
+                                if (w[q] != 0) {
+                                    s += w[k] * w[q] * P.get(j * c + k, l * c + q);
+                                }
+                            }
+                        }
+                    }
+                    s += m[j] * m[l];
+                    m2[j][l] = s;
+                    m2[l][j] = s;
+                }
+            }
+        }
+    }
 }
@@ -52,7 +52,7 @@ public class DfmEstimator implements IDfmEstimator {
         private int maxIter = DEF_MAXITER, maxBlockIterations = DEF_MAXBLOCKITERATIONS, maxEmUp = DEF_MAXEMUP;
         private FunctionMinimizer.Builder minimizer;
         private int maxInitialIter = DEF_NSTART, maxIntermediateIter = DEF_NNEXT;
-        private boolean mixed = true, independentVarShocks = true;
+        private boolean mixed = true, independentVarShocks = true, collapsed = false, analyticalGradient = false, steadyState = false;
         private double eps = 1e-9;
         private TsDomain edomain = null;
 
@@ -91,6 +91,44 @@ public class DfmEstimator implements IDfmEstimator {
             return this;
         }
 
+        /**
+         * Uses the collapsed likelihood (computed on the projection of the
+         * observations on the factors). Recommended for large panels.
+         *
+         * @param collapsed
+         * @return
+         */
+        public Builder collapsed(boolean collapsed) {
+            this.collapsed = collapsed;
+            return this;
+        }
+
+        /**
+         * Uses the analytical gradient of the likelihood (score), when it is
+         * available. Only used by gradient-based minimizers (BFGS); the
+         * Levenberg-Marquardt method still uses numerical derivatives of the
+         * residuals. False by default
+         *
+         * @param analyticalGradient
+         * @return
+         */
+        public Builder analyticalGradient(boolean analyticalGradient) {
+            this.analyticalGradient = analyticalGradient;
+            return this;
+        }
+
+        /**
+         * Re-uses the gains of the filter in its steady state (balanced part
+         * of the sample)
+         *
+         * @param steadyState
+         * @return
+         */
+        public Builder steadyState(boolean steadyState) {
+            this.steadyState = steadyState;
+            return this;
+        }
+
         public Builder minimizer(FunctionMinimizer.Builder minimizer) {
             this.minimizer = minimizer;
             return this;
@@ -140,6 +178,9 @@ public class DfmEstimator implements IDfmEstimator {
     private final int maxInitialIter, maxIntermediateIter, maxBlockIterations, maxEmUp;
     private final boolean mixed;
     private final boolean independentVarShocks;
+    private final boolean collapsed;
+    private final boolean analyticalGradient;
+    private final boolean steadyState;
     private final double eps;
     private final FunctionMinimizer.Builder minimizer;
     private final TsDomain edomain;
@@ -158,6 +199,9 @@ public class DfmEstimator implements IDfmEstimator {
         this.maxEmUp = builder.maxEmUp;
         this.independentVarShocks = builder.independentVarShocks;
         this.mixed = builder.mixed;
+        this.collapsed = builder.collapsed;
+        this.analyticalGradient = builder.analyticalGradient;
+        this.steadyState = builder.steadyState;
         this.minimizer = builder.minimizer;
         this.edomain = builder.edomain;
         this.eps = builder.eps;
@@ -173,6 +217,9 @@ public class DfmEstimator implements IDfmEstimator {
                 .estimationDomain(edomain)
                 .independentVarShocks(independentVarShocks)
                 .mixed(mixed)
+                .collapsed(collapsed)
+                .analyticalGradient(analyticalGradient)
+                .steadyState(steadyState)
                 .minimizer(minimizer)
                 .precision(eps);
 
@@ -198,6 +245,17 @@ public class DfmEstimator implements IDfmEstimator {
         }
     }
 
+    private DfmFunction function(SsfMatrix data, IDfmMapping mapping, boolean log) {
+        return DfmFunction.builder(data, mapping)
+                .parallelProcessing(true)
+                .symmetricNumericalDerivatives(false)
+                .collapsed(collapsed)
+                .analyticalGradient(analyticalGradient)
+                .steadyState(steadyState)
+                .log(log)
+                .build();
+    }
+
     @Override
     public boolean estimate(final DynamicFactorModel dfm, TsInformationSet input) {
         DynamicFactorModel model = dfm;
@@ -220,16 +278,12 @@ public class DfmEstimator implements IDfmEstimator {
                 SimpleDfmMapping smapping = new SimpleDfmMapping(model);
                 DynamicFactorModel smodel = smapping.validate(model);
 
-                fn = DfmFunction.builder(data, smapping)
-                        .parallelProcessing(true)
-                        .symmetricNumericalDerivatives(false)
-                        .log(log)
-                        .build();
+                fn = function(data, smapping, log);
                 DfmFunctionPoint curpt = fn.evaluate(smapping.map(smodel));
 //                System.out.println(curpt.getLikelihood().logLikelihood());
                 fnmin.minimize(curpt);
                 pt = (DfmFunctionPoint) fnmin.getResult();
-                likelihood = pt.getLikelihood();
+                likelihood = pt.likelihood();
 //                System.out.println(pt.getLikelihood().logLikelihood());
                 double var = likelihood.sigma2();
                 model = pt.getCore().rescaleVariances(var);
@@ -242,25 +296,21 @@ public class DfmEstimator implements IDfmEstimator {
                 while (true) {
                     model = normalize(model);
                     IDfmMapping mapping = mapping(model, true, false);
-                    fn = DfmFunction.builder(data, mapping)
-                            .parallelProcessing(true)
-                            .symmetricNumericalDerivatives(false)
-                            .log(log)
-                            .build();
+                    fn = function(data, mapping, log);
 
 //                    setMessage(VSTEP);
                     pt = fn.evaluate(mapping.map(model));
                     fnmin.minimize(pt);
                     niter += fnmin.getIterationsCount();
                     pt = (DfmFunctionPoint) fnmin.getResult();
-                    likelihood = pt.getLikelihood();
+                    likelihood = pt.likelihood();
 
 //                    System.out.println(pt.getLikelihood().logLikelihood());
                     double var = likelihood.sigma2();
                     model = pt.getCore().rescaleVariances(var);
                     model = normalize(model);
                     if (mixed) {
-                        double ll0 = pt.getLikelihood().logLikelihood();
+                        double ll0 = pt.likelihood().logLikelihood();
                         DfmEM em = DfmEM.builder()
                                 .maxIter(maxIntermediateIter)
                                 .fixedVar(emUpLeft <= 0)
@@ -272,36 +322,28 @@ public class DfmEstimator implements IDfmEstimator {
                         }
                     } else {
                         mapping = mapping(model, false, true);
-                        fn = DfmFunction.builder(data, mapping)
-                                .parallelProcessing(true)
-                                .symmetricNumericalDerivatives(false)
-                                .log(log)
-                                .build();
+                        fn = function(data, mapping, log);
 //                        setMessage(MSTEP);
                         fnmin.minimize(fn.evaluate(mapping.map(model)));
                         niter += fnmin.getIterationsCount();
                         pt = (DfmFunctionPoint) fnmin.getResult();
 //                        System.out.println(pt.getLikelihood().logLikelihood());
-                        var = pt.getLikelihood().sigma2();
+                        var = pt.likelihood().sigma2();
                         model = pt.getCore().rescaleVariances(var);
                         model = normalize(model);
                     }
                     mapping = mapping(model, false, false);
-                    fn = DfmFunction.builder(data, mapping)
-                            .parallelProcessing(true)
-                            .symmetricNumericalDerivatives(false)
-                            .log(log)
-                            .build();
+                    fn = function(data, mapping, log);
 //                    setMessage(ALL);
                     converged = fnmin.minimize(fn.evaluate(mapping.map(model)));
                     niter += fnmin.getIterationsCount();
                     pt = (DfmFunctionPoint) fnmin.getResult();
 //                    System.out.println(pt.getLikelihood().logLikelihood());
-                    var = pt.getLikelihood().sigma2();
+                    var = pt.likelihood().sigma2();
                     model = pt.getCore().rescaleVariances(var);
                     model = normalize(model);
-                    boolean stop = likelihood != null && Math.abs(likelihood.logLikelihood() - pt.getLikelihood().logLikelihood()) < eps;
-                    likelihood = pt.getLikelihood();
+                    boolean stop = likelihood != null && Math.abs(likelihood.logLikelihood() - pt.likelihood().logLikelihood()) < eps;
+                    likelihood = pt.likelihood();
                     if (converged || niter >= maxIter || stop) {
                         break;
                     }
@@ -309,11 +351,7 @@ public class DfmEstimator implements IDfmEstimator {
             } else {
                 model = normalize(model);
                 IDfmMapping mapping = mapping(model, false, false);
-                fn = DfmFunction.builder(data, mapping)
-                        .parallelProcessing(true)
-                        .symmetricNumericalDerivatives(false)
-                        .log(log)
-                        .build();
+                fn = function(data, mapping, log);
                 fnmin = minimizer
                         .maxIter(maxIter)
                         .functionPrecision(eps)
@@ -321,10 +359,12 @@ public class DfmEstimator implements IDfmEstimator {
 //                setMessage(ALL);
                 converged = fnmin.minimize(fn.evaluate(mapping.map(model)));
                 pt = (DfmFunctionPoint) fnmin.getResult();
-                double var = pt.getLikelihood().sigma2();
+                double var = pt.likelihood().sigma2();
                 model = pt.getCore().rescaleVariances(var);
-                likelihood = pt.getLikelihood();
+                likelihood = pt.likelihood();
             }
+            // the intermediate steps don't need the deviances
+            likelihood = pt.getLikelihood();
             return true;
         } catch (Exception err) {
             return false;
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package jdplus.dfm.base.core;
+
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.api.math.matrices.Matrix;
+
+/**
+ * Partial derivatives of a function of a dynamic factor model (typically its
+ * log-likelihood) with respect to the coefficients of the model
+ *
+ * @author Jean Palate
+ */
+@lombok.Value
+@lombok.Builder(builderClassName = "Builder")
+public class DfmGradient {
+
+    /**
+     * Derivatives with respect to the loadings (measurements x factors). 0 for
+     * unused factors
+     */
+    private Matrix loadings;
+    /**
+     * Derivatives with respect to the variances of the measurement errors
+     */
+    private DoubleSeq measurementsVariance;
+    /**
+     * Derivatives with respect to the coefficients of the VAR (same layout as
+     * in VarDescriptor)
+     */
+    private Matrix varCoefficients;
+    /**
+     * Derivatives with respect to the covariance matrix of the innovations of
+     * the VAR. The matrix G is symmetric and such that dF = sum(G(i,j)dV(i,j))
+     * for any symmetric change dV
+     */
+    private Matrix innovationsVariance;
+}
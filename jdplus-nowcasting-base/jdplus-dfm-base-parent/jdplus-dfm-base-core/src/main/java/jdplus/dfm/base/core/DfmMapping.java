@@ -274,6 +274,57 @@ public class DfmMapping implements IDfmMapping {
         return p;
     }
 
+    @Override
+    public DoubleSeq gradient(DoubleSeq p, DfmGradient g) {
+        DataBlock gp = DataBlock.make(np);
+        DataBlock l = loadings(gp);
+        if (l != null) {
+            DoubleSeqCursor.OnMutable lcursor = l.cursor();
+            DoubleSeqCursor.OnMutable vcursor = mvars(gp).cursor();
+            DoubleSeqCursor xcursor = mvars(p).cursor();
+            Matrix gl = g.getLoadings();
+            DoubleSeq gv = g.getMeasurementsVariance();
+            int n = 0;
+            for (MeasurementDescriptor desc : template.getMeasurements()) {
+                for (int k = 0; k < nb; ++k) {
+                    if (!Double.isNaN(desc.getCoefficient(k)) && (mmax == null || n != mmax[k])) {
+                        lcursor.setAndNext(gl.get(n, k));
+                    }
+                }
+                if (n != ivmax) {
+                    // var = x*x
+                    vcursor.setAndNext(2 * xcursor.getAndNext() * gv.get(n));
+                }
+                ++n;
+            }
+        }
+        DataBlock gvi = vinnovations(gp), gvc = vcoefficients(gp);
+        if (gvi != null) {
+            gvc.copy(g.getVarCoefficients());
+            // V = LL', dV = dL L' + L dL' => dF/dL = 2 G L
+            FastMatrix L = FastMatrix.square(nb);
+            DoubleSeq vi = vinnovations(p);
+            int i0 = 0;
+            for (int i = 0; i < nb; ++i) {
+                L.row(i).range(0, i + 1).copy(vi.extract(i0, i + 1));
+                i0 += i + 1;
+            }
+            Matrix G = g.getInnovationsVariance();
+            i0 = 0;
+            for (int i = 0; i < nb; ++i) {
+                for (int j = 0; j <= i; ++j) {
+                    double s = 0;
+                    for (int k = j; k < nb; ++k) {
+                        s += G.get(i, k) * L.get(k, j);
+                    }
+                    gvi.set(i0 + j, 2 * s);
+                }
+                i0 += i + 1;
+            }
+        }
+        return gp;
+    }
+
     @Override
     public boolean checkBoundaries(DoubleSeq inparams) {
         // check the stability of VAR
@@ -207,6 +207,36 @@ public class DfmMappingI implements IDfmMapping {
         return p;
     }
 
+    @Override
+    public DoubleSeq gradient(DoubleSeq p, DfmGradient g) {
+        DataBlock gp = DataBlock.make(np);
+        DataBlock l = loadings(gp);
+        if (l != null) {
+            DoubleSeqCursor.OnMutable lcursor = l.cursor();
+            DoubleSeqCursor.OnMutable vcursor = mvars(gp).cursor();
+            DoubleSeqCursor xcursor = mvars(p).cursor();
+            Matrix gl = g.getLoadings();
+            DoubleSeq gv = g.getMeasurementsVariance();
+            int n = 0;
+            for (MeasurementDescriptor desc : template.getMeasurements()) {
+                for (int k = 0; k < nb; ++k) {
+                    if (!Double.isNaN(desc.getCoefficient(k))) {
+                        lcursor.setAndNext(gl.get(n, k));
+                    }
+                }
+                if (n != ivmax) {
+                    vcursor.setAndNext(2 * xcursor.getAndNext() * gv.get(n));
+                }
+                ++n;
+            }
+        }
+        DataBlock gvc = vcoefficients(gp);
+        if (gvc != null) {
+            gvc.copy(g.getVarCoefficients());
+        }
+        return gp;
+    }
+
     @Override
     public boolean checkBoundaries(DoubleSeq inparams) {
         // check the stability of VAR
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package jdplus.dfm.base.core;
+
+import internal.jdplus.dfm.base.core.TruncatedSvd;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import jdplus.dfm.base.api.timeseries.TsInformationSet;
+import jdplus.dfm.base.core.var.VarDescriptor;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.ISsfInitialization;
+
+/**
+ * Selection of the number of factors (and of lags) of a dynamic factor model.
+ * The information criteria of Bai and Ng (2002) are computed for all the
+ * numbers of factors from a single truncated SVD of the interpolated panel.
+ * Optionally, the best numbers of factors are combined with the different
+ * numbers of lags and the corresponding models are estimated by short EM
+ * runs (in parallel); they are then ranked by their BIC.
+ *
+ * @author Jean Palate
+ */
+public class DfmModelSelection {
+
+    public static enum InformationCriterion {
+        ICP1, ICP2, ICP3
+    }
+
+    /**
+     * Information criteria for a given number of factors
+     */
+    @lombok.Value
+    public static class Criteria {
+
+        int nfactors;
+        /**
+         * Mean of the squared residuals of the panel on the principal
+         * components
+         */
+        double variance;
+        double icp1, icp2, icp3;
+
+        public double get(InformationCriterion criterion) {
+            return switch (criterion) {
+                case ICP1 -> icp1;
+                case ICP2 -> icp2;
+                case ICP3 -> icp3;
+            };
+        }
+    }
+
+    /**
+     * Model estimated by a short EM run
+     */
+    @lombok.Value
+    public static class Candidate {
+
+        int nfactors, nlags;
+        DynamicFactorModel model;
+        double logLikelihood;
+        /**
+         * Number of estimated parameters: coefficients and innovations
+         * covariance of the VAR, free loadings (non missing coefficients) and
+         * variance of each measurement
+         */
+        int parametersCount;
+        double bic;
+    }
+
+    public static class Builder {
+
+        private int maxFactors = 8, maxLags = 4;
+        private InformationCriterion criterion = InformationCriterion.ICP2;
+        private int emCandidates = 0, emMaxIter = 25;
+        private double emPrecision = 1e-4;
+
+        private Builder() {
+        }
+
+        public Builder maxFactors(int n) {
+            this.maxFactors = n;
+            return this;
+        }
+
+        public Builder maxLags(int n) {
+            this.maxLags = n;
+            return this;
+        }
+
+        /**
+         * Criterion used to rank the numbers of factors
+         *
+         * @param criterion
+         * @return
+         */
+        public Builder criterion(InformationCriterion criterion) {
+            this.criterion = criterion;
+            return this;
+        }
+
+        /**
+         * Number of (best) numbers of factors that are estimated by EM, with
+         * 1 to maxLags lags. 0 if the selection is only based on the
+         * information criteria
+         *
+         * @param n
+         * @return
+         */
+        public Builder emCandidates(int n) {
+            this.emCandidates = n;
+            return this;
+        }
+
+        public Builder emMaxIter(int n) {
+            this.emMaxIter = n;
+            return this;
+        }
+
+        public Builder emPrecision(double eps) {
+            this.emPrecision = eps;
+            return this;
+        }
+
+        public DfmModelSelection build() {
+            return new DfmModelSelection(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final int maxFactors, maxLags, emCandidates, emMaxIter;
+    private final InformationCriterion criterion;
+    private final double emPrecision;
+
+    private List<Criteria> criteria;
+    private List<Candidate> candidates;
+
+    private DfmModelSelection(Builder builder) {
+        this.maxFactors = builder.maxFactors;
+        this.maxLags = builder.maxLags;
+        this.criterion = builder.criterion;
+        this.emCandidates = builder.emCandidates;
+        this.emMaxIter = builder.emMaxIter;
+        this.emPrecision = builder.emPrecision;
+    }
+
+    /**
+     *
+     * @param input The data
+     * @param measurements The type of measurement of each series (in the
+     * order of the series)
+     * @return False if the principal components couldn't be computed
+     */
+    public boolean process(TsInformationSet input, List<IDfmMeasurement> measurements) {
+        criteria = null;
+        candidates = null;
+        if (measurements.size() != input.getSeriesCount()) {
+            throw new IllegalArgumentException("The number of measurements should match the number of series");
+        }
+        if (!computeCriteria(input)) {
+            return false;
+        }
+        int ncmax = Math.min(emCandidates, criteria.size());
+        if (ncmax > 0) {
+            List<int[]> grid = new ArrayList<>();
+            for (int i = 0; i < ncmax; ++i) {
+                for (int p = 1; p <= maxLags; ++p) {
+                    grid.add(new int[]{criteria.get(i).getNfactors(), p});
+                }
+            }
+            int nobs = input.getDataCount();
+            candidates = grid.parallelStream()
+                    .map(c -> estimate(input, measurements, c[0], c[1], nobs))
+                    .filter(c -> Double.isFinite(c.getBic()))
+                    .sorted(Comparator.comparingDouble(Candidate::getBic))
+                    .toList();
+        } else {
+            candidates = List.of();
+        }
+        return true;
+    }
+
+    /**
+     * Information criteria, by increasing order of the selected criterion
+     *
+     * @return
+     */
+    public List<Criteria> getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Models estimated by EM, by increasing order of their BIC
+     *
+     * @return
+     */
+    public List<Candidate> getCandidates() {
+        return candidates;
+    }
+
+    private boolean computeCriteria(TsInformationSet input) {
+        PrincipalComponentsInitializer initializer = new PrincipalComponentsInitializer();
+        if (!initializer.prepare(input, maxFactors)) {
+            return false;
+        }
+        FastMatrix X = initializer.getInterpolatedData().deepClone();
+        int T = X.getRowsCount(), N = X.getColumnsCount();
+        int kmax = Math.min(maxFactors, Math.min(T, N));
+        if (kmax < 1) {
+            return false;
+        }
+        double rss = 0;
+        for (int j = 0; j < N; ++j) {
+            DataBlock xj = X.column(j);
+            xj.add(-xj.average());
+            rss += xj.ssq();
+        }
+        TruncatedSvd svd = TruncatedSvd.builder().rank(kmax).build();
+        svd.decompose(X);
+        DoubleSeq S = svd.S();
+        double NT = (double) N * T, c = (N + T) / NT, cmin = Math.min(N, T);
+        Criteria[] all = new Criteria[kmax];
+        for (int k = 1; k <= kmax; ++k) {
+            double s = S.get(k - 1);
+            rss -= s * s;
+            double v = Math.max(rss, 0) / NT, lv = Math.log(v);
+            all[k - 1] = new Criteria(k, v,
+                    lv + k * c * Math.log(1 / c),
+                    lv + k * c * Math.log(cmin),
+                    lv + k * Math.log(cmin) / cmin);
+        }
+        Arrays.sort(all, Comparator.comparingDouble(cr -> cr.get(criterion)));
+        criteria = Arrays.asList(all);
+        return true;
+    }
+
+    private Candidate estimate(TsInformationSet input, List<IDfmMeasurement> measurements, int nfactors, int nlags, int nobs) {
+        int n = measurements.size();
+        double[] c = new double[nfactors];
+        Arrays.fill(c, 1);
+        List<MeasurementDescriptor> mdescs = new ArrayList<>(n);
+        for (IDfmMeasurement m : measurements) {
+            mdescs.add(MeasurementDescriptor.builder()
+                    .type(m)
+                    .coefficient(DoubleSeq.of(c))
+                    .variance(1)
+                    .build());
+        }
+        DynamicFactorModel model = DynamicFactorModel.builder()
+                .var(VarDescriptor.defaultVar(nfactors, nlags, ISsfInitialization.Type.Unconditional))
+                .measurements(mdescs)
+                .build();
+        DynamicFactorModel pcaModel = new PrincipalComponentsInitializer().initialize(model, input);
+        if (pcaModel.isValid()) {
+            model = pcaModel;
+        }
+        DfmEM em = DfmEM.builder()
+                .maxIter(emMaxIter)
+                .precision(emPrecision)
+                .parallelProcessing(false)
+                .build();
+        DynamicFactorModel dfm = em.initialize(model, input);
+        double ll = em.getFinalLogLikelihood();
+        int np = nfactors * nfactors * nlags + nfactors * (nfactors + 1) / 2;
+        for (MeasurementDescriptor desc : dfm.getMeasurements()) {
+            np += desc.getCoefficient().count(Double::isFinite) + 1;
+        }
+        return new Candidate(nfactors, nlags, dfm, ll, np, -2 * ll + np * Math.log(nobs));
+    }
+}
@@ -16,7 +16,15 @@
  */
 package jdplus.dfm.base.core;
 
+import internal.jdplus.dfm.base.core.Initialization;
+import internal.jdplus.dfm.base.core.MSmoother;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import jdplus.dfm.base.api.DfmException;
 import jdplus.dfm.base.api.timeseries.TsInformationSet;
 import jdplus.dfm.base.api.timeseries.TsInformationUpdates;
 import jdplus.dfm.base.api.timeseries.TsInformationUpdates.Update;
@@ -27,6 +35,7 @@ import jdplus.toolkit.base.api.timeseries.TsPeriod;
 import jdplus.toolkit.base.core.data.DataBlock;
 import jdplus.toolkit.base.core.data.DataBlockIterator;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.math.matrices.GeneralMatrix;
 import jdplus.toolkit.base.core.math.matrices.LowerTriangularMatrix;
 import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
 import jdplus.toolkit.base.core.ssf.State;
@@ -35,18 +44,23 @@ import jdplus.toolkit.base.core.ssf.StateStorage;
 import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
 import jdplus.toolkit.base.core.ssf.multivariate.MultivariateFilteringInformation;
 import jdplus.toolkit.base.core.ssf.multivariate.MultivariateOrdinaryFilter;
-import jdplus.toolkit.base.core.ssf.multivariate.MultivariateOrdinarySmoother;
+import jdplus.toolkit.base.core.ssf.multivariate.MultivariateSsf;
 import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
 
 /**
  * Computation of the news (See Banbura an Modagno, appendix D of the reference
  * paper for further details) This implementation considers separately new
- * figures and revised figures, to get "manageable" state space models
+ * figures and revised figures, to get "manageable" state space models.
+ * The smoothings are branched from a checkpoint placed before the first
+ * update (see getSmoothingStart()). The forecasts of earlier periods are
+ * computed on demand, by smoothings on the whole domain.
  *
  * @author Jean Palate
  */
 public class DfmNews {
 
+    private static final int PARALLEL_THRESHOLD = 100;
+
     private final DynamicFactorModel model;
     private final IMultivariateSsf ssf;
 
@@ -66,6 +80,11 @@ public class DfmNews {
      * domain)
      */
     private StateStorage revisedStates;
+    /**
+     * states relative to the old/revised/new data on the whole full domain.
+     * Only computed when forecasts before the checkpoint are requested
+     */
+    private StateStorage oldFullStates, revisedFullStates, newFullStates;
 
     /**
      * Number of lags used to compute the impact of the news/revisions
@@ -73,10 +92,46 @@ public class DfmNews {
     private int nbnews, nbrev;
 
     private TsInformationSet oldSet, newSet, revisedSet;
+    /**
+     * Data of the different information sets, on the full domain
+     */
+    private FastMatrix oldData, revisedData, newData;
 
     private TsInformationUpdates updates;
-    private FastMatrix covNews, lcovNews;
-    private FastMatrix covRevisions, lcovRevisions;
+    /**
+     * Revisions considered in the decomposition (revisions in the revisions
+     * domain)
+     */
+    private List<Update> lrevisions;
+    /**
+     * Covariances of the news (computed on the revised data) and of the
+     * revisions (computed on the old data, without the revised observations)
+     */
+    private UpdatesCovariance newsCovariance, revisionsCovariance;
+    /**
+     * True if the forecasts of the news have been computed
+     */
+    private boolean newsForecasts;
+
+    /**
+     * Checkpoint from which the different runs are branched: position (in the
+     * full domain) of the first period where the old, revised and new data
+     * differ (or of the end of the common domain of the old data, if it is
+     * before) and predicted state at that position, in the state space with a
+     * block length of nbcheck. ca/cP are null when the checkpoint is the start
+     * of the full domain or when they have not been computed yet
+     */
+    private int cpos, nbcheck;
+    private DataBlock ca;
+    private FastMatrix cP;
+    /**
+     * Checkpoint of a previous computation, from which the filtering of the
+     * common part of the data can be continued (see process(oldSet, newSet,
+     * previous)). sa/sP are null if it is not available
+     */
+    private int spos, snb;
+    private DataBlock sa;
+    private FastMatrix sP;
 
     private int ext = 2;
     /**
@@ -142,7 +197,8 @@ public class DfmNews {
      *
      * @param oldSet The old information set
      * @param newSet The new information set
-     * @return True if the news have been successfully computed
+     * @return True if there are news or revisions. The different results
+     * (smoothed states, covariances of the updates...) are computed on demand
      */
     public boolean process(TsInformationSet oldSet, TsInformationSet newSet) {
         this.oldSet = oldSet;
@@ -154,61 +210,198 @@ public class DfmNews {
             return false;
         }
         computeDomains();
-        return calcNews();
+        oldData = FastMatrix.of(oldSet.generateMatrix(fullDomain));
+        revisedData = FastMatrix.of(revisedSet.generateMatrix(fullDomain));
+        newData = FastMatrix.of(newSet.generateMatrix(fullDomain));
+        oldStates = null;
+        revisedStates = null;
+        newStates = null;
+        oldFullStates = null;
+        revisedFullStates = null;
+        newFullStates = null;
+        newsCovariance = null;
+        revisionsCovariance = null;
+        newsForecasts = false;
+        // The three data sets are identical up to the first revision/news.
+        // That common part is filtered only once
+        checkpointPosition(firstDifference(oldData, revisedData, newData));
+        return true;
+    }
+
+    /**
+     * Computes the news between two consecutive information sets, re-using the
+     * results of a previous computation when its new information set is the
+     * old information set of this one (typically, along a publication
+     * calendar). In that case, the new smoothed states of the previous
+     * computation are the old smoothed states of this one and the filtering of
+     * the common part of the data is continued from its checkpoint.
+     *
+     * @param oldSet The old information set
+     * @param newSet The new information set
+     * @param previous The previous computation. May be null
+     * @return True if there are news or revisions
+     */
+    public boolean process(TsInformationSet oldSet, TsInformationSet newSet, DfmNews previous) {
+        if (!process(oldSet, newSet)) {
+            return false;
+        }
+        if (previous == null || previous.model != model || previous.newData == null
+                || !fullDomain.equals(previous.fullDomain) || previous.cpos > cpos
+                || firstDifference(previous.newData, oldData) != oldData.getRowsCount()) {
+            return true;
+        }
+        oldStates = previous.newStates();
+        if (previous.ca != null) {
+            spos = previous.cpos;
+            snb = previous.nbcheck;
+            sa = previous.ca;
+            sP = previous.cP;
+        }
+        return true;
     }
 
-    private boolean calcNews() {
-        // Calculates News
-        FastMatrix M_old = FastMatrix.of(oldSet.generateMatrix(fullDomain));
-        FastMatrix M_rev = FastMatrix.of(revisedSet.generateMatrix(fullDomain));
-        FastMatrix M_new = FastMatrix.of(newSet.generateMatrix(fullDomain));
+    /**
+     * Computes all the results that are normally computed on demand. Once it
+     * has been called, the object is only read by the different methods
+     * (forecasts, news, weights...), which can then be used concurrently
+     */
+    public void compute() {
+        if (updates == null || updates.isEmpty()) {
+            return;
+        }
+        oldStates();
+        newStates();
+        updateNews();
+        newsCovariance();
+        revisionsCovariance();
+    }
+
+    private static StateStorage check(StateStorage ss) {
+        if (ss == null) {
+            throw new DfmException("Smoothing failed");
+        }
+        return ss;
+    }
 
-        oldStates = smoothData(M_old);
+    private StateStorage oldStates() {
         if (oldStates == null) {
-            return false;
+            oldStates = check(smoothData(oldData));
         }
+        return oldStates;
+    }
 
-        // Calculates Revisions
-        if (!updates.revisions().isEmpty()) {
-            revisedStates = smoothData(M_rev);
-            if (revisedStates == null) {
-                return false;
-            }
-//            computeRevisionsCovariance(M_old);
-        } else {
-            revisedStates = oldStates;
+    private StateStorage revisedStates() {
+        if (revisedStates == null) {
+            revisedStates = updates.revisions().isEmpty() ? oldStates() : check(smoothData(revisedData));
+        }
+        return revisedStates;
+    }
+
+    private StateStorage newStates() {
+        if (newStates == null) {
+            newStates = updates.news().isEmpty() ? revisedStates() : check(smoothData(newData));
         }
+        return newStates;
+    }
 
-        updateNews();
+    private synchronized StateStorage oldFullStates() {
+        if (oldFullStates == null) {
+            oldFullStates = check(smoothData(ssf, 0, oldData));
+        }
+        return oldFullStates;
+    }
 
-        if (!updates.news().isEmpty()) {
-            newStates = smoothData(M_new);
-            if (newStates == null) {
-                return false;
+    private synchronized StateStorage revisedFullStates() {
+        if (revisedFullStates == null) {
+            revisedFullStates = updates.revisions().isEmpty() ? oldFullStates() : check(smoothData(ssf, 0, revisedData));
+        }
+        return revisedFullStates;
+    }
+
+    private synchronized StateStorage newFullStates() {
+        if (newFullStates == null) {
+            newFullStates = updates.news().isEmpty() ? revisedFullStates() : check(smoothData(ssf, 0, newData));
+        }
+        return newFullStates;
+    }
+
+    private UpdatesCovariance newsCovariance() {
+        if (newsCovariance == null && !updates.news().isEmpty()) {
+            UpdatesCovariance cov = new UpdatesCovariance(updates.news(), nbnews);
+            if (!cov.compute(revisedData)) {
+                throw new DfmException("Smoothing failed");
             }
-            computeNewsCovariance(M_rev);
-        } else {
-            newStates = revisedStates;
+            newsCovariance = cov;
         }
+        return newsCovariance;
+    }
 
-        return true;
+    private UpdatesCovariance revisionsCovariance() {
+        if (revisionsCovariance == null && !lrevisions.isEmpty()) {
+            UpdatesCovariance cov = new UpdatesCovariance(lrevisions, nbrev);
+            if (!cov.compute(unrevisedData())) {
+                throw new DfmException("Smoothing failed");
+            }
+            revisionsCovariance = cov;
+        }
+        return revisionsCovariance;
     }
 
+    /**
+     * Old data without the revised observations. The weights of the revisions
+     * are computed conditionally on the other observations, so that their
+     * impacts add up to revisedForecast - oldForecast
+     *
+     * @return
+     */
+    private FastMatrix unrevisedData() {
+        FastMatrix M = oldData.deepClone();
+        TsPeriod start = fullDomain.getStartPeriod();
+        int freq = fullDomain.getAnnualFrequency();
+        for (Update u : lrevisions) {
+            M.set(start.until(TsUtility.lastPeriod(u.getPeriod(), freq)), u.getSeries(), Double.NaN);
+        }
+        return M;
+    }
+
+    /**
+     * Forecasts of a series. The forecasts before the smoothing start (see
+     * getSmoothingStart()) are computed on demand, on the whole domain
+     *
+     * @param series
+     * @param p
+     * @return
+     */
     public double getOldForecast(int series, TsPeriod p) {
-        int pos = fullDomain.getStartPeriod().until(TsUtility.lastPeriod(p, fullDomain.getAnnualFrequency()));
-        DataBlock A = oldStates.a(pos);
-        return A != null ? ssf.loading(series).ZX(pos, A) : Double.NaN;
+        int pos = position(p);
+        if (pos < 0 || pos >= fullDomain.length()) {
+            return Double.NaN;
+        }
+        return forecast(series, pos, pos < cpos ? oldFullStates() : oldStates());
     }
 
     public double getRevisedForecast(int series, TsPeriod p) {
-        int pos = fullDomain.getStartPeriod().until(TsUtility.lastPeriod(p, fullDomain.getAnnualFrequency()));
-        DataBlock A = revisedStates.a(pos);
-        return A != null ? ssf.loading(series).ZX(pos, A) : Double.NaN;
+        int pos = position(p);
+        if (pos < 0 || pos >= fullDomain.length()) {
+            return Double.NaN;
+        }
+        return forecast(series, pos, pos < cpos ? revisedFullStates() : revisedStates());
     }
 
     public double getNewForecast(int series, TsPeriod p) {
-        int pos = fullDomain.getStartPeriod().until(TsUtility.lastPeriod(p, fullDomain.getAnnualFrequency()));
-        DataBlock A = newStates.a(pos);
+        int pos = position(p);
+        if (pos < 0 || pos >= fullDomain.length()) {
+            return Double.NaN;
+        }
+        return forecast(series, pos, pos < cpos ? newFullStates() : newStates());
+    }
+
+    private int position(TsPeriod p) {
+        return fullDomain.getStartPeriod().until(TsUtility.lastPeriod(p, fullDomain.getAnnualFrequency()));
+    }
+
+    private double forecast(int series, int pos, StateStorage ss) {
+        DataBlock A = ss.a(pos);
         return A != null ? ssf.loading(series).ZX(pos, A) : Double.NaN;
     }
 
@@ -216,10 +409,20 @@ public class DfmNews {
         return ext;
     }
 
+    /**
+     * Changes the number of years of revisions that are considered. Only the
+     * decomposition of the revisions is affected (it will be recomputed on
+     * demand)
+     *
+     * @param n
+     */
     public void setMaxNewsExtensionPeriod(int n) {
         if (n != ext) {
             ext = n;
-            calcNews();
+            if (updates != null && fullDomain != null) {
+                computeRevisionsDomain();
+                revisionsCovariance = null;
+            }
         }
     }
 
@@ -263,6 +466,7 @@ public class DfmNews {
      */
     private void computeRevisionsDomain() {
         int freq = fullDomain.getAnnualFrequency();
+        lrevisions = new ArrayList<>();
         if (updates.revisions().isEmpty()) {
             revisionsDomain = null;
             nbrev = 0;
@@ -271,54 +475,211 @@ public class DfmNews {
             TsPeriod start = rdomain.getStartPeriod();
             int n = start.until(oldDomain.getEndPeriod());
             if (n > ext * freq) {
-                rdomain = rdomain.drop(n - ext * freq, 0);
+                rdomain = rdomain.drop(Math.min(n - ext * freq, rdomain.length()), 0);
             }
             revisionsDomain = rdomain;
+            if (rdomain.isEmpty()) {
+                nbrev = 0;
+                return;
+            }
             int nb = model.defaultSsfBlockLength();
             // number of items we have to include in the state space for each factor 
             // if t0 = newsDomain.start, t1 = fullDomain.last and m = measurementLength
             // we need to have items in [t0-m+1, t1[ (and more that the default block length) 
             nbrev = Math.max(nb, model.measurementsLength() + revisionsDomain.getStartPeriod().until(fullDomain.getEndPeriod()));
+            for (Update update : updates.revisions()) {
+                if (!TsUtility.lastPeriod(update.getPeriod(), freq).isBefore(rdomain.getStartPeriod())) {
+                    lrevisions.add(update);
+                }
+            }
+        }
+    }
+
+    /**
+     * First row where the given matrices differ
+     *
+     * @param M
+     * @return The number of rows if the matrices are identical
+     */
+    private static int firstDifference(FastMatrix... M) {
+        int n = M[0].getRowsCount(), m = M[0].getColumnsCount();
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < m; ++j) {
+                double x = M[0].get(i, j);
+                for (int k = 1; k < M.length; ++k) {
+                    double y = M[k].get(i, j);
+                    if (x != y && !(Double.isNaN(x) && Double.isNaN(y))) {
+                        return i;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Position of the checkpoint. The smoothed states are provided from the end
+     * of the common domain of the old data, so that the checkpoint can't be
+     * after it
+     *
+     * @param pos The first row where the data sets differ
+     */
+    private void checkpointPosition(int pos) {
+        int n = fullDomain.length();
+        int wpos = fullDomain.getStartPeriod().until(oldDomain.getEndPeriod()) - 1;
+        cpos = Math.max(0, Math.min(Math.min(pos, wpos), n - 1));
+        nbcheck = 0;
+        ca = null;
+        cP = null;
+        sa = null;
+        sP = null;
+    }
+
+    /**
+     * Filters the common part of the data up to the checkpoint and stores the
+     * predicted state at that position. The filtering is done with the largest
+     * state space known at that time, so that the checkpoint can be projected
+     * on the smaller ones. It is only redone if a larger state space is needed
+     * later (for instance when the revisions domain is extended)
+     *
+     * @param nb The block length of the state space that will be branched
+     */
+    private void checkpoint(int nb) {
+        if (cpos == 0 || nb <= nbcheck) {
+            return;
+        }
+        int nbmax = Math.max(nb, model.defaultSsfBlockLength());
+        if (!updates.news().isEmpty()) {
+            nbmax = Math.max(nbmax, nbnews);
+        }
+        if (!lrevisions.isEmpty()) {
+            nbmax = Math.max(nbmax, nbrev);
+        }
+        IMultivariateSsf cssf = nbmax == model.defaultSsfBlockLength() ? ssf : model.ssfRepresentationWithBlockLength(nbmax);
+        int start = 0;
+        if (sa != null && snb >= nbmax) {
+            // we continue from the checkpoint of the previous computation
+            cssf = project(cssf, sa, sP, snb, nbmax);
+            start = spos;
+        }
+        int m = oldData.getColumnsCount();
+        FastMatrix C = FastMatrix.make(cpos - start + 1, m);
+        C.extract(0, cpos - start, 0, m).copy(oldData.extract(start, cpos - start, 0, m));
+        C.row(cpos - start).set(Double.NaN);
+        MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
+        MultivariateFilteringInformation fresults = new MultivariateFilteringInformation();
+        if (!filter.process(cssf, new SsfMatrix(C), fresults)) {
+            throw new DfmException("Filtering failed");
+        }
+        DataBlock a = fresults.a(cpos - start);
+        FastMatrix P = fresults.P(cpos - start);
+        if (a == null || P == null) {
+            throw new DfmException("Filtering failed");
+        }
+        nbcheck = nbmax;
+        ca = a.deepClone();
+        cP = P.deepClone();
+    }
+
+    /**
+     * State space (with the given block length) starting at the checkpoint
+     *
+     * @param xssf The state space, starting at the beginning of the full domain
+     * @param nb Its block length
+     * @return
+     */
+    private IMultivariateSsf branch(IMultivariateSsf xssf, int nb) {
+        checkpoint(nb);
+        if (ca == null) {
+            return xssf;
+        }
+        return project(xssf, ca, cP, nbcheck, nb);
+    }
+
+    /**
+     * State space initialized by the projection of a given state (defined in
+     * a state space with a larger block length)
+     *
+     * @param xssf The state space
+     * @param a0 The state
+     * @param P0 Its covariance
+     * @param nb0 The block length of the state
+     * @param nb The block length of xssf
+     * @return
+     */
+    private IMultivariateSsf project(IMultivariateSsf xssf, DataBlock a0, FastMatrix P0, int nb0, int nb) {
+        int nf = model.getNfactors();
+        DataBlock a = DataBlock.make(nf * nb);
+        FastMatrix P = FastMatrix.square(nf * nb);
+        for (int r = 0; r < nf; ++r) {
+            a.extract(r * nb, nb).copy(a0.extract(r * nb0, nb));
+            for (int s = 0; s < nf; ++s) {
+                P.extract(r * nb, nb, s * nb, nb).copy(P0.extract(r * nb0, nb, s * nb0, nb));
+            }
         }
+        return new MultivariateSsf(Initialization.user(a, P), xssf.dynamics(), xssf.measurements());
     }
 
     /**
+     * Smoothed states on [cpos, fullDomain.end[. The common part of the data
+     * (before the checkpoint) is not filtered again.
      *
      * @return
      */
     private StateStorage smoothData(FastMatrix M) {
+        return smoothData(branch(ssf, model.defaultSsfBlockLength()), cpos, M);
+    }
+
+    /**
+     * Smoothed states on [start, fullDomain.end[
+     *
+     * @param bssf The state space, initialized at start
+     * @param start The first position
+     * @param M
+     * @return
+     */
+    private StateStorage smoothData(IMultivariateSsf bssf, int start, FastMatrix M) {
+        int n = M.getRowsCount();
         // We don't compute the variances
-        MultivariateOrdinarySmoother smoother = MultivariateOrdinarySmoother.builder(ssf)
+        MSmoother smoother = MSmoother.builder(bssf)
                 .calcVariance(false)
-                .calcSmoothationsVariance(false)
                 .build();
-        SsfMatrix data = new SsfMatrix(M);
+        SsfMatrix data = new SsfMatrix(M.extract(start, n - start, 0, M.getColumnsCount()));
         StateStorage ss = StateStorage.light(StateInfo.Smoothed);
         MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
         MultivariateFilteringInformation fresults = new MultivariateFilteringInformation();
-        if (filter.process(ssf, data, fresults)) {
-            ss.prepare(ssf.getStateDim(), 0, data.getObsCount());
-            smoother.process(0, data.getObsCount(), fresults, ss);
+        if (filter.process(bssf, data, fresults)) {
+            ss.prepare(bssf.getStateDim(), start, n);
+            smoother.process(0, n - start, fresults, (state, t) -> ss.save(start + t, state, StateInfo.Smoothed));
             return ss;
         } else {
             return null;
         }
     }
 
-    private StateStorage smoothDataEx(int nb, FastMatrix M, TsPeriod start) {
-        IMultivariateSsf xssf = model.ssfRepresentationWithBlockLength(nb);
-        MultivariateOrdinarySmoother smoother = MultivariateOrdinarySmoother.builder(xssf)
+    /**
+     * Smoothed state (and its variance) at the last period, in the given state
+     * space. That state is the only one used in the computation of the
+     * covariance of the news/revisions.
+     *
+     * @param xssf
+     * @param nb The block length of xssf
+     * @param M
+     * @return
+     */
+    private StateStorage smoothDataEx(IMultivariateSsf xssf, int nb, FastMatrix M) {
+        IMultivariateSsf bssf = branch(xssf, nb);
+        int n = M.getRowsCount(), start = cpos;
+        MSmoother smoother = MSmoother.builder(bssf)
                 .calcVariance(true)
-                .calcSmoothationsVariance(true)
                 .build();
-        int n = fullDomain.getStartPeriod().until(start);
-        SsfMatrix data = new SsfMatrix(M);
+        SsfMatrix data = new SsfMatrix(M.extract(start, n - start, 0, M.getColumnsCount()));
         StateStorage ss = StateStorage.full(StateInfo.Smoothed);
         MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
         MultivariateFilteringInformation fresults = new MultivariateFilteringInformation();
-        if (filter.process(xssf, data, fresults)) {
-            ss.prepare(xssf.getStateDim(), n, data.getObsCount());
-            smoother.process(n, data.getObsCount(), fresults, ss);
+        if (filter.process(bssf, data, fresults)) {
+            ss.prepare(bssf.getStateDim(), n - 1, n);
+            smoother.process(n - start - 1, n - start, fresults, (state, t) -> ss.save(start + t, state, StateInfo.Smoothed));
             return ss;
         } else {
             return null;
@@ -329,127 +690,69 @@ public class DfmNews {
      * Updates the news with the forecasts computed on the old data
      */
     private void updateNews() {
+        if (newsForecasts) {
+            return;
+        }
         int freq = fullDomain.getAnnualFrequency();
         TsPeriod start = fullDomain.getStartPeriod();
+        StateStorage ss = revisedStates();
         for (Update update : updates.news()) {
             int pos = start.until(TsUtility.lastPeriod(update.getPeriod(), freq));
-            update.setForecast(ssf.loading(update.getSeries()).ZX(pos, revisedStates.a(pos)));
+            update.setForecast(ssf.loading(update.getSeries()).ZX(pos, ss.a(pos)));
         }
+        newsForecasts = true;
+    }
+
+    /**
+     * First period of the smoothed states (checkpoint of the computation): end
+     * of the common domain of the old data or first update, if it is before
+     *
+     * @return
+     */
+    public TsPeriod getSmoothingStart() {
+        return fullDomain == null ? null : fullDomain.get(cpos);
     }
 
     /**
+     * Smoothed states on the old data, only available from getSmoothingStart()
+     * (position in the full domain). The forecasts of earlier periods are
+     * computed separately (see getOldForecast)
      *
      * @return
      */
     public StateStorage getOldSmoothingResults() {
-        return oldStates;
+        return oldStates();
     }
 
     /**
+     * Smoothed states on the new data, only available from getSmoothingStart()
+     * (position in the full domain)
      *
      * @return
      */
     public StateStorage getNewSmoothingResults() {
-        return newStates;
+        return newStates();
     }
 
-    private void computeNewsCovariance(FastMatrix M) {
-
-        StateStorage ss = smoothDataEx(nbnews, M, newsDomain.getStartPeriod());
-        covNews = ss.P(fullDomain.length() - 1).deepClone();
-
-        int freq = fullDomain.getAnnualFrequency();
-        List<Update> lupdates = this.updates.news();
-        int nupdates = lupdates.size();
-        int c = model.measurementsLength();
-        int nf = model.getNfactors();
-        int d = c * nf;
-        int n = fullDomain.length() - 1;
-        lcovNews = FastMatrix.square(nupdates);
-        FastMatrix V = FastMatrix.square(d);
-        DataBlockIterator vcols = V.columnsIterator();
-        DataBlock tmp = DataBlock.make(d);
-        TsPeriod end = fullDomain.getEndPeriod();
-        for (int i = 0; i < nupdates; ++i) {
-            Update iupdate = lupdates.get(i);
-            int istart = TsUtility.endPeriod(iupdate.getPeriod(), freq).until(end);
-            for (int j = 0; j <= i; ++j) {
-                Update jupdate = lupdates.get(j);
-                // copy the right covariance
-                int jstart = TsUtility.endPeriod(jupdate.getPeriod(), freq).until(end);
-                V.set(0);
-                for (int r = 0; r < nf; ++r) {
-                    for (int s = 0; s < nf; ++s) {
-                        V.extract(r * c, c, s * c, c).copy(covNews.extract(r * nbnews + istart, c,
-                                s * nbnews + jstart, c));
-                    }
-                }
-
-                vcols.begin();
-                tmp.set(vcols, col -> ssf.loading(iupdate.getSeries()).ZX(n - istart, col));
-                double q = ssf.loading(jupdate.getSeries()).ZX(n - jstart, tmp);
-                if (i == j) {
-                    q += model.getMeasurements().get(iupdate.getSeries()).getVariance();
-                }
-                lcovNews.set(i, j, q);
-            }
-        }
-        SymmetricMatrix.fromLower(lcovNews);
-        SymmetricMatrix.lcholesky(lcovNews, State.ZERO);
-        LowerTriangularMatrix.toLower(lcovNews);
-    }
-
-//    private void computeRevisionsCovariance(FastMatrix M) {
-//        StateStorage ss = smoothDataEx(nbrev, M, revisionsDomain.getStartPeriod());
-//        covRevisions = ss.P(fullDomain.length() - 1).deepClone();
-//
-//        int freq = fullDomain.getAnnualFrequency();
-//        List<Update> lupdates = updates.revisions();
-//        int nupdates = lupdates.size();
-//        int c = model.measurementsLength();
-//        int nf = model.getNfactors();
-//        int d = c * nf;
-//        int n = fullDomain.length() - 1;
-//        lcovRevisions = FastMatrix.square(nupdates);
-//        FastMatrix V = FastMatrix.square(d);
-//        DataBlockIterator vcols = V.columnsIterator();
-//        DataBlock tmp = DataBlock.make(d);
-//        TsPeriod end = fullDomain.getEndPeriod();
-//        for (int i = 0; i < nupdates; ++i) {
-//            Update iupdate = lupdates.get(i);
-//            int istart = TsUtility.endPeriod(iupdate.getPeriod(), freq).until(end);
-//            for (int j = 0; j <= i; ++j) {
-//                Update jupdate = lupdates.get(j);
-//                // copy the right covariance
-//                int jstart = TsUtility.endPeriod(jupdate.getPeriod(), freq).until(end);
-//                V.set(0);
-//                for (int r = 0; r < nf; ++r) {
-//                    for (int s = 0; s < nf; ++s) {
-//                        V.extract(r * c, c, s * c, c).copy(covRevisions.extract(r * nbrev + istart, c,
-//                                s * nbrev + jstart, c));
-//                    }
-//                }
-//
-//                vcols.begin();
-//                tmp.set(vcols, col -> ssf.loading(iupdate.getSeries()).ZX(n - istart, col));
-//                double q = ssf.loading(jupdate.getSeries()).ZX(n - jstart, tmp);
-//                if (i == j) {
-//                    q += model.getMeasurements().get(iupdate.getSeries()).getVariance();
-//                }
-//                lcovRevisions.set(i, j, q);
-//            }
-//        }
-//        SymmetricMatrix.fromLower(lcovRevisions);
-//        SymmetricMatrix.lcholesky(lcovRevisions, State.ZERO);
-//        LowerTriangularMatrix.toLower(lcovRevisions);
-//    }
-//
     /**
      *
      * @return
      */
     public FastMatrix getStateCovariance() {
-        return covNews;
+        UpdatesCovariance cov = newsCovariance();
+        return cov == null ? null : cov.P;
+    }
+
+    /**
+     * Covariance of the state at the end of the full domain, computed on the
+     * old data without the revised observations, in the state space used for
+     * the revisions
+     *
+     * @return
+     */
+    public FastMatrix getRevisionsStateCovariance() {
+        UpdatesCovariance cov = revisionsCovariance();
+        return cov == null ? null : cov.P;
     }
 
     /**
@@ -457,6 +760,7 @@ public class DfmNews {
      * @return
      */
     public TsInformationUpdates newsDetails() {
+        updateNews();
         return updates;
     }
 
@@ -465,6 +769,7 @@ public class DfmNews {
      * @return
      */
     public DoubleSeq news() {
+        updateNews();
         List<Update> news = updates.news();
         int n = news.size();
         double[] a = new double[n];
@@ -475,6 +780,17 @@ public class DfmNews {
         return DoubleSeq.of(a);
     }
 
+    /**
+     * Revisions considered in the decomposition of the forecasts (revisions
+     * in the revisions domain). The weights of the revisions refer to that
+     * list
+     *
+     * @return
+     */
+    public List<Update> revisionsDetails() {
+        return Collections.unmodifiableList(lrevisions);
+    }
+
     public DoubleSeq revisions() {
         List<Update> revisions = updates.revisions();
         int n = revisions.size();
@@ -487,81 +803,226 @@ public class DfmNews {
     }
 
     public DoubleSeq weights(int series, TsPeriod p) {
-        List<Update> lupdates = this.updates.news();
-        if (lupdates.isEmpty()) {
+        if (updates.news().isEmpty()) {
             return DoubleSeq.empty();
         }
-        int nupdates = lupdates.size();
-        DataBlock a = DataBlock.make(nupdates);
-        int nf = model.getNfactors();
-        int c = model.measurementsLength();
-        int d = c * nf;
-        int n = fullDomain.length() - 1;
-        FastMatrix V = FastMatrix.square(d);
-        DataBlockIterator vcols = V.columnsIterator();
-        DataBlock tmp = DataBlock.make(d);
-        TsPeriod end = fullDomain.getEndPeriod();
-        int freq = end.annualFrequency();
-        int istart = TsUtility.endPeriod(p, freq).until(end);
-        for (int j = 0; j < nupdates; ++j) {
-            Update jupdate = lupdates.get(j);
-            int jstart = TsUtility.endPeriod(jupdate.getPeriod(), freq).until(end);
-            V.set(0);
-            for (int r = 0; r < nf; ++r) {
-                for (int s = 0; s < nf; ++s) {                   
-                    V.extract(r * c, c, s * c, c).copy(covNews.extract(r * nbnews + istart, c,
-                            s * nbnews + jstart, c));
+        return weights(new int[]{series}, new TsPeriod[]{p}).column(0);
+    }
+
+    /**
+     * Weights of the news for the forecasts of a series on consecutive
+     * periods
+     *
+     * @param series The considered series
+     * @param start The first period
+     * @param nperiods The number of periods
+     * @return A matrix of (news x nperiods)
+     */
+    public FastMatrix weights(int series, TsPeriod start, int nperiods) {
+        int[] s = new int[nperiods];
+        TsPeriod[] p = new TsPeriod[nperiods];
+        for (int i = 0; i < nperiods; ++i) {
+            s[i] = series;
+            p[i] = start.plus(i);
+        }
+        return weights(s, p);
+    }
+
+    /**
+     * Weights of the news for the forecasts of several series/periods. The
+     * covariances between the news and all the forecasts are computed in a
+     * single product and the system is solved for all of them at once.
+     *
+     * @param series The considered series
+     * @param periods The corresponding periods (same length as series)
+     * @return A matrix of (news x series.length). The weights of the k-th
+     * forecast are in the k-th column
+     */
+    public FastMatrix weights(int[] series, TsPeriod[] periods) {
+        UpdatesCovariance cov = newsCovariance();
+        if (cov == null) {
+            return FastMatrix.make(0, series.length);
+        }
+        return cov.weights(series, periods);
+    }
+
+    public DoubleSeq weightsRevisions(int series, TsPeriod p) {
+        if (lrevisions.isEmpty()) {
+            return DoubleSeq.empty();
+        }
+        return weightsRevisions(new int[]{series}, new TsPeriod[]{p}).column(0);
+    }
+
+    /**
+     * Weights of the revisions for the forecasts of a series on consecutive
+     * periods
+     *
+     * @param series The considered series
+     * @param start The first period
+     * @param nperiods The number of periods
+     * @return A matrix of (revisions x nperiods)
+     */
+    public FastMatrix weightsRevisions(int series, TsPeriod start, int nperiods) {
+        int[] s = new int[nperiods];
+        TsPeriod[] p = new TsPeriod[nperiods];
+        for (int i = 0; i < nperiods; ++i) {
+            s[i] = series;
+            p[i] = start.plus(i);
+        }
+        return weightsRevisions(s, p);
+    }
+
+    /**
+     * Weights of the revisions (see revisionsDetails) for the forecasts of
+     * several series/periods.
+     *
+     * @param series The considered series
+     * @param periods The corresponding periods (same length as series)
+     * @return A matrix of (revisions x series.length)
+     */
+    public FastMatrix weightsRevisions(int[] series, TsPeriod[] periods) {
+        UpdatesCovariance cov = revisionsCovariance();
+        if (cov == null) {
+            return FastMatrix.make(0, series.length);
+        }
+        return cov.weights(series, periods);
+    }
+
+    /**
+     * Covariance of a set of updates (news or revisions), computed in a state
+     * space with an extended block length. The loadings of the updates only
+     * depend on the series and on the distance to the end of the full domain.
+     * They are computed once for each distinct pair
+     */
+    private class UpdatesCovariance {
+
+        private final List<Update> lupdates;
+        private final int nb;
+        private final IMultivariateSsf xssf;
+        /**
+         * Covariance of the state at the end of the full domain
+         */
+        private FastMatrix P;
+        /**
+         * Distinct loadings (by row) and position of the loading of each update
+         */
+        private FastMatrix Z;
+        private int[] index;
+        /**
+         * Cholesky factor of the covariance of the updates
+         */
+        private FastMatrix L;
+
+        private UpdatesCovariance(List<Update> lupdates, int nb) {
+            this.lupdates = lupdates;
+            this.nb = nb;
+            this.xssf = model.ssfRepresentationWithBlockLength(nb);
+        }
+
+        private boolean compute(FastMatrix M) {
+            StateStorage ss = smoothDataEx(xssf, nb, M);
+            if (ss == null) {
+                return false;
+            }
+            P = ss.P(fullDomain.length() - 1).deepClone();
+
+            int freq = fullDomain.getAnnualFrequency();
+            int nupdates = lupdates.size();
+            int dim = model.getNfactors() * nb;
+            TsPeriod end = fullDomain.getEndPeriod();
+            Map<Long, Integer> map = new HashMap<>();
+            index = new int[nupdates];
+            int[] series = new int[nupdates], offsets = new int[nupdates];
+            int nz = 0;
+            for (int i = 0; i < nupdates; ++i) {
+                Update iupdate = lupdates.get(i);
+                int offset = TsUtility.endPeriod(iupdate.getPeriod(), freq).until(end);
+                Long key = ((long) iupdate.getSeries() << 32) | offset;
+                Integer k = map.get(key);
+                if (k == null) {
+                    k = nz++;
+                    map.put(key, k);
+                    series[k] = iupdate.getSeries();
+                    offsets[k] = offset;
+                }
+                index[i] = k;
+            }
+            Z = FastMatrix.make(nz, dim);
+            for (int k = 0; k < nz; ++k) {
+                loading(series[k], offsets[k], Z.row(k));
+            }
+            // G = Z * P * Z' (lower part)
+            FastMatrix ZP = GeneralMatrix.AB(Z, P);
+            FastMatrix G = FastMatrix.square(nz);
+            IntStream range = IntStream.range(0, nz);
+            if (nz >= PARALLEL_THRESHOLD) {
+                range = range.parallel();
+            }
+            range.forEach(i -> {
+                DataBlock zpi = ZP.row(i);
+                for (int j = 0; j <= i; ++j) {
+                    G.set(i, j, zpi.dot(Z.row(j)));
                 }
+            });
+            L = FastMatrix.square(nupdates);
+            for (int i = 0; i < nupdates; ++i) {
+                int ki = index[i];
+                for (int j = 0; j < i; ++j) {
+                    int kj = index[j];
+                    L.set(i, j, ki >= kj ? G.get(ki, kj) : G.get(kj, ki));
+                }
+                L.set(i, i, G.get(ki, ki) + model.getMeasurements().get(lupdates.get(i).getSeries()).getVariance());
+            }
+            SymmetricMatrix.fromLower(L);
+            SymmetricMatrix.lcholesky(L, State.ZERO);
+            LowerTriangularMatrix.toLower(L);
+            return true;
+        }
+
+        private FastMatrix weights(int[] series, TsPeriod[] periods) {
+            int nupdates = lupdates.size(), nw = series.length;
+            if (nw == 0) {
+                return FastMatrix.make(nupdates, nw);
+            }
+            TsPeriod end = fullDomain.getEndPeriod();
+            int freq = end.annualFrequency();
+            int dim = model.getNfactors() * nb;
+            // Zw = loadings of the forecasts (by column)
+            FastMatrix Zw = FastMatrix.make(dim, nw);
+            for (int k = 0; k < nw; ++k) {
+                loading(series[k], TsUtility.endPeriod(periods[k], freq).until(end), Zw.column(k));
+            }
+            // A = Zu * P * Zw, computed on the distinct loadings of the updates
+            FastMatrix B = GeneralMatrix.AB(Z, GeneralMatrix.AB(P, Zw));
+            FastMatrix A = FastMatrix.make(nupdates, nw);
+            for (int j = 0; j < nupdates; ++j) {
+                A.row(j).copy(B.row(index[j]));
             }
-            vcols.begin();
-            tmp.set(vcols, col -> ssf.loading(series).ZX(n - istart, col));
-            double q = ssf.loading(jupdate.getSeries()).ZX(n - jstart, tmp);
-            a.set(j, q);
-        }
-        // w = A * (LL')^-1 <-> w(LL')=A
-        // B = wL, BL' = A <-> LB'=A'
-        LowerTriangularMatrix.solveLx(lcovNews, a, State.ZERO); // B
-        LowerTriangularMatrix.solvexL(lcovNews, a, State.ZERO);
-        return a;
-    }
-
-//    public DoubleSeq weightsRevisions(int series, TsPeriod p) {
-//        List<Update> lupdates = this.updates.revisions();
-//        if (lupdates.isEmpty()) {
-//            return DoubleSeq.empty();
-//        }
-//        int nupdates = lupdates.size();
-//        DataBlock a = DataBlock.make(nupdates);
-//        int c = model.measurementsLength();
-//        int nf = model.getNfactors();
-//        int d = c * nf;
-//        int n = fullDomain.length() - 1;
-//        FastMatrix V = FastMatrix.square(d);
-//        DataBlockIterator vcols = V.columnsIterator();
-//        DataBlock tmp = DataBlock.make(d);
-//        TsPeriod end = fullDomain.getEndPeriod();
-//        int freq = end.annualFrequency();
-//        int istart = TsUtility.endPeriod(p, freq).until(end);
-//        for (int j = 0; j < nupdates; ++j) {
-//            Update jupdate = lupdates.get(j);
-//            int jstart = TsUtility.endPeriod(jupdate.getPeriod(), freq).until(end);
-//            V.set(0);
-//            for (int r = 0; r < nf; ++r) {
-//                for (int s = 0; s < nf; ++s) {
-//                    V.extract(r * c, c, s * c, c).copy(covRevisions.extract(r * nbrev + istart, c,
-//                            s * nbrev + jstart, c));
-//                }
-//            }
-//            tmp.set(0);
-//            vcols.begin();
-//            tmp.set(vcols, col -> ssf.loading(series).ZX(n - istart, col));
-//            double q = ssf.loading(jupdate.getSeries()).ZX(n - jstart, tmp);
-//            a.set(j, q);
-//        }
-//        // w = A * (LL')^-1 <-> w(LL')=A
-//        // B = wL, BL' = A <-> LB'=A'
-//        LowerTriangularMatrix.solveLx(lcovRevisions, a, State.ZERO); // B
-//        LowerTriangularMatrix.solvexL(lcovRevisions, a, State.ZERO);
-//        return a;
-//    }
+            // w = (LL')^-1 * a <-> L(L'w) = a
+            LowerTriangularMatrix.solveLX(L, A);
+            DataBlockIterator cols = A.columnsIterator();
+            while (cols.hasNext()) {
+                LowerTriangularMatrix.solvexL(L, cols.next(), State.ZERO);
+            }
+            return A;
+        }
+
+        /**
+         * Loading of a series in the extended state space, when the period of
+         * the observation is at the given distance of the end of the full
+         * domain
+         *
+         * @param series
+         * @param offset
+         * @param z The loading (length = nfactors * nb)
+         */
+        private void loading(int series, int offset, DataBlock z) {
+            int nf = model.getNfactors(), nz = nb - offset;
+            DataBlock z0 = DataBlock.make(nf * nb);
+            xssf.loading(series).Z(fullDomain.length() - 1 - offset, z0);
+            for (int r = 0; r < nf; ++r) {
+                z.extract(r * nb + offset, nz).copy(z0.extract(r * nb, nz));
+            }
+        }
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package jdplus.dfm.base.core;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import jdplus.dfm.base.api.timeseries.TsInformationSet;
+import jdplus.dfm.base.api.timeseries.TsVintageStore;
+import jdplus.toolkit.base.api.util.IntList;
+
+/**
+ * Computation of the news along a publication calendar. The information set
+ * of each release is generated from the complete data (pseudo real-time
+ * vintages) or read in a vintage store and its news are computed against the
+ * information set of the previous release. The results of a release (new smoothed states, filtering
+ * checkpoint) are re-used as the old results of the next one, so that each
+ * release only requires the filtering/smoothing of the new data.
+ *
+ * @author Jean Palate
+ */
+public class DfmNewsPipeline {
+
+    @lombok.Value
+    public static class Release {
+
+        /**
+         * Release date
+         */
+        LocalDate date;
+        /**
+         * Information set available at the release date (not extended)
+         */
+        TsInformationSet informationSet;
+        /**
+         * News in comparison with the previous release
+         */
+        DfmNews news;
+    }
+
+    private final DynamicFactorModel model;
+
+    public DfmNewsPipeline(DynamicFactorModel model) {
+        this.model = model;
+    }
+
+    public DynamicFactorModel getModel() {
+        return model;
+    }
+
+    /**
+     *
+     * @param data The complete data
+     * @param delays Publication delays (in days) of the different series. May
+     * be null
+     * @param calendar Release dates (increasing order). The first date defines
+     * the initial information set
+     * @param end The information sets are extended up to that date (excluded)
+     * @return The releases with news or revisions. The releases are computed
+     * sequentially, when the stream is consumed
+     */
+    public Stream<Release> process(TsInformationSet data, IntList delays, LocalDate[] calendar, LocalDate end) {
+        return releases(new Releases(calendar, i -> data.generateInformation(delays, calendar[i]), end));
+    }
+
+    /**
+     * Computes the news between the successive vintages of a store
+     *
+     * @param store The vintages
+     * @param end The information sets are extended up to that date (excluded)
+     * @return The releases with news or revisions. The releases are computed
+     * sequentially, when the stream is consumed
+     */
+    public Stream<Release> process(TsVintageStore store, LocalDate end) {
+        return releases(new Releases(store.dates(), store::vintage, end));
+    }
+
+    private static Stream<Release> releases(Iterator<Release> iter) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private class Releases implements Iterator<Release> {
+
+        private final LocalDate[] calendar;
+        private final IntFunction<TsInformationSet> vintages;
+        private final LocalDate end;
+
+        private int pos;
+        private TsInformationSet current;
+        private DfmNews previous;
+        private Release next;
+
+        private Releases(LocalDate[] calendar, IntFunction<TsInformationSet> vintages, LocalDate end) {
+            this.calendar = calendar;
+            this.vintages = vintages;
+            this.end = end;
+            if (calendar.length > 0) {
+                current = vintages.apply(0).extendTo(end);
+            }
+            pos = 1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // the next release is only computed when it is requested
+            while (next == null && pos < calendar.length) {
+                LocalDate date = calendar[pos];
+                TsInformationSet vintage = vintages.apply(pos++);
+                TsInformationSet nset = vintage.extendTo(end);
+                DfmNews news = new DfmNews(model);
+                if (news.process(current, nset, previous)) {
+                    next = new Release(date, vintage, news);
+                    previous = news;
+                    current = nset;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Release next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Release r = next;
+            next = null;
+            return r;
+        }
+    }
+}
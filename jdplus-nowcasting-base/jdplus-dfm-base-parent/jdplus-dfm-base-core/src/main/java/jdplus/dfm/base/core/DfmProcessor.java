@@ -16,15 +16,20 @@
  */
 package jdplus.dfm.base.core;
 
+import java.util.function.ObjIntConsumer;
 import internal.jdplus.dfm.base.core.MSmoother;
+import internal.jdplus.dfm.base.core.UFilter;
+import internal.jdplus.dfm.base.core.USmoother;
 import jdplus.dfm.base.api.DfmException;
 import jdplus.dfm.base.api.timeseries.TsInformationSet;
 import jdplus.toolkit.base.api.math.matrices.Matrix;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.State;
 import jdplus.toolkit.base.core.ssf.StateStorage;
 import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
 import jdplus.toolkit.base.core.ssf.multivariate.MultivariateFilteringInformation;
 import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import jdplus.toolkit.base.core.stats.likelihood.Likelihood;
 
 /**
  *
@@ -34,7 +39,7 @@ public class DfmProcessor {
 
     public static class Builder {
 
-        private boolean calcVariance = true;
+        private boolean calcVariance = true, univariate = false, steadyState = false;
         private int nxlags;
 
         public Builder calcVariance(boolean var) {
@@ -47,6 +52,31 @@ public class DfmProcessor {
             return this;
         }
 
+        /**
+         * Uses the univariate treatment of the observations. The filtering
+         * results are then not available (only the likelihood)
+         *
+         * @param univariate
+         * @return
+         */
+        public Builder univariate(boolean univariate) {
+            this.univariate = univariate;
+            return this;
+        }
+
+        /**
+         * Re-uses the gains of the filter in its steady state (periodic
+         * pattern of observations). Implies the univariate treatment of the
+         * observations
+         *
+         * @param steadyState
+         * @return
+         */
+        public Builder steadyState(boolean steadyState) {
+            this.steadyState = steadyState;
+            return this;
+        }
+
         public DfmProcessor build(){
             return new DfmProcessor(this);
         }
@@ -57,19 +87,23 @@ public class DfmProcessor {
         return new Builder();
     }
 
-    private final boolean calcVariance;
+    private final boolean calcVariance, univariate, steadyState;
     private final int nxlags;
     
     private DfmProcessor(Builder builder){
         this.calcVariance=builder.calcVariance;
+        this.univariate=builder.univariate;
+        this.steadyState=builder.steadyState;
         this.nxlags=builder.nxlags;
     }
 
     private StateStorage smoothingResults;
     private MultivariateFilteringInformation filteringResults;
+    private Likelihood likelihood;
     public void clear() {
         smoothingResults = null;
         filteringResults = null;
+        likelihood = null;
     }
 
      /**
@@ -81,10 +115,22 @@ public class DfmProcessor {
         return smoothingResults;
     }
 
+    /**
+     * Retrieves the filtering results
+     *
+     * @return The filtering results. Null in case of univariate processing
+     */
     public MultivariateFilteringInformation getFilteringResults() {
         return filteringResults;
     }
 
+    public Likelihood getLikelihood() {
+        if (likelihood == null && filteringResults != null) {
+            likelihood = filteringResults.likelihood(true);
+        }
+        return likelihood;
+    }
+
     public boolean process(DynamicFactorModel model, TsInformationSet input) {
         Matrix M = input.generateMatrix(null);
         if (M.getColumnsCount() != model.getMeasurementsCount()) {
@@ -93,6 +139,19 @@ public class DfmProcessor {
         try {
             clear();
             IMultivariateSsf ssf = model.ssfRepresentation(nxlags);
+            if ((univariate || steadyState) && UFilter.isApplicable(ssf)) {
+                USmoother smoother = USmoother.builder(ssf)
+                        .calcVariance(calcVariance)
+                        .steadyStateTolerance(steadyState ? UFilter.DEF_STEADYSTATE_EPS : 0)
+                        .build();
+                if (smoother.process(new SsfMatrix(FastMatrix.of(M)))) {
+                    smoothingResults = smoother.getSmoothingResults();
+                    likelihood = smoother.getFilteringResults().likelihood(true);
+                    return true;
+                } else {
+                    return false;
+                }
+            }
             MSmoother smoother = MSmoother.builder(ssf)
                     .calcVariance(calcVariance)
                     .build();
@@ -110,4 +169,55 @@ public class DfmProcessor {
         }
     }
 
+    /**
+     * Smoothing without storage of the results. The smoothed states are
+     * provided to the consumer, in reverse order. Only the likelihood is
+     * available after the processing. The filtering is checkpointed: only
+     * the predicted states at the start of blocks of about sqrt(n) periods
+     * are kept by the first filtering and the blocks are filtered again,
+     * one at a time, during the backward pass. So, the memory used by the
+     * smoother is O(sqrt(n) m^2) instead of O(n m^2), for twice the cost of
+     * the filtering.
+     *
+     * @param model
+     * @param input
+     * @param consumer Consumer of the smoothed states (and of their
+     * positions). The state object is re-used between the periods
+     * @return
+     */
+    public boolean process(DynamicFactorModel model, TsInformationSet input, ObjIntConsumer<State> consumer) {
+        Matrix M = input.generateMatrix(null);
+        if (M.getColumnsCount() != model.getMeasurementsCount()) {
+            throw new DfmException(DfmException.INCOMPATIBLE_DATA);
+        }
+        try {
+            clear();
+            IMultivariateSsf ssf = model.ssfRepresentation(nxlags);
+            FastMatrix data = FastMatrix.of(M);
+            if ((univariate || steadyState) && UFilter.isApplicable(ssf)) {
+                USmoother smoother = USmoother.builder(ssf)
+                        .calcVariance(calcVariance)
+                        .steadyStateTolerance(steadyState ? UFilter.DEF_STEADYSTATE_EPS : 0)
+                        .build();
+                if (smoother.process(data, 0, consumer)) {
+                    likelihood = smoother.getLikelihood();
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+            MSmoother smoother = MSmoother.builder(ssf)
+                    .calcVariance(calcVariance)
+                    .build();
+            if (smoother.process(data, 0, consumer)) {
+                likelihood = smoother.getLikelihood();
+                return true;
+            } else {
+                return false;
+            }
+        } catch (RuntimeException err) {
+            return false;
+        }
+    }
+
 }
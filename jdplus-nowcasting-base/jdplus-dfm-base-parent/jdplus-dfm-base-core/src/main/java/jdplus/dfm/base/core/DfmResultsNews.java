@@ -36,4 +36,12 @@ public class DfmResultsNews implements GenericExplorable{
     DoubleSeq revisedForecasts;
     DoubleSeq newForecastsT;
     DoubleSeq newForecasts;
+    int[] revisionsIndex;
+    String[] revisionsPeriod;
+    DoubleSeq revisionsT;
+    DoubleSeq revisions;
+    Matrix revisionsWeightsT;
+    Matrix revisionsWeights;
+    Matrix revisionsImpactsT;
+    Matrix revisionsImpacts;
 }
@@ -33,6 +33,19 @@ public interface IDfmMapping extends IParametricMapping<DynamicFactorModel> {
     static final double EPS = 1e-8;
 
     DoubleSeq map(DynamicFactorModel m);
+
+    /**
+     * Transforms the derivatives of a function in the coefficients of the model
+     * into derivatives in the parameters of the mapping
+     *
+     * @param p The parameters
+     * @param g The derivatives in the coefficients of the model (p)
+     * @return The derivatives in the parameters. Null if the chain rule is not
+     * available for this mapping
+     */
+    default DoubleSeq gradient(DoubleSeq p, DfmGradient g) {
+        return null;
+    }
     
     @Override
     default double epsilon(DoubleSeq inparams, int idx) {
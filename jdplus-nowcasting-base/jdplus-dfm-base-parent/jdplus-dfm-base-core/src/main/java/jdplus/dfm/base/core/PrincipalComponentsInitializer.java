@@ -16,10 +16,14 @@
  */
 package jdplus.dfm.base.core;
 
+import internal.jdplus.dfm.base.core.TruncatedSvd;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 import jdplus.dfm.base.api.PrincipalComponentSpec;
 import jdplus.dfm.base.api.timeseries.TsInformationSet;
 import jdplus.dfm.base.core.var.VarDescriptor;
@@ -34,9 +38,13 @@ import jdplus.toolkit.base.api.timeseries.TsDomain;
 import jdplus.toolkit.base.core.data.DataBlock;
 import jdplus.toolkit.base.core.data.interpolation.AverageInterpolator;
 import jdplus.toolkit.base.core.data.interpolation.DataInterpolator;
+import jdplus.toolkit.base.core.math.linearsystem.QRLeastSquaresSolution;
+import jdplus.toolkit.base.core.math.linearsystem.QRLeastSquaresSolver;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
 import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
+import jdplus.toolkit.base.core.math.matrices.decomposition.Householder2;
 import jdplus.toolkit.base.core.math.matrices.decomposition.ISingularValueDecomposition;
+import jdplus.toolkit.base.core.math.matrices.decomposition.QRDecomposition;
 import jdplus.toolkit.base.core.pca.PrincipalComponents;
 import jdplus.toolkit.base.core.stats.linearmodel.LeastSquaresResults;
 import jdplus.toolkit.base.core.stats.linearmodel.LinearModel;
@@ -48,13 +56,36 @@ import jdplus.toolkit.base.core.stats.linearmodel.Ols;
  */
 public class PrincipalComponentsInitializer implements IDfmInitializer {
 
+    private static final int EM_MAXITER = 100;
+    private static final double EM_EPS = 1e-6;
+
     // original figures
     private Matrix data;
     // interpolated figures
     private FastMatrix datac;
     private PrincipalComponents[] pc;
+    private TruncatedSvd[] tsvd;
+    private double[] tscaling;
     private TsDomain domain;
+    private TimeSelector span = TimeSelector.all();
     private double ns = PrincipalComponentSpec.DEF_NS;
+    private PrincipalComponentSpec.SvdMethod svdMethod = PrincipalComponentSpec.SvdMethod.FULL;
+    private PrincipalComponentSpec.Interpolation interpolation = PrincipalComponentSpec.Interpolation.AVERAGE;
+
+    public PrincipalComponentsInitializer() {
+    }
+
+    /**
+     * Initializer defined by a specification (the enabled flag is not used)
+     *
+     * @param spec
+     */
+    public PrincipalComponentsInitializer(PrincipalComponentSpec spec) {
+        span = spec.getSpan();
+        ns = spec.getNonMissingThreshold();
+        svdMethod = spec.getSvdMethod();
+        interpolation = spec.getInterpolation();
+    }
 
     public TsDomain getEstimationDomain() {
         return domain;
@@ -64,6 +95,20 @@ public class PrincipalComponentsInitializer implements IDfmInitializer {
         domain = dom;
     }
 
+    public TimeSelector getSpan() {
+        return span;
+    }
+
+    /**
+     * Restricts the time span of the principal components estimation, when
+     * the estimation domain is not set
+     *
+     * @param span
+     */
+    public void setSpan(TimeSelector span) {
+        this.span = span;
+    }
+
     /**
      * Gets the minimal percentage of non missing values for determining the
      * time span of the principal components estimation.
@@ -78,12 +123,43 @@ public class PrincipalComponentsInitializer implements IDfmInitializer {
         ns = val;
     }
 
+    public PrincipalComponentSpec.SvdMethod getSvdMethod() {
+        return svdMethod;
+    }
+
+    /**
+     * Sets the computation of the principal components. Only the first
+     * component of each block is used, so that the truncated decomposition is
+     * much faster on large panels
+     *
+     * @param method
+     */
+    public void setSvdMethod(PrincipalComponentSpec.SvdMethod method) {
+        svdMethod = method;
+    }
+
+    public PrincipalComponentSpec.Interpolation getInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * Sets the interpolation of the missing values. The EM-PCA imputation
+     * starts from the average interpolation and replaces the missing values
+     * by their fit on the leading principal components (as many as factors)
+     * until convergence
+     *
+     * @param interpolation
+     */
+    public void setInterpolation(PrincipalComponentSpec.Interpolation interpolation) {
+        this.interpolation = interpolation;
+    }
+
     @Override
     public DynamicFactorModel initialize(DynamicFactorModel model, TsInformationSet input) {
         clear();
         // we generare the matrix corresponding to the input.
         // missing values are raughly interpolated
-        if (!computeMatrix(input)) {
+        if (!computeMatrix(input, model.getNfactors())) {
             return model;
         }
         // computation of the principal components on the transformed interpolated series
@@ -101,6 +177,19 @@ public class PrincipalComponentsInitializer implements IDfmInitializer {
         return new DynamicFactorModel(var, ndescs);
     }
 
+    /**
+     * Generates the data used in the computation of the principal components
+     * (see getData and getInterpolatedData), without computing them
+     *
+     * @param input
+     * @param nfactors The number of factors (used in the EM-PCA imputation)
+     * @return False if the data couldn't be interpolated
+     */
+    public boolean prepare(TsInformationSet input, int nfactors) {
+        clear();
+        return computeMatrix(input, nfactors);
+    }
+
     public Matrix getData() {
         return data;
     }
@@ -109,17 +198,25 @@ public class PrincipalComponentsInitializer implements IDfmInitializer {
         return datac;
     }
 
+    /**
+     *
+     * @param block
+     * @return The principal components of the block (null if the truncated
+     * decomposition is used)
+     */
     public PrincipalComponents getPrincipalComponents(int block) {
-        return pc[block];
+        return pc == null ? null : pc[block];
     }
 
     private void clear() {
         data = null;
         datac = null;
         pc = null;
+        tsvd = null;
+        tscaling = null;
     }
 
-    private boolean computeMatrix(TsInformationSet input) {
+    private boolean computeMatrix(TsInformationSet input, int nfactors) {
         TsDomain cdomain = this.domain;
         if (cdomain == null) {
             cdomain = searchDomain(input);
@@ -134,20 +231,131 @@ public class PrincipalComponentsInitializer implements IDfmInitializer {
             }
             datac.column(i).copyFrom(col, 0);
         }
+        if (interpolation == PrincipalComponentSpec.Interpolation.EM_PCA) {
+            imputeLowRank(nfactors);
+        }
         return true;
     }
 
+    /**
+     * Iterative low-rank imputation of the missing values (Stock and Watson).
+     * The missing cells are replaced by their fit on the leading principal
+     * components of the (centred) completed data, until the imputed values
+     * are stable
+     *
+     * @param rank The number of principal components
+     */
+    private void imputeLowRank(int rank) {
+        int nr = datac.getRowsCount(), nc = datac.getColumnsCount();
+        boolean missing = false;
+        for (int j = 0; j < nc && !missing; ++j) {
+            missing = data.column(j).anyMatch(Double::isNaN);
+        }
+        if (!missing) {
+            return;
+        }
+        TruncatedSvd svd = TruncatedSvd.builder().rank(rank).build();
+        double[] mean = new double[nc];
+        FastMatrix xc = FastMatrix.make(nr, nc);
+        for (int iter = 0; iter < EM_MAXITER; ++iter) {
+            for (int j = 0; j < nc; ++j) {
+                DataBlock cj = datac.column(j), xj = xc.column(j);
+                mean[j] = cj.average();
+                xj.copy(cj);
+                xj.add(-mean[j]);
+            }
+            svd.decompose(xc);
+            FastMatrix U = svd.U(), V = svd.V();
+            DoubleSeq S = svd.S();
+            double ssq = 0, dssq = 0;
+            for (int j = 0; j < nc; ++j) {
+                DoubleSeq yj = data.column(j);
+                DataBlock cj = datac.column(j);
+                for (int i = 0; i < nr; ++i) {
+                    if (Double.isNaN(yj.get(i))) {
+                        double x = mean[j];
+                        for (int k = 0; k < S.length(); ++k) {
+                            x += U.get(i, k) * S.get(k) * V.get(j, k);
+                        }
+                        double d = x - cj.get(i);
+                        ssq += x * x;
+                        dssq += d * d;
+                        cj.set(i, x);
+                    }
+                }
+            }
+            if (dssq <= EM_EPS * EM_EPS * ssq) {
+                break;
+            }
+        }
+    }
+
     private boolean computePrincipalComponents(DynamicFactorModel model) {
         int nb = model.getNfactors();
-        pc = new PrincipalComponents[nb];
-        for (int i = 0; i < nb; ++i) {
-            FastMatrix x = prepareDataForComponent(model, i);
-            pc[i] = new PrincipalComponents();
-            pc[i].process(x);
+        if (svdMethod == PrincipalComponentSpec.SvdMethod.TRUNCATED) {
+            tsvd = new TruncatedSvd[nb];
+            tscaling = new double[nb];
+            for (int i = 0; i < nb; ++i) {
+                FastMatrix x = prepareDataForComponent(model, i);
+                // same scaling as in PrincipalComponents
+                tscaling[i] = Math.sqrt(x.getRowsCount() - 1);
+                x.mul(1 / tscaling[i]);
+                tsvd[i] = TruncatedSvd.builder().rank(1).build();
+                tsvd[i].decompose(x);
+            }
+        } else {
+            pc = new PrincipalComponents[nb];
+            for (int i = 0; i < nb; ++i) {
+                FastMatrix x = prepareDataForComponent(model, i);
+                pc[i] = new PrincipalComponents();
+                pc[i].process(x);
+            }
         }
         return true;
     }
 
+    /**
+     * First factor of a block
+     *
+     * @param cmp
+     * @return
+     */
+    private DataBlock factor(int cmp) {
+        if (pc != null) {
+            return pc[cmp].getFactor(0);
+        }
+        DataBlock f = tsvd[cmp].U().column(0).deepClone();
+        f.mul(tsvd[cmp].S().get(0) * tscaling[cmp]);
+        return f;
+    }
+
+    /**
+     * First left singular vector of a block
+     *
+     * @param cmp
+     * @return
+     */
+    private DataBlock leftVector(int cmp) {
+        return pc != null ? pc[cmp].getSvd().U().column(0) : tsvd[cmp].U().column(0);
+    }
+
+    /**
+     * Coefficient of the first left singular vector of a block in one of its
+     * series
+     *
+     * @param cmp The block
+     * @param pos The position of the series in the block
+     * @return
+     */
+    private double leftVectorCoefficient(int cmp, int pos) {
+        if (pc != null) {
+            ISingularValueDecomposition svd = pc[cmp].getSvd();
+            return svd.S().get(0) * svd.V().get(pos, 0) / pc[cmp].getScaling();
+        } else {
+            return tsvd[cmp].S().get(0) * tsvd[cmp].V().get(pos, 0) / tscaling[cmp];
+        }
+    }
+
     /**
      * Creates the data used for the computation of the principal components
      * analysis
@@ -173,10 +381,8 @@ public class PrincipalComponentsInitializer implements IDfmInitializer {
                 m.column(np).copy(datac.column(s));
                 for (int j = 0; j < cmp; ++j) {
                     if (!Double.isNaN(desc.getCoefficient(j))) {
-                        ISingularValueDecomposition svd = pc[j].getSvd();
-                        double scaling = pc[j].getScaling();
-                        double l = -svd.S().get(0) * svd.V().get(searchPos(model, s, j), 0) / scaling;
-                        m.column(np).addAY(l, svd.U().column(0));
+                        double l = -leftVectorCoefficient(j, searchPos(model, s, j));
+                        m.column(np).addAY(l, leftVector(j));
                     }
                 }
                 ++np;
@@ -215,7 +421,7 @@ public class PrincipalComponentsInitializer implements IDfmInitializer {
         DoubleSeq[] e = new DoubleSeq[nb];
         FastMatrix M = FastMatrix.make(data.getRowsCount() - nl, nl * nb);
         for (int i = 0; i < nb; ++i) {
-            DataBlock cur = pc[i].getFactor(0);
+            DataBlock cur = factor(i);
             f[i] = cur.drop(nl, 0);
             for (int j = 1; j <= nl; ++j) {
                 M.column((j-1)*nb+i).copy(cur.drop(nl - j, j));
@@ -252,50 +458,117 @@ public class PrincipalComponentsInitializer implements IDfmInitializer {
         int nf = model.getNfactors(), blen=model.defaultSsfBlockLength(), nl=blen-1;
         FastMatrix M = FastMatrix.make(data.getRowsCount() - nl, nf * blen);
         for (int i = 0, c = 0; i < nf; ++i) {
-            DataBlock cur = pc[i].getFactor(0);
+            DataBlock cur = factor(i);
             for (int j = 0; j <= nl; ++j) {
                 M.column(c++).copy(cur.drop(nl - j, j));
             }
         }
-        int v = 0;
-        List<MeasurementDescriptor> ndescs = new ArrayList<>();
-        for (MeasurementDescriptor desc : model.getMeasurements()) {
-            DataBlock y = datac.column(v++).drop(nl, 0);
+        // The regressions are grouped by type of measurement and by used factors.
+        // The transformed factors and the factorization of the regressors are 
+        // computed once for each group
+        List<MeasurementDescriptor> descs = model.getMeasurements();
+        int nm = descs.size();
+        Map<IDfmMeasurement, FastMatrix> factors = new HashMap<>();
+        Map<IDfmMeasurement, Map<BitSet, Regression>> groups = new HashMap<>();
+        Regression[] regressions = new Regression[nm];
+        for (int v = 0; v < nm; ++v) {
+            MeasurementDescriptor desc = descs.get(v);
+            IDfmMeasurement type = desc.getType();
+            BitSet used = new BitSet(nf);
+            for (int j = 0; j < nf; ++j) {
+                if (!Double.isNaN(desc.getCoefficient(j))) {
+                    used.set(j);
+                }
+            }
+            FastMatrix F = factors.computeIfAbsent(type, t -> transformedFactors(M, t, nf, blen));
+            regressions[v] = groups.computeIfAbsent(type, t -> new HashMap<>())
+                    .computeIfAbsent(used, u -> new Regression(F, u));
+        }
+        MeasurementDescriptor[] ndescs = new MeasurementDescriptor[nm];
+        IntStream.range(0, nm).parallel().forEach(v -> {
+            MeasurementDescriptor desc = descs.get(v);
+            DataBlock y = datac.column(v).drop(nl, 0);
             if (y.isZero(Constants.getEpsilon())) {
-                ndescs.add(desc.withVariance(1));
+                ndescs[v] = desc.withVariance(1);
             } else {
                 MeasurementDescriptor.Builder builder = desc.toBuilder();
-                LinearModel.Builder regmodel = LinearModel.builder();
-                regmodel.y(y);
-                for (int j = 0; j < nf; ++j) {
-                    if (!Double.isNaN(desc.getCoefficient(j))) {
-                        double[] x = new double[y.length()];
-                        int s = j * blen, l = desc.getType().getLength();
-                        for (int r = 0; r < x.length; ++r) {
-                            x[r] = desc.getType().dot(M.row(r).extract(s, l));
-                        }
-                        regmodel.addX(DoubleSeq.of(x));
-                    }
-                }
-                try {
-                    LeastSquaresResults ols = Ols.compute(regmodel.build());
-                    double[] b = ols.getCoefficients().toArray();
+                QRLeastSquaresSolution ls = regressions[v].solve(y);
+                if (ls != null) {
+                    DoubleSeq b = ls.getB();
                     double[] c = desc.getCoefficient().toArray();
                     for (int i = 0, j = 0; j < nf; ++j) {
                         if (!Double.isNaN(c[j])) {
-                            c[j] = b[i++];
+                            c[j] = b.get(i++);
                         }
                     }
                     builder.coefficient(DoubleSeq.of(c))
                             // ML (biased) estimator of the variance
-                            .variance(ols.getErrorSumOfSquares()/y.length());
-                } catch (EcoException ex) {
+                            .variance(ls.getSsqErr() / y.length());
+                } else {
                     builder.variance(1);
                 }
-                ndescs.add(builder.build());
+                ndescs[v] = builder.build();
+            }
+        });
+        return Arrays.asList(ndescs);
+    }
+
+    /**
+     * Factors transformed by a given type of measurement
+     *
+     * @param M The factors and their lags
+     * @param type The type of measurement
+     * @param nf The number of factors
+     * @param blen The number of lags of each factor in M
+     * @return
+     */
+    private static FastMatrix transformedFactors(FastMatrix M, IDfmMeasurement type, int nf, int blen) {
+        int n = M.getRowsCount(), l = type.getLength();
+        FastMatrix F = FastMatrix.make(n, nf);
+        for (int j = 0; j < nf; ++j) {
+            DataBlock fj = F.column(j);
+            int s = j * blen;
+            for (int r = 0; r < n; ++r) {
+                fj.set(r, type.dot(M.row(r).extract(s, l)));
+            }
+        }
+        return F;
+    }
+
+    /**
+     * Least squares on a set of regressors shared by several series. The QR
+     * decomposition of the regressors is computed once
+     */
+    private static class Regression {
+
+        private static final double EPS = 1e-12;
+
+        private final int nx;
+        private final QRDecomposition qr;
+
+        private Regression(FastMatrix F, BitSet used) {
+            int n = F.getRowsCount(), p = used.cardinality();
+            FastMatrix X = FastMatrix.make(n, p);
+            for (int j = used.nextSetBit(0), c = 0; j >= 0; j = used.nextSetBit(j + 1)) {
+                X.column(c++).copy(F.column(j));
+            }
+            nx = p;
+            qr = p > n ? null : new Householder2().decompose(X);
+        }
+
+        /**
+         *
+         * @param y
+         * @return The least squares solution or null if the regressors are
+         * collinear
+         */
+        private QRLeastSquaresSolution solve(DataBlock y) {
+            if (qr == null) {
+                return null;
             }
+            QRLeastSquaresSolution ls = QRLeastSquaresSolver.leastSquares(qr, y, EPS);
+            return ls.getRank() < nx ? null : ls;
         }
-        return ndescs;
     }
 
     private TsDomain searchDomain(TsInformationSet input) {
@@ -311,7 +584,11 @@ public class PrincipalComponentsInitializer implements IDfmInitializer {
         Arrays.sort(end);
         int t = (int) ((n - 1) * ns);
         TimeSelector sel = TimeSelector.between(start[t], end[n - 1 - t]);
-        return input.getCurrentDomain().select(sel);
+        TsDomain cdomain = input.getCurrentDomain();
+        if (span != null) {
+            cdomain = cdomain.select(span);
+        }
+        return cdomain.select(sel);
     }
 
 }
@@ -181,6 +181,34 @@ public class SimpleDfmMapping implements IDfmMapping {
         return p;
     }
     
+    @Override
+    public DoubleSeq gradient(DoubleSeq p, DfmGradient g) {
+        DataBlock gp = DataBlock.make(np);
+        DoubleSeqCursor.OnMutable lcursor = loadings(gp).cursor();
+        DoubleSeqCursor.OnMutable vcursor = mvars(gp).cursor();
+        DoubleSeqCursor xcursor = mvars(p).cursor();
+        Matrix gl = g.getLoadings();
+        DoubleSeq gv = g.getMeasurementsVariance();
+        int n = 0;
+        for (MeasurementDescriptor desc : template.getMeasurements()) {
+            for (int k = 0; k < nb; ++k) {
+                if (!Double.isNaN(desc.getCoefficient(k))) {
+                    lcursor.setAndNext(gl.get(n, k));
+                }
+            }
+            if (n != ivmax) {
+                vcursor.setAndNext(2 * xcursor.getAndNext() * gv.get(n));
+            }
+            ++n;
+        }
+        DataBlock gvc = vcoefficients(gp);
+        Matrix ga = g.getVarCoefficients();
+        for (int k = 0, c = 0; k < nb; ++k, c += nb) {
+            gvc.extract(c, nb).copy(ga.column(k));
+        }
+        return gp;
+    }
+    
     @Override
     public boolean checkBoundaries(DoubleSeq inparams) {
        DoubleSeq vp = vcoefficients(inparams);
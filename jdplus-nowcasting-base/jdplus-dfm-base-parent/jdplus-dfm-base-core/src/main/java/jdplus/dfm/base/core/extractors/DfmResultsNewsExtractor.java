@@ -38,6 +38,14 @@ public class DfmResultsNewsExtractor extends InformationMapping<DfmResultsNews>
         set(DfmDictionaries.REVISED_FORECASTS, double[].class, source -> source.getRevisedForecasts().toArray());
         set(DfmDictionaries.NEW_FORECASTS_T, double[].class, source -> source.getNewForecastsT().toArray());
         set(DfmDictionaries.NEW_FORECASTS, double[].class, source -> source.getNewForecasts().toArray());
+        set(DfmDictionaries.REVISIONS_INDEX, int[].class, source -> source.getRevisionsIndex());
+        set(DfmDictionaries.REVISIONS_PERIOD, String[].class, source -> source.getRevisionsPeriod());
+        set(DfmDictionaries.REVISIONS_T, double[].class, source -> source.getRevisionsT().toArray());
+        set(DfmDictionaries.REVISIONS, double[].class, source -> source.getRevisions().toArray());
+        set(DfmDictionaries.REVISIONS_WEIGHTS_T, Matrix.class, source -> source.getRevisionsWeightsT());
+        set(DfmDictionaries.REVISIONS_WEIGHTS, Matrix.class, source -> source.getRevisionsWeights());
+        set(DfmDictionaries.REVISIONS_IMPACTS_T, Matrix.class, source -> source.getRevisionsImpactsT());
+        set(DfmDictionaries.REVISIONS_IMPACTS, Matrix.class, source -> source.getRevisionsImpacts());
     }
     
     @Override
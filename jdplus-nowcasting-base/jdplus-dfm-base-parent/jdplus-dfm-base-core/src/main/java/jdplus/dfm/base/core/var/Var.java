@@ -16,10 +16,9 @@
  */
 package jdplus.dfm.base.core.var;
 
-import jdplus.toolkit.base.core.data.DataBlock;
-import jdplus.toolkit.base.core.math.linearsystem.LinearSystemSolver;
+import internal.jdplus.dfm.base.core.Initialization;
+import internal.jdplus.dfm.base.core.LyapunovSolver;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
-import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
 
 
 /**
@@ -30,59 +29,16 @@ import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
 public class Var {
 
     public FastMatrix unconditionalInitialization(VarDescriptor desc) {
-        int nl = desc.getNlags(), nvars = desc.getNfactors();
+        int nl = desc.getNlags();
         // We have to solve the steady state equation:
         // V = T V T' + Q
         // We consider the nlag*nb, nlag*nb sub-system
         FastMatrix v = FastMatrix.of(desc.getInnovationsVariance());
         FastMatrix t = FastMatrix.of(desc.getCoefficients());
-        int n = nvars * nl;
-        FastMatrix cov = FastMatrix.square(n);
-        int np = (n * (n + 1)) / 2;
-        FastMatrix M = FastMatrix.square(np);
-        double[] b = new double[np];
-        // fill the matrix
-        for (int c = 0, i = 0; c < n; ++c) {
-            for (int r = c; r < n; ++r, ++i) {
-                M.set(i, i, 1);
-                if (r % nl == 0 && c % nl == 0) {
-                    b[i] = v.get(r / nl, c / nl);
-                }
-                for (int k = 0; k < n; ++k) {
-                    for (int l = 0; l < n; ++l) {
-                        double zr = 0, zc = 0;
-                        if (r % nl == 0) {
-                            zr = t.get(r / nl, l);
-                        } else if (r == l + 1) {
-                            zr = 1;
-                        }
-                        if (c % nl == 0) {
-                            zc = t.get(c / nl, k);
-                        } else if (c == k + 1) {
-                            zc = 1;
-                        }
-                        double z = zr * zc;
-                        if (z != 0) {
-                            int p = l <= k ? pos(k, l, n) : pos(l, k, n);
-                            M.add(i, p, -z);
-                        }
-                    }
-                }
-            }
+        FastMatrix cov = LyapunovSolver.doubling(Initialization.companion(t, nl), Initialization.embed(v, nl));
+        if (cov == null) {
+            cov = Initialization.reference(t, v, nl);
         }
-
-        LinearSystemSolver.robustSolver().solve(M, DataBlock.of(b));
-
-        for (int i = 0, j = 0; i < n; i++) {
-            cov.column(i).drop(i, 0).copyFrom(b, j);
-            j += n - i;
-        }
-        SymmetricMatrix.fromLower(cov);
         return cov;
     }
-
-    private static int pos(int r, int c, int n) {
-        return r + c * (2 * n - c - 1) / 2;
-    }
-   
- }
+}
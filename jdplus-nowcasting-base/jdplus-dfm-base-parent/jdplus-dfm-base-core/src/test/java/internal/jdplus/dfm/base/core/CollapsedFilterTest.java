@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import jdplus.dfm.base.core.DfmEMTest;
+import jdplus.dfm.base.core.DynamicFactorModel;
+import jdplus.dfm.base.core.MeasurementDescriptor;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.MultivariateOrdinaryFilter;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import jdplus.toolkit.base.core.stats.likelihood.Likelihood;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class CollapsedFilterTest {
+
+    public CollapsedFilterTest() {
+    }
+
+    /**
+     * Data of DfmEMTest with ragged ends
+     *
+     * @return
+     */
+    static FastMatrix raggedData() {
+        FastMatrix M = FastMatrix.of(DfmEMTest.dfmdata.generateMatrix(null)).deepClone();
+        int n = M.getRowsCount() - 15, nv = M.getColumnsCount();
+        for (int i = 0; i < nv; ++i) {
+            for (int t = n - 1 - i % 5; t < n; ++t) {
+                M.set(t, i, Double.NaN);
+            }
+        }
+        return M;
+    }
+
+    @Test
+    public void testRaggedEnds() {
+        FastMatrix M = raggedData();
+        compare(SsfDfm.of(DfmEMTest.dmodel, 0), M);
+    }
+
+    @Test
+    public void testUnloadedObservations() {
+        // additional series without loadings, alone observed in some periods
+        DynamicFactorModel model = DfmEMTest.dmodel;
+        List<MeasurementDescriptor> mdescs = new ArrayList<>(model.getMeasurements());
+        mdescs.add(MeasurementDescriptor.builder()
+                .type(LevelMeasurement.ML)
+                .coefficient(DoubleSeq.of(Double.NaN, Double.NaN, Double.NaN))
+                .variance(.5)
+                .build());
+        DynamicFactorModel xmodel = new DynamicFactorModel(model.getVar(), mdescs);
+        FastMatrix M = raggedData();
+        int nobs = M.getRowsCount(), nv = M.getColumnsCount();
+        FastMatrix X = FastMatrix.make(nobs, nv + 1);
+        X.set(Double.NaN);
+        X.extract(0, nobs, 0, nv).copy(M);
+        for (int t = 0; t < nobs - 10; ++t) {
+            X.set(t, nv, Math.sin(t));
+        }
+        compare(SsfDfm.of(xmodel, 0), X);
+    }
+
+    private static void compare(IMultivariateSsf ssf, FastMatrix M) {
+        Likelihood cll = new CollapsedFilter(ssf).likelihood(new SsfMatrix(M), true);
+        assertNotNull(cll);
+        MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
+        PredictionErrorsDecompositionEx results = new PredictionErrorsDecompositionEx();
+        filter.process(ssf, new SsfMatrix(M), results);
+        Likelihood ll = results.likelihood(true);
+        assertEquals(ll.dim(), cll.dim());
+        assertEquals(ll.ssq(), cll.ssq(), 1e-6 * ll.ssq());
+        assertEquals(ll.logDeterminant(), cll.logDeterminant(), 1e-6 * Math.abs(ll.logDeterminant()));
+        assertEquals(ll.logLikelihood(), cll.logLikelihood(), 1e-6 * Math.abs(ll.logLikelihood()));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.dfm.base.core.DfmEMTest;
+import jdplus.dfm.base.core.DfmMapping;
+import jdplus.dfm.base.core.IDfmMapping;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class DfmFunctionTest {
+
+    public DfmFunctionTest() {
+    }
+
+    @Test
+    public void testWorkspaces() {
+        FastMatrix M = CollapsedFilterTest.raggedData();
+        IDfmMapping mapping = new DfmMapping(DfmEMTest.dmodel.normalize(), false, true);
+        DoubleSeq p0 = mapping.getDefaultParameters();
+        DoubleSeq p1 = DoubleSeq.onMapping(p0.length(), i -> 1.01 * p0.get(i));
+        DfmFunction fn = DfmFunction.builder(new SsfMatrix(M), mapping)
+                .parallelProcessing(false)
+                .build();
+        DfmFunctionPoint pt0 = fn.ssqEvaluate(p0);
+        double[] e0 = pt0.getE().toArray();
+        // the second evaluation re-uses the workspace of the first one
+        DfmFunctionPoint pt1 = fn.ssqEvaluate(p1);
+        assertArrayEquals(e0, pt0.getE().toArray());
+
+        // same results as with a new function (new workspaces)
+        DfmFunction nfn = DfmFunction.builder(new SsfMatrix(M), mapping)
+                .parallelProcessing(false)
+                .build();
+        assertArrayEquals(nfn.ssqEvaluate(p1).getE().toArray(), pt1.getE().toArray(), 1e-12);
+
+        // residual-free evaluation
+        DfmFunctionPoint qt1 = fn.evaluate(p1);
+        assertEquals(pt1.likelihood().logLikelihood(), qt1.likelihood().logLikelihood(), 1e-9);
+        assertEquals(pt1.likelihood().sigma2(), qt1.likelihood().sigma2(), 1e-12);
+        assertArrayEquals(pt1.getE().toArray(), qt1.getLikelihood().deviances().toArray(), 1e-12);
+    }
+}
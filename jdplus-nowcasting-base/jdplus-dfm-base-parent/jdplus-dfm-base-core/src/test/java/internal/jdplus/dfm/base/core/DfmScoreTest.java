@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.dfm.base.core.DfmEMTest;
+import jdplus.dfm.base.core.DfmMapping;
+import jdplus.dfm.base.core.DfmMappingI;
+import jdplus.dfm.base.core.DynamicFactorModel;
+import jdplus.dfm.base.core.IDfmMapping;
+import jdplus.dfm.base.core.SimpleDfmMapping;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.math.functions.NumericalDerivatives;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class DfmScoreTest {
+
+    public DfmScoreTest() {
+    }
+
+    @Test
+    public void testGradient() {
+        // mixed frequencies, with ragged ends
+        FastMatrix M = CollapsedFilterTest.raggedData();
+        for (DynamicFactorModel model : new DynamicFactorModel[]{DfmEMTest.dmodel, DfmEMTest.dmodel_u}) {
+            DynamicFactorModel nmodel = model.normalize();
+            compare(new DfmMapping(nmodel, false, false), M);
+            compare(new DfmMapping(nmodel, true, false), M);
+            compare(new DfmMapping(nmodel, false, true), M);
+            compare(new DfmMappingI(nmodel, false, false), M);
+            compare(new SimpleDfmMapping(nmodel), M);
+        }
+    }
+
+    /**
+     * Compares the analytical gradient with the numerical one, for the
+     * log-likelihood and for the function with concentrated sigma2
+     *
+     * @param mapping
+     * @param M
+     */
+    private static void compare(IDfmMapping mapping, FastMatrix M) {
+        for (boolean log : new boolean[]{true, false}) {
+            DfmFunction fn = DfmFunction.builder(new SsfMatrix(M), mapping)
+                    .analyticalGradient(true)
+                    .symmetricNumericalDerivatives(true)
+                    .parallelProcessing(false)
+                    .log(log)
+                    .build();
+            DfmFunctionPoint pt = fn.evaluate(mapping.getDefaultParameters());
+            DoubleSeq ga = pt.derivatives().gradient();
+            DoubleSeq gn = new NumericalDerivatives(pt, true, false).gradient();
+            assertEquals(gn.length(), ga.length());
+            double gmax = 1;
+            for (int i = 0; i < gn.length(); ++i) {
+                gmax = Math.max(gmax, Math.abs(gn.get(i)));
+            }
+            for (int i = 0; i < gn.length(); ++i) {
+                assertEquals(gn.get(i), ga.get(i), 1e-3 * gmax);
+            }
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package internal.jdplus.dfm.base.core;
 
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -31,5 +33,37 @@ public class DynamicsTest {
     @Test
     public void testSomeMethod() {
     }
-    
+
+    @Test
+    public void testT() {
+        // the blocks of T must be consistent with TX, for each factor
+        int nf = 3, nl = 2;
+        FastMatrix T = FastMatrix.make(nf, nf * nl);
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j < nf * nl; ++j) {
+                T.set(i, j, Math.cos(7 * i + j) / 4);
+            }
+        }
+        FastMatrix V = FastMatrix.square(nf);
+        V.diagonal().set(1);
+        for (int nxlags = nl; nxlags <= nl + 3; ++nxlags) {
+            Dynamics dynamics = Dynamics.of(T, V, nxlags);
+            int dim = nf * nxlags;
+            FastMatrix tr = FastMatrix.square(dim);
+            dynamics.T(0, tr);
+            DataBlock x = DataBlock.make(dim);
+            for (int i = 0; i < dim; ++i) {
+                x.set(i, Math.sin(i + 1));
+            }
+            double[] tx = new double[dim];
+            for (int i = 0; i < dim; ++i) {
+                tx[i] = tr.row(i).dot(x);
+            }
+            dynamics.TX(0, x);
+            for (int i = 0; i < dim; ++i) {
+                assertEquals(tx[i], x.get(i), 1e-12);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.dfm.base.core.DfmEMTest;
+import jdplus.dfm.base.core.DfmMapping;
+import jdplus.dfm.base.core.DynamicFactorModel;
+import jdplus.dfm.base.core.IDfmMapping;
+import jdplus.dfm.base.core.var.VarDescriptor;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class InitialCovarianceCacheTest {
+
+    public InitialCovarianceCacheTest() {
+    }
+
+    @Test
+    public void testLoadings() {
+        FastMatrix M = CollapsedFilterTest.raggedData();
+        // fixed VAR: only the measurements change
+        IDfmMapping mapping = new DfmMapping(DfmEMTest.dmodel_u.normalize(), false, true);
+        DfmFunction fn = DfmFunction.builder(new SsfMatrix(M), mapping)
+                .parallelProcessing(false)
+                .build();
+        DfmFunction nfn = DfmFunction.builder(new SsfMatrix(M), mapping)
+                .parallelProcessing(false)
+                .initialCovarianceCacheSize(0)
+                .build();
+        InitialCovarianceCache cache = fn.getInitialCovarianceCache();
+        assertNotNull(cache);
+        assertNull(nfn.getInitialCovarianceCache());
+
+        DoubleSeq p0 = mapping.getDefaultParameters();
+        DfmFunctionPoint pt = fn.evaluate(p0);
+        assertEquals(1, cache.size());
+        DynamicFactorModel model = pt.getCore();
+        int blen = model.defaultSsfBlockLength();
+        Dynamics dyn = dynamics(model, blen);
+        FastMatrix v0 = cache.get(model.getVar(), blen, dyn);
+        FastMatrix c0 = v0.deepClone();
+        for (int i = 1; i <= 5; ++i) {
+            double s = 1 + .02 * i;
+            DoubleSeq p = DoubleSeq.onMapping(p0.length(), j -> s * p0.get(j));
+            DfmFunctionPoint cpt = fn.evaluate(p);
+            // same likelihood as without the cache
+            assertEquals(nfn.evaluate(p).likelihood().logLikelihood(), cpt.likelihood().logLikelihood(), 1e-9);
+            // the evaluations hit the cache
+            assertEquals(1, cache.size());
+            assertSame(v0, cache.get(cpt.getCore().getVar(), blen, dyn));
+        }
+        // the shared matrix is never modified
+        assertArrayEquals(c0.toArray(), v0.toArray());
+    }
+
+    @Test
+    public void testKey() {
+        DynamicFactorModel model = DfmEMTest.dmodel_u.normalize();
+        int blen = model.defaultSsfBlockLength();
+        Dynamics dyn = dynamics(model, blen);
+        VarDescriptor var = model.getVar();
+        // same content, other arrays
+        VarDescriptor cvar = new VarDescriptor(FastMatrix.of(var.getCoefficients()),
+                FastMatrix.of(var.getInnovationsVariance()), var.getInitialization());
+        InitialCovarianceCache cache = new InitialCovarianceCache();
+        FastMatrix v0 = cache.get(var, blen, dyn);
+        assertSame(v0, cache.get(cvar, blen, dyn));
+        assertEquals(1, cache.size());
+        // other block length
+        Dynamics ldyn = dynamics(model, blen + 1);
+        FastMatrix v1 = cache.get(var, blen + 1, ldyn);
+        assertNotSame(v0, v1);
+        assertEquals(2, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        DynamicFactorModel model = DfmEMTest.dmodel_u.normalize();
+        int blen = model.defaultSsfBlockLength();
+        InitialCovarianceCache cache = new InitialCovarianceCache(2);
+        VarDescriptor[] vars = new VarDescriptor[3];
+        Dynamics[] dyns = new Dynamics[3];
+        FastMatrix[] v = new FastMatrix[3];
+        for (int i = 0; i < 3; ++i) {
+            VarDescriptor var = model.getVar();
+            FastMatrix c = FastMatrix.of(var.getCoefficients());
+            c.mul(1 - .1 * i);
+            vars[i] = new VarDescriptor(c, var.getInnovationsVariance(), var.getInitialization());
+            dyns[i] = dynamics(new DynamicFactorModel(vars[i], model.getMeasurements()), blen);
+            v[i] = cache.get(vars[i], blen, dyns[i]);
+            assertTrue(cache.size() <= 2);
+        }
+        assertEquals(2, cache.size());
+        // the most recent entries are kept
+        assertSame(v[1], cache.get(vars[1], blen, dyns[1]));
+        assertSame(v[2], cache.get(vars[2], blen, dyns[2]));
+        // the eldest one has been removed (it is computed again)
+        FastMatrix nv0 = cache.get(vars[0], blen, dyns[0]);
+        assertNotSame(v[0], nv0);
+        assertArrayEquals(v[0].toArray(), nv0.toArray(), 1e-12);
+        assertEquals(2, cache.size());
+        // v[1] is now the least recently used entry
+        assertSame(v[2], cache.get(vars[2], blen, dyns[2]));
+        assertNotSame(v[1], cache.get(vars[1], blen, dyns[1]));
+    }
+
+    private static Dynamics dynamics(DynamicFactorModel model, int blen) {
+        return (Dynamics) SsfDfm.withBlockLength(model, blen).dynamics();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class InitializationTest {
+
+    public InitializationTest() {
+    }
+
+    @Test
+    public void testUnconditional() {
+        int nf = 3, nl = 2;
+        FastMatrix t = FastMatrix.make(nf, nf * nl);
+        t.set(0, 0, .5);
+        t.set(0, 1, .2);
+        t.set(0, 2, .1);
+        t.set(1, 2, .4);
+        t.set(1, 3, -.2);
+        t.set(1, 4, .15);
+        t.set(2, 0, -.1);
+        t.set(2, 4, .6);
+        t.set(2, 5, .1);
+        FastMatrix v = FastMatrix.square(nf);
+        v.diagonal().set(1);
+        v.set(0, 1, .3);
+        v.set(1, 0, .3);
+        v.set(2, 2, 2);
+        FastMatrix cov = LyapunovSolver.doubling(Initialization.companion(t, nl), Initialization.embed(v, nl));
+        FastMatrix ref = Initialization.reference(t, v, nl);
+        assertNotNull(cov);
+        for (int i = 0; i < nf * nl; ++i) {
+            for (int j = 0; j < nf * nl; ++j) {
+                assertEquals(ref.get(i, j), cov.get(i, j), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testNonStationary() {
+        FastMatrix t = FastMatrix.make(1, 1);
+        t.set(0, 0, 1.01);
+        FastMatrix v = FastMatrix.square(1);
+        v.set(0, 0, 1);
+        assertNull(LyapunovSolver.doubling(Initialization.companion(t, 1), Initialization.embed(v, 1)));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.dfm.base.core.DfmEMTest;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.StateStorage;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import jdplus.toolkit.base.core.stats.likelihood.Likelihood;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class MSmootherTest {
+
+    public MSmootherTest() {
+    }
+
+    /**
+     * Long sample (2000 periods), made of the repeated panel of the EM tests
+     *
+     * @return
+     */
+    static FastMatrix longData() {
+        FastMatrix M = FastMatrix.of(DfmEMTest.dfmdata.generateMatrix(null));
+        int n = M.getRowsCount() - 15;
+        FastMatrix L = FastMatrix.make(2000, M.getColumnsCount());
+        for (int t = 0; t < L.getRowsCount(); ++t) {
+            L.row(t).copy(M.row(t % n));
+        }
+        return L;
+    }
+
+    @Test
+    public void testCheckpoints() {
+        IMultivariateSsf ssf = SsfDfm.of(DfmEMTest.dmodel, 0);
+        FastMatrix M = longData();
+        MSmoother smoother = MSmoother.builder(ssf)
+                .calcVariance(true)
+                .build();
+        assertTrue(smoother.process(new SsfMatrix(M)));
+        StateStorage ss = smoother.getSmoothingResults();
+        Likelihood ll = smoother.getFilteringResults().likelihood(true);
+        for (int k : new int[]{0, 37}) {
+            MSmoother csmoother = MSmoother.builder(ssf)
+                    .calcVariance(true)
+                    .build();
+            int[] next = {M.getRowsCount() - 1};
+            assertTrue(csmoother.process(M, k, (state, t) -> {
+                assertEquals(next[0]--, t);
+                compare(ss.a(t), state.a(), 1e-9);
+                compare(ss.P(t).diagonal(), state.P().diagonal(), 1e-9);
+            }));
+            assertEquals(-1, next[0]);
+            assertEquals(ll.logLikelihood(), csmoother.getLikelihood().logLikelihood(), 1e-9 * Math.abs(ll.logLikelihood()));
+            // only the filtering results of one block are stored
+            int kmax = k == 0 ? MSmoother.defaultBlockLength(M.getRowsCount()) : k;
+            assertTrue(csmoother.getFilteringResults().size() <= kmax);
+        }
+    }
+
+    static void compare(DataBlock expected, DataBlock actual, double eps) {
+        for (int i = 0; i < expected.length(); ++i) {
+            assertEquals(expected.get(i), actual.get(i), eps * (1 + Math.abs(expected.get(i))));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.dfm.base.core.IDfmMeasurement;
+import jdplus.dfm.base.core.MeasurementDescriptor;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.ISsfLoading;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class MeasurementsTest {
+
+    public MeasurementsTest() {
+    }
+
+    @Test
+    public void testSparseLoadings() {
+        int nf = 3, c = 12, dim = nf * c;
+        MeasurementDescriptor[] mdescs = {
+            MeasurementDescriptor.builder().type(LevelMeasurement.ML).coefficient(DoubleSeq.of(.5, Double.NaN, -1)).variance(1).build(),
+            MeasurementDescriptor.builder().type(CumulatedVariationsMeasurement.MCD3).coefficient(DoubleSeq.of(1, 2, Double.NaN)).variance(1).build(),
+            MeasurementDescriptor.builder().type(CumulMeasurement.MC12).coefficient(DoubleSeq.of(Double.NaN, .3, .7)).variance(1).build()
+        };
+        Measurements m = Measurements.of(nf, c, mdescs);
+        FastMatrix V = FastMatrix.square(dim);
+        DataBlock x = DataBlock.make(dim);
+        for (int i = 0; i < dim; ++i) {
+            x.set(i, Math.sin(i + 1));
+            for (int j = 0; j <= i; ++j) {
+                double v = Math.cos(i * j + 1) + (i == j ? dim : 0);
+                V.set(i, j, v);
+                V.set(j, i, v);
+            }
+        }
+        for (int i = 0; i < m.getCount(); ++i) {
+            ISsfLoading loading = m.loading(i);
+            // dense loading: the coefficient of each factor times the
+            // weights of the measurement, in the block of the factor
+            IDfmMeasurement type = mdescs[i].getType();
+            DataBlock w = DataBlock.make(type.getLength());
+            type.fill(w);
+            DataBlock z = DataBlock.make(dim);
+            for (int j = 0; j < nf; ++j) {
+                double cj = mdescs[i].getCoefficient(j);
+                if (Double.isFinite(cj)) {
+                    z.range(j * c, j * c + w.length()).addAY(cj, w);
+                }
+            }
+            DataBlock lz = DataBlock.make(dim);
+            loading.Z(0, lz);
+            for (int j = 0; j < dim; ++j) {
+                assertEquals(z.get(j), lz.get(j), 1e-12);
+            }
+            assertEquals(z.dot(x), loading.ZX(0, x), 1e-9);
+            DataBlock vz = DataBlock.make(dim);
+            for (int j = 0; j < dim; ++j) {
+                vz.set(j, V.row(j).dot(z));
+            }
+            assertEquals(z.dot(vz), loading.ZVZ(0, V), 1e-9);
+            FastMatrix W = V.deepClone();
+            loading.VpZdZ(0, W, 2);
+            for (int j = 0; j < dim; ++j) {
+                for (int k = 0; k < dim; ++k) {
+                    assertEquals(V.get(j, k) + 2 * z.get(j) * z.get(k), W.get(j, k), 1e-9);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class TruncatedSvdTest {
+
+    public TruncatedSvdTest() {
+    }
+
+    @Test
+    public void testLeadingTriplet() {
+        int m = 200, n = 50;
+        // A = 5*a*b' + 2*c*d' (a, c and b, d orthonormal)
+        DataBlock a = DataBlock.make(m), c = DataBlock.make(m), b = DataBlock.make(n), d = DataBlock.make(n);
+        for (int i = 0; i < m; ++i) {
+            a.set(i, Math.cos(2 * Math.PI * i / m));
+            c.set(i, Math.sin(2 * Math.PI * i / m));
+        }
+        for (int i = 0; i < n; ++i) {
+            b.set(i, Math.cos(2 * Math.PI * i / n));
+            d.set(i, Math.sin(2 * Math.PI * i / n));
+        }
+        a.mul(1 / a.norm2());
+        b.mul(1 / b.norm2());
+        c.mul(1 / c.norm2());
+        d.mul(1 / d.norm2());
+        FastMatrix A = FastMatrix.make(m, n);
+        for (int j = 0; j < n; ++j) {
+            A.column(j).setAY(5 * b.get(j), a);
+            A.column(j).addAY(2 * d.get(j), c);
+        }
+        TruncatedSvd svd = TruncatedSvd.builder().rank(2).build();
+        svd.decompose(A);
+        assertEquals(5, svd.S().get(0), 1e-9);
+        assertEquals(2, svd.S().get(1), 1e-9);
+        assertEquals(1, Math.abs(svd.U().column(0).dot(a)), 1e-9);
+        assertEquals(1, Math.abs(svd.V().column(0).dot(b)), 1e-9);
+        assertEquals(1, Math.abs(svd.U().column(1).dot(c)), 1e-9);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.dfm.base.core.DfmEMTest;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.MultivariateOrdinaryFilter;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import jdplus.toolkit.base.core.stats.likelihood.Likelihood;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class UFilterTest {
+
+    public UFilterTest() {
+    }
+
+    /**
+     * Mixed-frequency panel with a periodic pattern of observations: the odd
+     * series are only observed in the last month of each quarter
+     *
+     * @return
+     */
+    static FastMatrix periodicData() {
+        int n = 300, nv = DfmEMTest.dmodel.getMeasurementsCount();
+        FastMatrix M = FastMatrix.make(n, nv);
+        for (int t = 0; t < n; ++t) {
+            for (int i = 0; i < nv; ++i) {
+                M.set(t, i, i % 2 == 1 && t % 3 != 2 ? Double.NaN : Math.sin(t + i));
+            }
+        }
+        return M;
+    }
+
+    @Test
+    public void testLikelihood() {
+        FastMatrix M = CollapsedFilterTest.raggedData();
+        compare(SsfDfm.of(DfmEMTest.dmodel, 0), M, 0);
+        compare(SsfDfm.of(DfmEMTest.dmodel_u, 0), M, 0);
+    }
+
+    @Test
+    public void testSteadyState() {
+        IMultivariateSsf ssf = SsfDfm.of(DfmEMTest.dmodel, 0);
+        // the steady state is reached on the periodic pattern (cycle of 3
+        // periods) and never left
+        FastMatrix M = periodicData();
+        compare(ssf, M, 0);
+        UFilter filter = compare(ssf, M, UFilter.DEF_STEADYSTATE_EPS);
+        assertEquals(1, filter.getSteadyStatesCount());
+        // mixed-frequency panel of the EM tests, with series starting at
+        // different periods
+        M = FastMatrix.of(DfmEMTest.dfmdata.generateMatrix(null));
+        filter = compare(ssf, M, UFilter.DEF_STEADYSTATE_EPS);
+        assertTrue(filter.getSteadyStatesCount() >= 1);
+    }
+
+    private static UFilter compare(IMultivariateSsf ssf, FastMatrix M, double eps) {
+        UFilter ufilter = new UFilter(ssf, false, eps);
+        assertTrue(ufilter.process(new SsfMatrix(M)));
+        Likelihood ull = ufilter.likelihood(true);
+        MultivariateOrdinaryFilter filter = new MultivariateOrdinaryFilter();
+        PredictionErrorsDecompositionEx results = new PredictionErrorsDecompositionEx();
+        filter.process(ssf, new SsfMatrix(M), results);
+        Likelihood ll = results.likelihood(true);
+        assertEquals(ll.dim(), ull.dim());
+        assertEquals(ll.ssq(), ull.ssq(), 1e-6 * ll.ssq());
+        assertEquals(ll.logDeterminant(), ull.logDeterminant(), 1e-6 * Math.abs(ll.logDeterminant()));
+        assertEquals(ll.logLikelihood(), ull.logLikelihood(), 1e-6 * Math.abs(ll.logLikelihood()));
+        return ufilter;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package internal.jdplus.dfm.base.core;
+
+import jdplus.dfm.base.core.DfmEMTest;
+import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.StateStorage;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
+import jdplus.toolkit.base.core.ssf.multivariate.SsfMatrix;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class USmootherTest {
+
+    public USmootherTest() {
+    }
+
+    @Test
+    public void testSmoothing() {
+        IMultivariateSsf ssf = SsfDfm.of(DfmEMTest.dmodel, 0);
+        compare(ssf, CollapsedFilterTest.raggedData(), 0);
+    }
+
+    @Test
+    public void testSteadyState() {
+        IMultivariateSsf ssf = SsfDfm.of(DfmEMTest.dmodel, 0);
+        FastMatrix M = UFilterTest.periodicData();
+        USmoother smoother = compare(ssf, M, UFilter.DEF_STEADYSTATE_EPS);
+        assertEquals(1, smoother.getFilteringResults().getSteadyStatesCount());
+        M = FastMatrix.of(DfmEMTest.dfmdata.generateMatrix(null));
+        smoother = compare(ssf, M, UFilter.DEF_STEADYSTATE_EPS);
+        assertTrue(smoother.getFilteringResults().getSteadyStatesCount() >= 1);
+    }
+
+    @Test
+    public void testCheckpoints() {
+        IMultivariateSsf ssf = SsfDfm.of(DfmEMTest.dmodel, 0);
+        FastMatrix M = MSmootherTest.longData();
+        for (double eps : new double[]{0, UFilter.DEF_STEADYSTATE_EPS}) {
+            USmoother smoother = USmoother.builder(ssf)
+                    .calcVariance(true)
+                    .steadyStateTolerance(eps)
+                    .build();
+            assertTrue(smoother.process(new SsfMatrix(M)));
+            StateStorage ss = smoother.getSmoothingResults();
+            double ll = smoother.getFilteringResults().likelihood(true).logLikelihood();
+            for (int k : new int[]{0, 37}) {
+                USmoother csmoother = USmoother.builder(ssf)
+                        .calcVariance(true)
+                        .steadyStateTolerance(eps)
+                        .build();
+                int[] next = {M.getRowsCount() - 1};
+                assertTrue(csmoother.process(M, k, (state, t) -> {
+                    assertEquals(next[0]--, t);
+                    // the steady states of the blocks are detected separately
+                    MSmootherTest.compare(ss.a(t), state.a(), eps == 0 ? 1e-9 : 1e-6);
+                    MSmootherTest.compare(ss.P(t).diagonal(), state.P().diagonal(), eps == 0 ? 1e-9 : 1e-6);
+                }));
+                assertEquals(-1, next[0]);
+                assertEquals(ll, csmoother.getLikelihood().logLikelihood(), 1e-6 * Math.abs(ll));
+                // only the filtering results of one block are stored
+                int kmax = k == 0 ? MSmoother.defaultBlockLength(M.getRowsCount()) : k;
+                assertTrue(csmoother.getFilteringResults().size() <= kmax);
+            }
+        }
+    }
+
+    private static USmoother compare(IMultivariateSsf ssf, FastMatrix M, double eps) {
+        USmoother usmoother = USmoother.builder(ssf)
+                .calcVariance(true)
+                .steadyStateTolerance(eps)
+                .build();
+        assertTrue(usmoother.process(new SsfMatrix(M)));
+        MSmoother msmoother = MSmoother.builder(ssf)
+                .calcVariance(true)
+                .build();
+        assertTrue(msmoother.process(new SsfMatrix(M)));
+        StateStorage us = usmoother.getSmoothingResults(), ms = msmoother.getSmoothingResults();
+        for (int t = 0; t < M.getRowsCount(); ++t) {
+            DataBlock ua = us.a(t), ma = ms.a(t);
+            DataBlock uv = us.P(t).diagonal(), mv = ms.P(t).diagonal();
+            for (int i = 0; i < ma.length(); ++i) {
+                assertEquals(ma.get(i), ua.get(i), 1e-6 * (1 + Math.abs(ma.get(i))));
+                assertEquals(mv.get(i), uv.get(i), 1e-6 * (1 + Math.abs(mv.get(i))));
+            }
+        }
+        return usmoother;
+    }
+}
@@ -33,9 +33,13 @@ import jdplus.toolkit.base.api.timeseries.TsDomain;
 import jdplus.toolkit.base.api.timeseries.TsPeriod;
 import jdplus.toolkit.base.core.data.DataBlock;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.math.matrices.GeneralMatrix;
+import jdplus.toolkit.base.core.math.matrices.SymmetricMatrix;
 import jdplus.toolkit.base.core.ssf.ISsfInitialization;
+import jdplus.toolkit.base.core.ssf.StateStorage;
 import jdplus.toolkit.base.core.stats.DescriptiveStatistics;
 import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  *
@@ -43,12 +47,12 @@ import org.junit.jupiter.api.Test;
  */
 public class DfmEMTest {
 
-    static DynamicFactorModel dmodel, dmodel_u;
+    public static DynamicFactorModel dmodel, dmodel_u;
 
     static final int N = 500;
     static final boolean stressTest = false;
 
-    static TsInformationSet dfmdata;
+    public static TsInformationSet dfmdata;
 
     private static Matrix T, TVar, MVar, D, O, Z, M;
     private static FastMatrix dd, ddrnd;
@@ -193,6 +197,208 @@ public class DfmEMTest {
         }
     }
 
+    @Test
+    public void testAccelerated() {
+        DfmEM em = DfmEM.builder()
+                .maxIter(500)
+                .precision(1e-5)
+                .build();
+        em.initialize(dmodel, dfmdata);
+        DfmEM aem = DfmEM.builder()
+                .maxIter(500)
+                .precision(1e-5)
+                .accelerated(true)
+                .build();
+        aem.initialize(dmodel, dfmdata);
+        double ll = em.getFinalLogLikelihood(), all = aem.getFinalLogLikelihood();
+        assertEquals(ll, all, 1e-3 * Math.abs(ll));
+        assertTrue(aem.getIterationsCount() < em.getIterationsCount());
+    }
+
+    @Test
+    public void testAcceleratedMaxIter() {
+        DfmEM aem = DfmEM.builder()
+                .maxIter(3)
+                .precision(1e-12)
+                .accelerated(true)
+                .build();
+        aem.initialize(dmodel, dfmdata);
+        assertEquals(3, aem.getIterationsCount());
+    }
+
+    @Test
+    public void testStreamedMoments() {
+        DfmEM em = DfmEM.builder()
+                .maxIter(1)
+                .build();
+        DynamicFactorModel m1 = em.initialize(dmodel, dfmdata);
+        DynamicFactorModel r1 = tableEmIteration(dmodel, dfmdata);
+        assertEquals(1, em.getIterationsCount());
+        compare(r1.getVar().getCoefficients(), m1.getVar().getCoefficients());
+        compare(r1.getVar().getInnovationsVariance(), m1.getVar().getInnovationsVariance());
+        for (int i = 0; i < r1.getMeasurementsCount(); ++i) {
+            MeasurementDescriptor rdesc = r1.getMeasurements().get(i), mdesc = m1.getMeasurements().get(i);
+            for (int j = 0; j < rdesc.getCoefficient().length(); ++j) {
+                double r = rdesc.getCoefficient(j), m = mdesc.getCoefficient(j);
+                if (Double.isNaN(r)) {
+                    assertTrue(Double.isNaN(m));
+                } else {
+                    assertEquals(r, m, 1e-9 * (1 + Math.abs(r)));
+                }
+            }
+            assertEquals(rdesc.getVariance(), mdesc.getVariance(), 1e-9 * (1 + rdesc.getVariance()));
+        }
+    }
+
+    private static void compare(Matrix R, Matrix M) {
+        for (int i = 0; i < R.getRowsCount(); ++i) {
+            for (int j = 0; j < R.getColumnsCount(); ++j) {
+                assertEquals(R.get(i, j), M.get(i, j), 1e-9 * (1 + Math.abs(R.get(i, j))));
+            }
+        }
+    }
+
+    /**
+     * One EM iteration computed on the stored smoothing results (series of
+     * E(f(i)f(j)) for the whole sample), as in the previous implementation of
+     * the E-step
+     *
+     * @param model
+     * @param data
+     * @return
+     */
+    private static DynamicFactorModel tableEmIteration(DynamicFactorModel model, TsInformationSet data) {
+        DfmProcessor processor = DfmProcessor.builder()
+                .calcVariance(true)
+                .build();
+        assertTrue(processor.process(model, data));
+        DynamicFactorModel dfm = model.rescaleVariances(processor.getLikelihood().sigma2()).normalize();
+        processor = DfmProcessor.builder()
+                .calcVariance(true)
+                .extendedLags(0)
+                .build();
+        assertTrue(processor.process(dfm, data));
+        StateStorage ss = processor.getSmoothingResults();
+        Matrix M = data.generateMatrix(null);
+        int n = M.getRowsCount(), nf = dfm.getNfactors(), nl = dfm.getNlags(), c = dfm.defaultSsfBlockLength();
+
+        // loadings
+        List<MeasurementDescriptor> ndescs = new ArrayList<>();
+        int i = 0;
+        for (MeasurementDescriptor desc : dfm.getMeasurements()) {
+            DoubleSeq y = M.column(i++);
+            DataBlock z = DataBlock.make(desc.getType().getLength());
+            desc.getType().fill(z);
+            DataBlock[] g = new DataBlock[nf];
+            for (int j = 0; j < nf; ++j) {
+                g[j] = DataBlock.make(n);
+                for (int k = 0; k < z.length(); ++k) {
+                    g[j].addAY(z.get(k), ss.item(j * c + k));
+                }
+            }
+            int nu = desc.getUsedFactorsCount();
+            int[] used = new int[nu];
+            for (int j = 0, u = 0; j < nf; ++j) {
+                if (!Double.isNaN(desc.getCoefficient(j))) {
+                    used[u++] = j;
+                }
+            }
+            double[] gy = new double[nu];
+            FastMatrix gg = FastMatrix.square(nu);
+            for (int u = 0; u < nu; ++u) {
+                for (int v = 0; v < nu; ++v) {
+                    // E(g(u)g(v)) by period
+                    DataBlock e = DataBlock.make(n);
+                    for (int p = 0; p < z.length(); ++p) {
+                        for (int q = 0; q < z.length(); ++q) {
+                            double zz = z.get(p) * z.get(q);
+                            if (zz != 0) {
+                                e.addAY(zz, covar(ss, used[u] * c + p, used[v] * c + q));
+                            }
+                        }
+                    }
+                    e.addAXY(1, g[used[u]], g[used[v]]);
+                    double s = 0;
+                    for (int t = 0; t < n; ++t) {
+                        if (Double.isFinite(y.get(t))) {
+                            s += e.get(t);
+                        }
+                    }
+                    gg.set(u, v, s);
+                }
+            }
+            double yy = 0;
+            int nobs = 0;
+            for (int t = 0; t < n; ++t) {
+                double yt = y.get(t);
+                if (Double.isFinite(yt)) {
+                    yy += yt * yt;
+                    ++nobs;
+                    for (int u = 0; u < nu; ++u) {
+                        gy[u] += yt * g[used[u]].get(t);
+                    }
+                }
+            }
+            DataBlock b = DataBlock.of(gy.clone());
+            SymmetricMatrix.solve(gg.deepClone(), b, false);
+            double ee = yy;
+            for (int u = 0; u < nu; ++u) {
+                ee -= 2 * b.get(u) * gy[u];
+                for (int v = 0; v < nu; ++v) {
+                    ee += gg.get(u, v) * b.get(u) * b.get(v);
+                }
+            }
+            double[] coeff = desc.getCoefficient().toArray();
+            for (int u = 0; u < nu; ++u) {
+                coeff[used[u]] = b.get(u);
+            }
+            ndescs.add(desc.toBuilder()
+                    .coefficient(DoubleSeq.of(coeff))
+                    .variance(ee < 0 ? 1e-12 : ee / nobs)
+                    .build());
+        }
+
+        // var
+        FastMatrix f = FastMatrix.make(nf, nf * nl);
+        FastMatrix f2 = FastMatrix.square(nf * nl);
+        for (int k = 0; k < nf; ++k) {
+            for (int j = 0; j < nl; ++j) {
+                for (int l = 0; l < nf; ++l) {
+                    f.set(k, j * nf + l, efifj(ss, k * c, l * c + j + 1));
+                }
+            }
+        }
+        for (int p = 1, r = 0; p <= nl; ++p) {
+            for (int k = 0; k < nf; ++k, ++r) {
+                for (int q = 1, s = 0; q <= nl; ++q) {
+                    for (int l = 0; l < nf; ++l, ++s) {
+                        f2.set(r, s, efifj(ss, k * c + p, l * c + q));
+                    }
+                }
+            }
+        }
+        FastMatrix A = f.deepClone();
+        SymmetricMatrix.solveXS(f2, A, false);
+        FastMatrix Q = FastMatrix.square(nf);
+        for (int k = 0; k < nf; ++k) {
+            for (int l = 0; l < nf; ++l) {
+                Q.set(k, l, efifj(ss, k * c, l * c));
+            }
+        }
+        Q.sub(GeneralMatrix.ABt(A, f));
+        Q.mul(1.0 / n);
+        VarDescriptor var = new VarDescriptor(A, Q, dfm.getVar().getInitialization());
+        return new DynamicFactorModel(var, ndescs).normalize();
+    }
+
+    private static DataBlock covar(StateStorage ss, int i, int j) {
+        return i <= j ? ss.covar(i, j) : ss.covar(j, i);
+    }
+
+    private static double efifj(StateStorage ss, int i, int j) {
+        return covar(ss, i, j).sum() + ss.item(i).dot(ss.item(j));
+    }
+
 //    @Test
 //   public void testinitCalc() {
 //        DynamicFactorModel dmodelc = dmodel.clone();
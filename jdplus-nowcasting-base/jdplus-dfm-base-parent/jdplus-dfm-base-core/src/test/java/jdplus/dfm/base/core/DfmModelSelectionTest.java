@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package jdplus.dfm.base.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import jdplus.dfm.base.api.MeasurementType;
+import jdplus.dfm.base.api.timeseries.TsInformationSet;
+import jdplus.toolkit.base.api.timeseries.TsData;
+import jdplus.toolkit.base.api.timeseries.TsPeriod;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class DfmModelSelectionTest {
+
+    public DfmModelSelectionTest() {
+    }
+
+    @Test
+    public void testSelection() {
+        // panel with 2 factors
+        TsInformationSet input = PrincipalComponentsInitializerTest.data(new Random(3), .5);
+        List<IDfmMeasurement> measurements = Collections.nCopies(input.getSeriesCount(), IDfmMeasurement.measurement(MeasurementType.M));
+        for (DfmModelSelection.InformationCriterion criterion : DfmModelSelection.InformationCriterion.values()) {
+            DfmModelSelection selection = DfmModelSelection.builder()
+                    .criterion(criterion)
+                    .build();
+            assertTrue(selection.process(input, measurements));
+            assertEquals(2, selection.getCriteria().get(0).getNfactors());
+        }
+    }
+
+    @Test
+    public void testCriteria() {
+        // centred panel with orthogonal columns: the singular values are 6, 4 and 2
+        double[][] x = {{3, -3, 3, -3}, {2, 2, -2, -2}, {1, -1, -1, 1}};
+        List<TsData> input = new ArrayList<>();
+        for (double[] xi : x) {
+            input.add(TsData.ofInternal(TsPeriod.monthly(2000, 1), xi));
+        }
+        List<IDfmMeasurement> measurements = Collections.nCopies(3, IDfmMeasurement.measurement(MeasurementType.M));
+        DfmModelSelection selection = DfmModelSelection.builder()
+                .maxFactors(2)
+                .build();
+        assertTrue(selection.process(new TsInformationSet(input), measurements));
+        // Bai and Ng (2002), with N = 3, T = 4
+        double N = 3, T = 4, NT = N * T, C2 = Math.min(N, T);
+        double[] V = {(16 + 4) / NT, 4 / NT};
+        assertEquals(2, selection.getCriteria().size());
+        for (DfmModelSelection.Criteria criteria : selection.getCriteria()) {
+            int k = criteria.getNfactors();
+            double lv = Math.log(V[k - 1]);
+            assertEquals(V[k - 1], criteria.getVariance(), 1e-9);
+            assertEquals(lv + k * (N + T) / NT * Math.log(NT / (N + T)), criteria.getIcp1(), 1e-9);
+            assertEquals(lv + k * (N + T) / NT * Math.log(C2), criteria.getIcp2(), 1e-9);
+            assertEquals(lv + k * Math.log(C2) / C2, criteria.getIcp3(), 1e-9);
+        }
+    }
+}
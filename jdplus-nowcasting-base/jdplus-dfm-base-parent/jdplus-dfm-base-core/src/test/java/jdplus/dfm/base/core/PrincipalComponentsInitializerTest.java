@@ -0,0 +1,210 @@
+/*
+ * Copyright 2023 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package jdplus.dfm.base.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import jdplus.dfm.base.api.MeasurementType;
+import jdplus.dfm.base.api.PrincipalComponentSpec;
+import jdplus.dfm.base.api.timeseries.TsInformationSet;
+import jdplus.dfm.base.core.var.VarDescriptor;
+import jdplus.toolkit.base.api.data.DoubleSeq;
+import jdplus.toolkit.base.api.math.matrices.Matrix;
+import jdplus.toolkit.base.api.timeseries.TimeSelector;
+import jdplus.toolkit.base.api.timeseries.TsData;
+import jdplus.toolkit.base.api.timeseries.TsPeriod;
+import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.ISsfInitialization;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class PrincipalComponentsInitializerTest {
+
+    private static final int NF = 2, NS = 20, T = 300;
+
+    public PrincipalComponentsInitializerTest() {
+    }
+
+    @Test
+    public void testTruncated() {
+        DynamicFactorModel model = model();
+        TsInformationSet input = data(new Random(1), 0.1);
+        PrincipalComponentsInitializer full = new PrincipalComponentsInitializer();
+        DynamicFactorModel mfull = full.initialize(model, input);
+        PrincipalComponentsInitializer truncated = new PrincipalComponentsInitializer();
+        truncated.setSvdMethod(PrincipalComponentSpec.SvdMethod.TRUNCATED);
+        DynamicFactorModel mtruncated = truncated.initialize(model, input);
+
+        // The factors may only differ by their signs
+        List<MeasurementDescriptor> dfull = mfull.getMeasurements(), dtruncated = mtruncated.getMeasurements();
+        double[] sign = new double[NF];
+        for (int j = 0; j < NF; ++j) {
+            sign[j] = Math.signum(dfull.get(0).getCoefficient(j) * dtruncated.get(0).getCoefficient(j));
+            assertTrue(sign[j] != 0);
+        }
+        for (int i = 0; i < NS; ++i) {
+            MeasurementDescriptor f = dfull.get(i), t = dtruncated.get(i);
+            for (int j = 0; j < NF; ++j) {
+                assertEquals(f.getCoefficient(j), sign[j] * t.getCoefficient(j), 1e-6 * (1 + Math.abs(f.getCoefficient(j))));
+            }
+            assertEquals(f.getVariance(), t.getVariance(), 1e-6 * f.getVariance());
+        }
+        Matrix cfull = mfull.getVar().getCoefficients(), ctruncated = mtruncated.getVar().getCoefficients();
+        Matrix vfull = mfull.getVar().getInnovationsVariance(), vtruncated = mtruncated.getVar().getInnovationsVariance();
+        for (int i = 0; i < NF; ++i) {
+            for (int k = 0; k < NF; ++k) {
+                assertEquals(cfull.get(i, k), sign[i] * sign[k] * ctruncated.get(i, k), 1e-6);
+                assertEquals(vfull.get(i, k), sign[i] * sign[k] * vtruncated.get(i, k), 1e-6 * vfull.get(i, i));
+            }
+        }
+    }
+
+    @Test
+    public void testImputeLowRank() {
+        // exactly low-rank panel (after centring), with some masked cells
+        Random rnd = new Random(2);
+        TsInformationSet complete = data(rnd, 0);
+        List<TsData> masked = new ArrayList<>();
+        boolean[][] mask = new boolean[NS][T];
+        for (int i = 0; i < NS; ++i) {
+            TsData s = complete.series(i);
+            double[] y = s.getValues().toArray();
+            // the extremities are kept, so that the domain is unchanged
+            for (int t = 1; t < T - 1; ++t) {
+                if (rnd.nextDouble() < .03) {
+                    y[t] = Double.NaN;
+                    mask[i][t] = true;
+                }
+            }
+            masked.add(TsData.ofInternal(s.getStart(), y));
+        }
+        TsInformationSet input = new TsInformationSet(masked);
+        PrincipalComponentsInitializer average = new PrincipalComponentsInitializer();
+        assertTrue(average.prepare(input, NF));
+        PrincipalComponentsInitializer em = new PrincipalComponentsInitializer();
+        em.setInterpolation(PrincipalComponentSpec.Interpolation.EM_PCA);
+        assertTrue(em.prepare(input, NF));
+        FastMatrix xa = average.getInterpolatedData(), xe = em.getInterpolatedData();
+        double ea = 0, ee = 0;
+        for (int i = 0; i < NS; ++i) {
+            for (int t = 0; t < T; ++t) {
+                double y = complete.series(i).getValue(t);
+                if (mask[i][t]) {
+                    ea = Math.max(ea, Math.abs(xa.get(t, i) - y));
+                    ee = Math.max(ee, Math.abs(xe.get(t, i) - y));
+                } else {
+                    assertEquals(y, xe.get(t, i));
+                }
+            }
+        }
+        // the masked cells are recovered
+        assertTrue(ee < 1e-3);
+        assertTrue(ee < 1e-2 * ea);
+    }
+
+    @Test
+    public void testSpec() {
+        PrincipalComponentSpec spec = PrincipalComponentSpec.builder()
+                .enabled(true)
+                .span(TimeSelector.first(200))
+                .svdMethod(PrincipalComponentSpec.SvdMethod.TRUNCATED)
+                .interpolation(PrincipalComponentSpec.Interpolation.EM_PCA)
+                .build();
+        PrincipalComponentsInitializer initializer = new PrincipalComponentsInitializer(spec);
+        assertEquals(PrincipalComponentSpec.SvdMethod.TRUNCATED, initializer.getSvdMethod());
+        assertEquals(PrincipalComponentSpec.Interpolation.EM_PCA, initializer.getInterpolation());
+        assertEquals(PrincipalComponentSpec.DEF_NS, initializer.getNonMissingThreshold());
+
+        TsInformationSet input = data(new Random(3), 0.1);
+        assertTrue(initializer.prepare(input, NF));
+        assertEquals(200, initializer.getData().getRowsCount());
+
+        // same model as with the setters
+        PrincipalComponentsInitializer other = new PrincipalComponentsInitializer();
+        other.setSpan(TimeSelector.first(200));
+        other.setSvdMethod(PrincipalComponentSpec.SvdMethod.TRUNCATED);
+        other.setInterpolation(PrincipalComponentSpec.Interpolation.EM_PCA);
+        DynamicFactorModel model = model();
+        List<MeasurementDescriptor> m0 = initializer.initialize(model, input).getMeasurements(),
+                m1 = other.initialize(model, input).getMeasurements();
+        for (int i = 0; i < NS; ++i) {
+            assertEquals(m1.get(i).getVariance(), m0.get(i).getVariance());
+        }
+    }
+
+    /**
+     * Model with NF factors (VAR(1)) loaded by all the series
+     *
+     * @return
+     */
+    static DynamicFactorModel model() {
+        FastMatrix C = FastMatrix.make(NF, NF);
+        C.diagonal().set(.5);
+        VarDescriptor var = new VarDescriptor(C, ISsfInitialization.Type.Unconditional);
+        List<MeasurementDescriptor> mdescs = new ArrayList<>();
+        for (int i = 0; i < NS; ++i) {
+            mdescs.add(MeasurementDescriptor.builder()
+                    .type(IDfmMeasurement.measurement(MeasurementType.M))
+                    .coefficient(DoubleSeq.onMapping(NF, j -> 1))
+                    .variance(1)
+                    .build());
+        }
+        return new DynamicFactorModel(var, mdescs);
+    }
+
+    /**
+     * Simulated panel: NF independent AR(1) factors, random loadings and
+     * white noises
+     *
+     * @param rnd
+     * @param noise The standard deviation of the noises
+     * @return
+     */
+    static TsInformationSet data(Random rnd, double noise) {
+        double[][] f = new double[NF][T];
+        for (int j = 0; j < NF; ++j) {
+            double phi = .8 - .3 * j;
+            f[j][0] = rnd.nextGaussian();
+            for (int t = 1; t < T; ++t) {
+                f[j][t] = phi * f[j][t - 1] + rnd.nextGaussian();
+            }
+        }
+        List<TsData> input = new ArrayList<>();
+        TsPeriod start = TsPeriod.monthly(2000, 1);
+        for (int i = 0; i < NS; ++i) {
+            double[] l = new double[NF];
+            for (int j = 0; j < NF; ++j) {
+                l[j] = rnd.nextGaussian();
+            }
+            double[] y = new double[T];
+            for (int t = 0; t < T; ++t) {
+                double s = noise * rnd.nextGaussian();
+                for (int j = 0; j < NF; ++j) {
+                    s += l[j] * f[j][t];
+                }
+                y[t] = s;
+            }
+            input.add(TsData.ofInternal(start, y));
+        }
+        return new TsInformationSet(input);
+    }
+}
@@ -8,14 +8,18 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 import jdplus.dfm.base.api.MeasurementType;
+import jdplus.dfm.base.api.PrincipalComponentSpec;
 import jdplus.dfm.base.api.timeseries.TsInformationSet;
 import jdplus.dfm.base.api.timeseries.TsInformationUpdates;
 import jdplus.dfm.base.core.DfmEM;
 import jdplus.dfm.base.core.DfmEstimates;
 import jdplus.dfm.base.core.DfmEstimator;
 import jdplus.dfm.base.core.DfmKernel;
+import jdplus.dfm.base.core.DfmModelSelection;
 import jdplus.dfm.base.core.DfmNews;
+import jdplus.dfm.base.core.DfmNewsPipeline;
 import jdplus.dfm.base.core.DfmProcessor;
 import jdplus.dfm.base.core.DfmResults;
 import jdplus.dfm.base.core.DfmResultsNews;
@@ -29,6 +33,7 @@ import jdplus.toolkit.base.api.data.DoubleSeq;
 import jdplus.toolkit.base.api.timeseries.TsData;
 import jdplus.toolkit.base.api.timeseries.TsDomain;
 import jdplus.toolkit.base.api.timeseries.TsPeriod;
+import jdplus.toolkit.base.api.util.IntList;
 import jdplus.toolkit.base.core.math.functions.levmar.LevenbergMarquardtMinimizer;
 import jdplus.toolkit.base.core.math.functions.ssq.ProxyMinimizer;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
@@ -177,15 +182,7 @@ public class DynamicFactorModels {
         FastMatrix mCoefficientsFormatted = FastMatrix.make(factorLoaded.getRowsCount(), factorLoaded.getColumnsCount());
         List<MeasurementDescriptor> mDescs = new ArrayList<>();
         for (int i = 0; i < nSeries; ++i) {
-            IDfmMeasurement factorTransf;
-            factorTransf = switch (factorType[i]) {
-                case "YoY" ->
-                    IDfmMeasurement.measurement(MeasurementType.YoY);
-                case "Q" ->
-                    IDfmMeasurement.measurement(MeasurementType.Q);
-                default ->
-                    IDfmMeasurement.measurement(MeasurementType.M);
-            };
+            IDfmMeasurement factorTransf = measurement(factorType[i]);
             for (int j = 0; j < nfactors; ++j) {
                 mCoefficientsFormatted.set(i, j, factorLoaded.get(i, j) == 0 ? Double.NaN : mCoefficients.get(i, j));
             }
@@ -208,12 +205,130 @@ public class DynamicFactorModels {
         return dfm;
     }
     
+    private IDfmMeasurement measurement(String factorType) {
+        return switch (factorType) {
+            case "YoY" ->
+                IDfmMeasurement.measurement(MeasurementType.YoY);
+            case "Q" ->
+                IDfmMeasurement.measurement(MeasurementType.Q);
+            default ->
+                IDfmMeasurement.measurement(MeasurementType.M);
+        };
+    }
+    
+    /**
+     * Bai-Ng information criteria for 1 to maxFactors factors
+     * 
+     * @param data
+     * @param freq
+     * @param start
+     * @param standardized
+     * @param maxFactors
+     * @param criterion "ICP1", "ICP2" or "ICP3". Criterion used to rank the results
+     * @return A matrix with, in each row, the number of factors, the residual variance and the criteria icp1, icp2, icp3
+     * (ranked by the given criterion)
+     */
+    public Matrix selectFactorsCriteria(Matrix data, int freq, int[] start, boolean standardized, int maxFactors, String criterion){
+        
+        TsInformationSet dfmData = prepareInput(data, freq, start, standardized, null, null, null);
+        String[] factorType = new String[data.getColumnsCount()];
+        Arrays.fill(factorType, "M");
+        DfmModelSelection selection = modelSelection(dfmData, factorType, maxFactors, 1, criterion, 0, 0);
+        List<DfmModelSelection.Criteria> criteria = selection.getCriteria();
+        FastMatrix M = FastMatrix.make(criteria.size(), 5);
+        for (int i = 0; i < criteria.size(); ++i) {
+            DfmModelSelection.Criteria cr = criteria.get(i);
+            M.set(i, 0, cr.getNfactors());
+            M.set(i, 1, cr.getVariance());
+            M.set(i, 2, cr.getIcp1());
+            M.set(i, 3, cr.getIcp2());
+            M.set(i, 4, cr.getIcp3());
+        }
+        return M;
+    }
+    
+    /**
+     * Models estimated by short EM runs for the best numbers of factors (following the Bai-Ng criterion) 
+     * and 1 to maxLags lags
+     * 
+     * @param factorType Type of measurement of each series ("M", "Q", "YoY")
+     * @param data
+     * @param freq
+     * @param start
+     * @param standardized
+     * @param maxFactors
+     * @param maxLags
+     * @param criterion
+     * @param emCandidates Number of (best) numbers of factors considered in the EM estimation
+     * @param emMaxIter
+     * @return A matrix with, in each row, the number of factors, the number of lags, the log-likelihood, 
+     * the number of parameters and the BIC (ranked by BIC)
+     */
+    public Matrix selectModel(String[] factorType, Matrix data, int freq, int[] start, boolean standardized, int maxFactors, int maxLags, 
+            String criterion, int emCandidates, int emMaxIter){
+        
+        TsInformationSet dfmData = prepareInput(data, freq, start, standardized, null, null, null);
+        DfmModelSelection selection = modelSelection(dfmData, factorType, maxFactors, maxLags, criterion, emCandidates, emMaxIter);
+        List<DfmModelSelection.Candidate> candidates = selection.getCandidates();
+        FastMatrix M = FastMatrix.make(candidates.size(), 5);
+        for (int i = 0; i < candidates.size(); ++i) {
+            DfmModelSelection.Candidate c = candidates.get(i);
+            M.set(i, 0, c.getNfactors());
+            M.set(i, 1, c.getNlags());
+            M.set(i, 2, c.getLogLikelihood());
+            M.set(i, 3, c.getParametersCount());
+            M.set(i, 4, c.getBic());
+        }
+        return M;
+    }
+    
+    private PrincipalComponentsInitializer pcaInitializer(String svdMethod, String interpolation) {
+        return new PrincipalComponentsInitializer(PrincipalComponentSpec.builder()
+                .enabled(true)
+                .svdMethod(PrincipalComponentSpec.SvdMethod.valueOf(svdMethod))
+                .interpolation(PrincipalComponentSpec.Interpolation.valueOf(interpolation))
+                .build());
+    }
+    
+    private DfmModelSelection modelSelection(TsInformationSet dfmData, String[] factorType, int maxFactors, int maxLags, String criterion, 
+            int emCandidates, int emMaxIter){
+        
+        if (factorType.length != dfmData.getSeriesCount()) {
+            throw new IllegalArgumentException("The length of factorType should match the number of series");
+        }
+        List<IDfmMeasurement> measurements = new ArrayList<>();
+        for (String type : factorType) {
+            measurements.add(measurement(type));
+        }
+        DfmModelSelection selection = DfmModelSelection.builder()
+                .maxFactors(maxFactors)
+                .maxLags(maxLags)
+                .criterion(DfmModelSelection.InformationCriterion.valueOf(criterion))
+                .emCandidates(emCandidates)
+                .emMaxIter(emMaxIter)
+                .build();
+        if (!selection.process(dfmData, measurements)) {
+            throw new IllegalArgumentException("The principal components couldn't be computed");
+        }
+        return selection;
+    }
+    
     public DfmEstimates estimate_PCA(DynamicFactorModel dfmModel, Matrix data, int freq, int[] start, boolean standardized, 
             double[] fixedSampleMean, double[] fixedStDev){
+        return estimate_PCA(dfmModel, data, freq, start, standardized, fixedSampleMean, fixedStDev, "FULL", "AVERAGE");
+    }
+    
+    /**
+     * 
+     * @param svdMethod FULL or TRUNCATED
+     * @param interpolation AVERAGE or EM_PCA
+     */
+    public DfmEstimates estimate_PCA(DynamicFactorModel dfmModel, Matrix data, int freq, int[] start, boolean standardized, 
+            double[] fixedSampleMean, double[] fixedStDev, String svdMethod, String interpolation){
                 
         TsInformationSet dfmData = prepareInput(data, freq, start, standardized, fixedSampleMean, fixedStDev, null);
         
-        PrincipalComponentsInitializer initializer = new PrincipalComponentsInitializer();
+        PrincipalComponentsInitializer initializer = pcaInitializer(svdMethod, interpolation);
         DynamicFactorModel dfm = initializer.initialize(dfmModel, dfmData);
         
         DfmEstimates dfmE = DfmEstimates.builder()
@@ -333,6 +448,25 @@ public class DynamicFactorModels {
     }
         
     public DfmResultsNews computeNews(int targetSeries, DynamicFactorModel dfm, Matrix oldData, Matrix newData, int freq, int[] start, boolean standardized, int nForecasts){ 
+        return computeNews(new int[]{targetSeries}, dfm, oldData, newData, freq, start, standardized, nForecasts)[0];
+    }
+    
+    /**
+     * News for several target series. The news are computed only once; the
+     * forecasts, weights and impacts of the different targets are computed in
+     * parallel
+     * 
+     * @param targetSeries
+     * @param dfm
+     * @param oldData
+     * @param newData
+     * @param freq
+     * @param start
+     * @param standardized
+     * @param nForecasts
+     * @return The news for each target series (same order as targetSeries)
+     */
+    public DfmResultsNews[] computeNews(int[] targetSeries, DynamicFactorModel dfm, Matrix oldData, Matrix newData, int freq, int[] start, boolean standardized, int nForecasts){ 
         
         if(oldData.getColumnsCount() != newData.getColumnsCount()){
             throw new IllegalArgumentException("The number of columns in old and new dataset is different!");
@@ -370,7 +504,72 @@ public class DynamicFactorModels {
             throw new IllegalArgumentException("No updates between the two datasets!");
         }
         
-        // Output (for a given series of interest) 
+        // Output (for the series of interest). The shared results are computed 
+        // first, so that the news object is only read by the different targets
+        newsData.compute();
+        TsPeriod[] endPerTarget = new TsPeriod[targetSeries.length];
+        for (int i = 0; i < targetSeries.length; ++i) {
+            endPerTarget[i] = dfmNewData.series(targetSeries[i]).cleanExtremities().getEnd();
+        }
+        IntStream targets = IntStream.range(0, targetSeries.length);
+        if (targetSeries.length > 1) {
+            targets = targets.parallel();
+        }
+        return targets
+                .mapToObj(i -> newsResults(newsData, targetSeries[i], endPerTarget[i], nForecasts, standardized, oldDataSampleMean, oldDataSdDev))
+                .toArray(DfmResultsNews[]::new);
+    }
+    
+    /**
+     * News along the publication calendar of the data (pseudo real-time vintages)
+     * 
+     * @param targetSeries
+     * @param dfm
+     * @param data The complete data
+     * @param freq
+     * @param start
+     * @param standardized
+     * @param nForecasts
+     * @param delays Publication delays (in days) of the series
+     * @param calendarStart First release date (yyyy-mm-dd)
+     * @return The news of each release (releases without updates are skipped)
+     */
+    public DfmResultsNews[] computeNewsPipeline(int targetSeries, DynamicFactorModel dfm, Matrix data, int freq, int[] start, boolean standardized, int nForecasts,
+            int[] delays, String calendarStart){
+        
+        TsInformationSet dfmData = prepareInput(data, freq, start, standardized, null, null, null);
+        int nSeries = data.getColumnsCount();
+        double[] sampleMean = new double[nSeries];
+        double[] sdDev = new double[nSeries];
+        if(!standardized){
+            for (int j = 0; j < nSeries; ++j) {
+                DoubleSeq sj = data.column(j);
+                double m = sj.averageWithMissing();
+                double e2 = sj.ssqcWithMissing(m) / sj.count(Double::isFinite);
+                sampleMean[j] = m;
+                sdDev[j] = Math.sqrt(e2);
+            }   
+        }
+        IntList ldelays = new IntList();
+        if (delays != null){
+            for (int d : delays){
+                ldelays.add(d);
+            }
+        }
+        LocalDate[] calendar = dfmData.generatePublicationCalendar(ldelays, LocalDate.parse(calendarStart));
+        TsPeriod fcstLast = dfmData.getCurrentDomain().getEndPeriod().plus(nForecasts);
+        
+        DfmNewsPipeline pipeline = new DfmNewsPipeline(dfm);
+        return pipeline.process(dfmData, ldelays, calendar, fcstLast.start().toLocalDate())
+                .map(release -> {
+                    TsPeriod endPerTarget = release.getInformationSet().series(targetSeries).cleanExtremities().getEnd();
+                    return newsResults(release.getNews(), targetSeries, endPerTarget, nForecasts, standardized, sampleMean, sdDev);
+                })
+                .toArray(DfmResultsNews[]::new);
+    }
+    
+    private DfmResultsNews newsResults(DfmNews newsData, int targetSeries, TsPeriod endPerTarget, int nForecasts, boolean standardized, 
+            double[] oldDataSampleMean, double[] oldDataSdDev){
         
         // News
         int nn = newsData.news().length(); 
@@ -414,12 +613,12 @@ public class DynamicFactorModels {
         sImpactsT = FastMatrix.make(nn, nf);
         sWeights = FastMatrix.make(nn, nf); 
         sImpacts = FastMatrix.make(nn, nf);
-        TsPeriod endPerTarget = dfmNewData.series(targetSeries).cleanExtremities().getEnd();
         double meanTarget = oldDataSampleMean[targetSeries];
         double sdTarget = oldDataSdDev[targetSeries];
         
+        FastMatrix bT = newsData.weights(targetSeries, endPerTarget, nf);
         for (int j = 0; j < nf; ++j){
-            DoubleSeq bTj = newsData.weights(targetSeries, endPerTarget.plus(j));
+            DoubleSeq bTj = bT.column(j);
             sWeightsT.column(j).set(bTj);
             
             for (int i = 0; i < nn; ++i){
@@ -439,6 +638,41 @@ public class DynamicFactorModels {
             sImpacts = sImpactsT;    
         } 
         
+        // Revisions (in the revisions domain)
+        List<TsInformationUpdates.Update> revisions = newsData.revisionsDetails();
+        int nr = revisions.size();
+        int[] rindex = new int[nr];
+        String[] rper = new String[nr];
+        double[] revT = new double[nr], rev = new double[nr];
+        for (int k = 0; k < nr; ++k) {
+            rindex[k] = revisions.get(k).getSeries();
+            rper[k] = revisions.get(k).getPeriod().display();
+            revT[k] = revisions.get(k).getNews();
+            rev[k] = standardized ? revT[k] : revT[k] * oldDataSdDev[rindex[k]];
+        }
+        FastMatrix rWeightsT = newsData.weightsRevisions(targetSeries, endPerTarget, nf);
+        FastMatrix rImpactsT = FastMatrix.make(nr, nf), rWeights, rImpacts;
+        for (int j = 0; j < nf; ++j) {
+            for (int i = 0; i < nr; ++i) {
+                rImpactsT.set(i, j, rWeightsT.get(i, j) * revT[i]);
+            }
+        }
+        if (!standardized) {
+            rWeights = FastMatrix.make(nr, nf);
+            rImpacts = FastMatrix.make(nr, nf);
+            for (int i = 0; i < nr; ++i) {
+                double c = sdTarget / oldDataSdDev[rindex[i]];
+                for (int j = 0; j < nf; ++j) {
+                    double w = rWeightsT.get(i, j) * c;
+                    rWeights.set(i, j, w);
+                    rImpacts.set(i, j, w * rev[i]);
+                }
+            }
+        } else {
+            rWeights = rWeightsT;
+            rImpacts = rImpactsT;
+        }
+        
         // Forecasts     
         String[] fcstPeriods = new String[nf]; 
         double[] oldFcstsT, oldFcsts, revFcstsT, revFcsts, newFcstsT, newFcsts;
@@ -486,6 +720,14 @@ public class DynamicFactorModels {
                 .revisedForecasts(DoubleSeq.of(revFcsts))
                 .newForecastsT(DoubleSeq.of(newFcstsT))
                 .newForecasts(DoubleSeq.of(newFcsts))
+                .revisionsIndex(rindex)
+                .revisionsPeriod(rper)
+                .revisionsT(DoubleSeq.of(revT))
+                .revisions(DoubleSeq.of(rev))
+                .revisionsWeightsT(rWeightsT)
+                .revisionsWeights(rWeights)
+                .revisionsImpactsT(rImpactsT)
+                .revisionsImpacts(rImpacts)
                 .build();
     }
    
@@ -515,15 +757,7 @@ of coefficients together with processing
         FastMatrix factorLoadedM = FastMatrix.make(factorLoaded.getRowsCount(), factorLoaded.getColumnsCount());
         List<MeasurementDescriptor> mDescs = new ArrayList<>();
         for (int i = 0; i < factorType.length; ++i) {
-            IDfmMeasurement factorTransf;
-            factorTransf = switch (factorType[i]) {
-                case "YoY" ->
-                    IDfmMeasurement.measurement(MeasurementType.YoY);
-                case "Q" ->
-                    IDfmMeasurement.measurement(MeasurementType.Q);
-                default ->
-                    IDfmMeasurement.measurement(MeasurementType.M);
-            };
+            IDfmMeasurement factorTransf = measurement(factorType[i]);
             for (int j = 0; j < nfactors; ++j) {
                 factorLoadedM.set(i, j, factorLoaded.get(i, j) == 0 ? Double.NaN : 1); // if not used, defined as NaN in class DynamicFactorModel
             }
@@ -544,12 +778,22 @@ of coefficients together with processing
     }
     
     public DfmResults estimate_PCA(DynamicFactorModel dfmModel, Matrix data, int freq, int[] start, boolean standardized, int nForecasts) {
+        return estimate_PCA(dfmModel, data, freq, start, standardized, nForecasts, "FULL", "AVERAGE");
+    }
+    
+    /**
+     * 
+     * @param svdMethod FULL or TRUNCATED
+     * @param interpolation AVERAGE or EM_PCA
+     */
+    public DfmResults estimate_PCA(DynamicFactorModel dfmModel, Matrix data, int freq, int[] start, boolean standardized, int nForecasts,
+            String svdMethod, String interpolation) {
         
         DfmResults.Builder builder = DfmResults.builder();
         
         TsInformationSet dfmData = prepareInput(data, freq, start, standardized, null, null, builder);
         
-        PrincipalComponentsInitializer initializer = new PrincipalComponentsInitializer();
+        PrincipalComponentsInitializer initializer = pcaInitializer(svdMethod, interpolation);
         DynamicFactorModel dfm = initializer.initialize(dfmModel, dfmData);
 
         DfmProcessor processor = DfmProcessor.builder().build();
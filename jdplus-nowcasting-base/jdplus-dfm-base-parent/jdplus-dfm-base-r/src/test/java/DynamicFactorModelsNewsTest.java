@@ -1,10 +1,15 @@
 
 import jdplus.dfm.base.core.DfmEstimates;
 import jdplus.dfm.base.core.DfmResults;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.DoubleUnaryOperator;
 import jdplus.dfm.base.api.timeseries.TsInformationSet;
+import jdplus.dfm.base.api.timeseries.TsInformationUpdates.Update;
 import jdplus.dfm.base.core.DfmNews;
+import jdplus.dfm.base.core.DfmNewsPipeline;
 import jdplus.dfm.base.core.DfmProcessor;
 import jdplus.dfm.base.core.DfmResultsNews;
 import jdplus.dfm.base.core.DynamicFactorModel;
@@ -13,8 +18,12 @@ import jdplus.toolkit.base.api.data.DoubleSeq;
 import jdplus.toolkit.base.api.math.matrices.Matrix;
 import jdplus.toolkit.base.api.timeseries.TsData;
 import jdplus.toolkit.base.api.timeseries.TsPeriod;
-import jdplus.toolkit.base.core.data.DataBlock;
+import jdplus.toolkit.base.api.util.IntList;
 import jdplus.toolkit.base.core.math.matrices.FastMatrix;
+import jdplus.toolkit.base.core.ssf.StateStorage;
+import jdplus.toolkit.base.core.ssf.multivariate.IMultivariateSsf;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
 
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
@@ -26,95 +35,341 @@ import jdplus.toolkit.base.core.math.matrices.FastMatrix;
  */
 public class DynamicFactorModelsNewsTest {
 
+    // Data vintages
+    private static final double[] PVI_FR_v1 = {-0.001, 0.003, 0, -0.003, 0.005, -0.001, -0.005, 0.005, 0.005, 0, -0.008, 0.001, 0.008, -0.003,
+        -0.003, 0.004, -0.006, -0.001, -0.001, 0.008, -0.005, -0.001, 0.012, -0.007, 0.002, -0.004, 0.006, -0.001,
+        0.009, -0.006, 0.003, 0.001, 0.003, 0.002, 0.001, 0.005, -0.016, 0.006, 0.004, -0.004, -0.005, 0.008, -0.001,
+        0.001, -0.005, 0.005, -0.005, 0.007, 0.001, 0, -0.001, 0.002, 0.006, -0.011, 0.002, -0.005, 0.004, 0, -0.003,
+        -0.008, 0.001, 0.009, -0.083, -0.101, 0.078, 0.051, 0.016, 0.002, 0.008, 0.011, -0.006, -0.002, 0.014, -0.02, 0.008,
+        0, -0.001, 0, 0.002, 0, -0.005, 0.008, -0.007, 0, 0.009, -0.008, -0.001, -0.002, 0.001, 0.005, -0.007, 0.011, -0.004,
+        -0.011, 0.008, 0.006, -0.006, Double.NaN};
+    private static final double[] PVI_FR_v2 = {-0.001, 0.003, 0, -0.003, 0.005, -0.001, -0.005, 0.005, 0.005, 0, -0.008, 0.001, 0.008, -0.003,
+        -0.003, 0.004, -0.006, -0.001, -0.001, 0.008, -0.005, -0.001, 0.012, -0.007, 0.002, -0.004, 0.006, -0.001,
+        0.009, -0.006, 0.003, 0.001, 0.003, 0.002, 0.001, 0.005, -0.016, 0.006, 0.004, -0.004, -0.005, 0.008, -0.001,
+        0.001, -0.005, 0.005, -0.005, 0.007, 0.001, 0, -0.001, 0.002, 0.006, -0.011, 0.002, -0.005, 0.004, 0, -0.003,
+        -0.008, 0.001, 0.009, -0.083, -0.101, 0.078, 0.051, 0.016, 0.002, 0.008, 0.011, -0.006, -0.002, 0.014, -0.02, 0.008,
+        0, -0.001, 0, 0.002, 0, -0.005, 0.008, -0.007, 0, 0.009, -0.008, -0.001, -0.002, 0.001, 0.005, -0.007, 0.011, -0.004,
+        -0.011, 0.008, 0.006, -0.006, 0.005, Double.NaN};
+    private static final double[] PVI_FR_v2bis = PVI_FR_v2;
+
+    private static final double[] TURN_FR_v1 = {-0.003, 0.007, -0.002, 0.001, -0.004, 0.015, -0.013, -0.002, 0.005, -0.006, 0.005, -0.003, -0.001,
+        -0.004, -0.001, 0.002, -0.001, 0.004, -0.003, 0.01, 0, -0.006, 0.015, 0.01, -0.014, 0.009, 0.018, -0.022, 0.012, -0.003,
+        0.005, -0.007, 0.009, 0.004, 0.003, 0.005, -0.005, -0.009, 0.009, -0.001, -0.009, 0.014, -0.006, 0.009, -0.006, 0.019,
+        -0.013, 0.006, -0.002, 0.008, -0.007, 0.005, 0.001, -0.016, 0.014, 0.003, -0.008, 0.007, -0.005, -0.004, -0.001, 0.004,
+        -0.091, -0.109, 0.069, 0.07, 0.004, 0.01, 0.003, 0.011, 0, 0.004, 0.015, -0.018, 0.022, -0.003, -0.018, 0.033, -0.014,
+        0.006, 0.007, 0.002, 0.012, 0.015, 0.008, 0, 0.01, -0.002, 0.005, 0.014, -0.01, 0.014, 0, -0.001, 0.007, 0.003, -0.002,
+        Double.NaN};
+    private static final double[] TURN_FR_v2 = {-0.003, 0.007, -0.002, 0.001, -0.004, 0.015, -0.013, -0.002, 0.005, -0.006, 0.005, -0.003, -0.001,
+        -0.004, -0.001, 0.002, -0.001, 0.004, -0.003, 0.01, 0, -0.006, 0.015, 0.01, -0.014, 0.009, 0.018, -0.022, 0.012, -0.003,
+        0.005, -0.007, 0.009, 0.004, 0.003, 0.005, -0.005, -0.009, 0.009, -0.001, -0.009, 0.014, -0.006, 0.009, -0.006, 0.019,
+        -0.013, 0.006, -0.002, 0.008, -0.007, 0.005, 0.001, -0.016, 0.014, 0.003, -0.008, 0.007, -0.005, -0.004, -0.001, 0.004,
+        -0.091, -0.109, 0.069, 0.07, 0.004, 0.01, 0.003, 0.011, 0, 0.004, 0.015, -0.018, 0.022, -0.003, -0.018, 0.033, -0.014,
+        0.006, 0.007, 0.002, 0.012, 0.015, 0.008, 0, 0.01, -0.002, 0.005, 0.014, -0.01, 0.014, 0, -0.001, 0.007, 0.003, -0.002,
+        Double.NaN, Double.NaN};
+    private static final double[] TURN_FR_v2bis = TURN_FR_v2;
+
+    private static final double[] BS_FR_v1 = {-7.8, -7.3, -5.1, -5.9, -7, -7.1, -5.4, -5.7, -5.3, -3.9, -7.7, -4.8, -2.1, -0.3, -1.2, -3, -5.4, -6.7,
+        -8.1, -8.1, -4.9, -4.6, -4.9, -3.3, -1.5, 0.4, -1.3, 1.1, 1.8, 1.2, 0.6, 1.3, 5.5, 3.8, 2.4, 4, 6.6, 4.7, 2.7, 5.2, 2.8,
+        4.5, 2, 0.4, -0.4, -2.7, -1.3, -3.2, -2.7, -5, -3.9, -6.8, -1.8, -5.1, -7.9, -6.3, -7.2, -7, -7.5, -9.1, -2.8, -3, -8.6,
+        -42.2, -26.9, -16.2, -13.4, -8.3, -9.9, -11.7, -16.1, -11.2, -10.1, -7.3, -7.1, -1.9, 2.1, 2.2, 6.8, 4.4, 2.3, 3.9, 5.5,
+        4.9, 5.3, 7.5, 1.3, -0.2, 0.1, 0.2, -0.7, -4.6, -6.5, -6.8, -9.1, -8.5, -6.3, -6.3};
+    private static final double[] BS_FR_v2 = {-7.8, -7.3, -5.1, -5.9, -7, -7.1, -5.4, -5.7, -5.3, -3.9, -7.7, -4.8, -2.1, -0.3, -1.2, -3, -5.4, -6.7,
+        -8.1, -8.1, -4.9, -4.6, -4.9, -3.3, -1.5, 0.4, -1.3, 1.1, 1.8, 1.2, 0.6, 1.3, 5.5, 3.8, 2.4, 4, 6.6, 4.7, 2.7, 5.2, 2.8,
+        4.5, 2, 0.4, -0.4, -2.7, -1.3, -3.2, -2.7, -5, -3.9, -6.8, -1.8, -5.1, -7.9, -6.3, -7.2, -7, -7.5, -9.1, -2.8, -3, -8.6,
+        -42.2, -26.9, -16.2, -13.4, -8.3, -9.9, -11.7, -16.1, -11.2, -10.1, -7.3, -7.1, -1.9, 2.1, 2.2, 6.8, 4.4, 2.3, 3.9, 5.5,
+        4.9, 5.3, 7.5, 1.3, -0.2, 0.1, 0.2, -0.7, -4.6, -6.5, -6.8, -9.1, -8.5, -6.3, -6.3, Double.NaN};
+    private static final double[] BS_FR_v2bis = {-7.8, -7.3, -5.1, -5.9, -7, -7.1, -5.4, -5.7, -5.3, -3.9, -7.7, -4.8, -2.1, -0.3, -1.2, -3, -5.4, -6.7,
+        -8.1, -8.1, -4.9, -4.6, -4.9, -3.3, -1.5, 0.4, -1.3, 1.1, 1.8, 1.2, 0.6, 1.3, 5.5, 3.8, 2.4, 4, 6.6, 4.7, 2.7, 5.2, 2.8,
+        4.5, 2, 0.4, -0.4, -2.7, -1.3, -3.2, -2.7, -5, -3.9, -6.8, -1.8, -5.1, -7.9, -6.3, -7.2, -7, -7.5, -9.1, -2.8, -3, -8.6,
+        -42.2, -26.9, -16.2, -13.4, -8.3, -9.9, -11.7, -16.1, -11.2, -10.1, -7.3, -7.1, -1.9, 2.1, 2.2, 6.8, 4.4, 2.3, 3.9, 5.5,
+        4.9, 5.3, 7.5, 1.3, -0.2, 0.1, 0.2, -0.7, -4.6, -6.5, -6.8, -9.1, -8.5, -6.3, -6.3, -4.5};
+
+    private static final double[] PMI_FR_v1 = {0.4, 0, 1.2, -0.2, 0.2, 0.3, -0.1, -0.1, -0.3, 0.3, 0.5, 0.4, -0.9, -1.1, 0.4, 0.1, -0.2, 1.3, -0.8,
+        -0.3, 0.9, 0.9, 0.2, 1.2, 0.3, 0.2, 0.8, 0.5, 0.3, 0.4, -0.8, 0.8, 0.7, 0.4, 1.6, 0.5, -1, -1, -2, -0.4, -0.7, -0.6, 0.2,
+        -0.5, -1.4, -1.2, -0.2, -0.4, -0.9, -1.2, -1.8, 0.4, -0.2, -0.1, -1.1, 0.5, -1.3, 0.2, 1, -0.6, 1.6, 1.3, -4.7, -11.1, 6,
+        8, 4.4, -0.1, 2, 1.1, -1, 1.4, -0.4, 3.1, 4.6, 0.4, 0.2, 0.3, -0.6, -1.4, -2.8, -0.3, 0.1, -0.4, 0.7, -0.5, -1.7, -1, -0.9,
+        -2.5, -2.3, -0.1, -1.3, -2, 0.7, 0.7, 1, -0.3};
+    private static final double[] PMI_FR_v2 = {0.4, 0, 1.2, -0.2, 0.2, 0.3, -0.1, -0.1, -0.3, 0.3, 0.5, 0.4, -0.9, -1.1, 0.4, 0.1, -0.2, 1.3, -0.8,
+        -0.3, 0.9, 0.9, 0.2, 1.2, 0.3, 0.2, 0.8, 0.5, 0.3, 0.4, -0.8, 0.8, 0.7, 0.4, 1.6, 0.5, -1, -1, -2, -0.4, -0.7, -0.6, 0.2,
+        -0.5, -1.4, -1.2, -0.2, -0.4, -0.9, -1.2, -1.8, 0.4, -0.2, -0.1, -1.1, 0.5, -1.3, 0.2, 1, -0.6, 1.6, 1.3, -4.7, -11.1, 6,
+        8, 4.4, -0.1, 2, 1.1, -1, 1.4, -0.4, 3.1, 4.6, 0.4, 0.2, 0.3, -0.6, -1.4, -2.8, -0.3, 0.1, -0.4, 0.7, -0.5, -1.7, -1, -0.9,
+        -2.5, -2.3, -0.1, -1.3, -2, 0.7, 0.7, 1, -0.3, Double.NaN};
+    private static final double[] PMI_FR_v2bis = {0.4, 0, 1.2, -0.2, 0.2, 0.3, -0.1, -0.1, -0.3, 0.3, 0.5, 0.4, -0.9, -1.1, 0.4, 0.1, -0.2, 1.3, -0.8,
+        -0.3, 0.9, 0.9, 0.2, 1.2, 0.3, 0.2, 0.8, 0.5, 0.3, 0.4, -0.8, 0.8, 0.7, 0.4, 1.6, 0.5, -1, -1, -2, -0.4, -0.7, -0.6, 0.2,
+        -0.5, -1.4, -1.2, -0.2, -0.4, -0.9, -1.2, -1.8, 0.4, -0.2, -0.1, -1.1, 0.5, -1.3, 0.2, 1, -0.6, 1.6, 1.3, -4.7, -11.1, 6,
+        8, 4.4, -0.1, 2, 1.1, -1, 1.4, -0.4, 3.1, 4.6, 0.4, 0.2, 0.3, -0.6, -1.4, -2.8, -0.3, 0.1, -0.4, 0.7, -0.5, -1.7, -1, -0.9,
+        -2.5, -2.3, -0.1, -1.3, -2, 0.7, 0.7, 1, -0.3, Double.NaN};
+
+    private static final double[] GDP_FR_v1 = {Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.001, Double.NaN, Double.NaN, 0.001, Double.NaN,
+        Double.NaN, 0.001, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, -0.002, Double.NaN, Double.NaN, 0.002, Double.NaN,
+        Double.NaN, 0.003, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0.004, Double.NaN, Double.NaN, 0.004, Double.NaN,
+        Double.NaN, 0.003, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.002, Double.NaN,
+        Double.NaN, 0.002, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0, Double.NaN,
+        Double.NaN, -0.002, Double.NaN, Double.NaN, -0.023, Double.NaN, Double.NaN, -0.061, Double.NaN, Double.NaN, 0.07, Double.NaN,
+        Double.NaN, -0.003, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.004, Double.NaN, Double.NaN, 0.013, Double.NaN,
+        Double.NaN, 0.002, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.001, Double.NaN,
+        Double.NaN, 0, Double.NaN, Double.NaN};
+    private static final double[] GDP_FR_v2 = {Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.001, Double.NaN, Double.NaN, 0.001, Double.NaN,
+        Double.NaN, 0.001, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, -0.002, Double.NaN, Double.NaN, 0.002, Double.NaN,
+        Double.NaN, 0.003, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0.004, Double.NaN, Double.NaN, 0.004, Double.NaN,
+        Double.NaN, 0.003, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.002, Double.NaN,
+        Double.NaN, 0.002, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0, Double.NaN,
+        Double.NaN, -0.002, Double.NaN, Double.NaN, -0.023, Double.NaN, Double.NaN, -0.061, Double.NaN, Double.NaN, 0.07, Double.NaN,
+        Double.NaN, -0.003, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.004, Double.NaN, Double.NaN, 0.013, Double.NaN,
+        Double.NaN, 0.002, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.001, Double.NaN,
+        Double.NaN, 0, Double.NaN, Double.NaN, Double.NaN};
+    private static final double[] GDP_FR_v2bis = GDP_FR_v2;
+
+    private static final TsPeriod PSTART = TsPeriod.monthly(2015, 1);
+    private static final int NSERIES = 5;
+    /**
+     * Length of the information sets used in the tests (forecasts up to 3
+     * periods after the end of the last vintage)
+     */
+    private static final int N = GDP_FR_v2bis.length + 3;
+
+    private static final DynamicFactorModel DFM = DynamicFactorModels.estimate_EM(initialModel(),
+            matrix(PVI_FR_v1, TURN_FR_v1, BS_FR_v1, PMI_FR_v1, GDP_FR_v1),
+            12, new int[]{2015, 1}, false, null, null, true, 20, 1e-09).getDfm();
+
+    private static final TsInformationSet OLD = informationSet(PVI_FR_v1, TURN_FR_v1, BS_FR_v1, PMI_FR_v1, GDP_FR_v1);
+    /**
+     * Vintage 2bis with some revisions: recent revisions of PVI, BS and GDP
+     * and an older revision of PMI (more than 2 years before the end of the
+     * data)
+     */
+    private static final TsInformationSet NEW = revise(revise(revise(revise(
+            informationSet(PVI_FR_v2bis, TURN_FR_v2bis, BS_FR_v2bis, PMI_FR_v2bis, GDP_FR_v2bis),
+            0, 95, y -> y + 0.002), 2, 96, y -> y + 1), 4, 92, y -> y + 0.001), 3, 60, y -> y + 0.5);
+
     public DynamicFactorModelsNewsTest() {
     }
 
-    public static void main(String[] args) {
+    @Test
+    public void testForecasts() {
+        DfmNews news = new DfmNews(DFM);
+        assertTrue(news.process(OLD, NEW));
+        int cpos = PSTART.until(news.getSmoothingStart());
+        assertTrue(cpos > 0);
+        // full-sample smoothings
+        StateStorage sold = smooth(OLD, 0), srevised = smooth(news.getRevisedInformationSet(), 0), snew = smooth(NEW, 0);
+        IMultivariateSsf ssf = DFM.ssfRepresentation(0);
+        // the forecasts before the checkpoint are computed on the whole domain
+        for (int s = 0; s < NSERIES; ++s) {
+            for (int pos = 0; pos < N; ++pos) {
+                TsPeriod p = PSTART.plus(pos);
+                assertClose(ssf.loading(s).ZX(pos, sold.a(pos)), news.getOldForecast(s, p));
+                assertClose(ssf.loading(s).ZX(pos, srevised.a(pos)), news.getRevisedForecast(s, p));
+                assertClose(ssf.loading(s).ZX(pos, snew.a(pos)), news.getNewForecast(s, p));
+            }
+        }
+    }
 
-        // Data vintages
-        double[] PVI_FR_v1 = {-0.001, 0.003, 0, -0.003, 0.005, -0.001, -0.005, 0.005, 0.005, 0, -0.008, 0.001, 0.008, -0.003,
-            -0.003, 0.004, -0.006, -0.001, -0.001, 0.008, -0.005, -0.001, 0.012, -0.007, 0.002, -0.004, 0.006, -0.001,
-            0.009, -0.006, 0.003, 0.001, 0.003, 0.002, 0.001, 0.005, -0.016, 0.006, 0.004, -0.004, -0.005, 0.008, -0.001,
-            0.001, -0.005, 0.005, -0.005, 0.007, 0.001, 0, -0.001, 0.002, 0.006, -0.011, 0.002, -0.005, 0.004, 0, -0.003,
-            -0.008, 0.001, 0.009, -0.083, -0.101, 0.078, 0.051, 0.016, 0.002, 0.008, 0.011, -0.006, -0.002, 0.014, -0.02, 0.008,
-            0, -0.001, 0, 0.002, 0, -0.005, 0.008, -0.007, 0, 0.009, -0.008, -0.001, -0.002, 0.001, 0.005, -0.007, 0.011, -0.004,
-            -0.011, 0.008, 0.006, -0.006, Double.NaN};
-        double[] PVI_FR_v2 = {-0.001, 0.003, 0, -0.003, 0.005, -0.001, -0.005, 0.005, 0.005, 0, -0.008, 0.001, 0.008, -0.003,
-            -0.003, 0.004, -0.006, -0.001, -0.001, 0.008, -0.005, -0.001, 0.012, -0.007, 0.002, -0.004, 0.006, -0.001,
-            0.009, -0.006, 0.003, 0.001, 0.003, 0.002, 0.001, 0.005, -0.016, 0.006, 0.004, -0.004, -0.005, 0.008, -0.001,
-            0.001, -0.005, 0.005, -0.005, 0.007, 0.001, 0, -0.001, 0.002, 0.006, -0.011, 0.002, -0.005, 0.004, 0, -0.003,
-            -0.008, 0.001, 0.009, -0.083, -0.101, 0.078, 0.051, 0.016, 0.002, 0.008, 0.011, -0.006, -0.002, 0.014, -0.02, 0.008,
-            0, -0.001, 0, 0.002, 0, -0.005, 0.008, -0.007, 0, 0.009, -0.008, -0.001, -0.002, 0.001, 0.005, -0.007, 0.011, -0.004,
-            -0.011, 0.008, 0.006, -0.006, 0.005, Double.NaN};
-        double[] PVI_FR_v2bis = PVI_FR_v2;
-
-        double[] TURN_FR_v1 = {-0.003, 0.007, -0.002, 0.001, -0.004, 0.015, -0.013, -0.002, 0.005, -0.006, 0.005, -0.003, -0.001,
-            -0.004, -0.001, 0.002, -0.001, 0.004, -0.003, 0.01, 0, -0.006, 0.015, 0.01, -0.014, 0.009, 0.018, -0.022, 0.012, -0.003,
-            0.005, -0.007, 0.009, 0.004, 0.003, 0.005, -0.005, -0.009, 0.009, -0.001, -0.009, 0.014, -0.006, 0.009, -0.006, 0.019,
-            -0.013, 0.006, -0.002, 0.008, -0.007, 0.005, 0.001, -0.016, 0.014, 0.003, -0.008, 0.007, -0.005, -0.004, -0.001, 0.004,
-            -0.091, -0.109, 0.069, 0.07, 0.004, 0.01, 0.003, 0.011, 0, 0.004, 0.015, -0.018, 0.022, -0.003, -0.018, 0.033, -0.014,
-            0.006, 0.007, 0.002, 0.012, 0.015, 0.008, 0, 0.01, -0.002, 0.005, 0.014, -0.01, 0.014, 0, -0.001, 0.007, 0.003, -0.002,
-            Double.NaN};
-        double[] TURN_FR_v2 = {-0.003, 0.007, -0.002, 0.001, -0.004, 0.015, -0.013, -0.002, 0.005, -0.006, 0.005, -0.003, -0.001,
-            -0.004, -0.001, 0.002, -0.001, 0.004, -0.003, 0.01, 0, -0.006, 0.015, 0.01, -0.014, 0.009, 0.018, -0.022, 0.012, -0.003,
-            0.005, -0.007, 0.009, 0.004, 0.003, 0.005, -0.005, -0.009, 0.009, -0.001, -0.009, 0.014, -0.006, 0.009, -0.006, 0.019,
-            -0.013, 0.006, -0.002, 0.008, -0.007, 0.005, 0.001, -0.016, 0.014, 0.003, -0.008, 0.007, -0.005, -0.004, -0.001, 0.004,
-            -0.091, -0.109, 0.069, 0.07, 0.004, 0.01, 0.003, 0.011, 0, 0.004, 0.015, -0.018, 0.022, -0.003, -0.018, 0.033, -0.014,
-            0.006, 0.007, 0.002, 0.012, 0.015, 0.008, 0, 0.01, -0.002, 0.005, 0.014, -0.01, 0.014, 0, -0.001, 0.007, 0.003, -0.002,
-            Double.NaN, Double.NaN};
-        double[] TURN_FR_v2bis = TURN_FR_v2;
-
-        double[] BS_FR_v1 = {-7.8, -7.3, -5.1, -5.9, -7, -7.1, -5.4, -5.7, -5.3, -3.9, -7.7, -4.8, -2.1, -0.3, -1.2, -3, -5.4, -6.7,
-            -8.1, -8.1, -4.9, -4.6, -4.9, -3.3, -1.5, 0.4, -1.3, 1.1, 1.8, 1.2, 0.6, 1.3, 5.5, 3.8, 2.4, 4, 6.6, 4.7, 2.7, 5.2, 2.8,
-            4.5, 2, 0.4, -0.4, -2.7, -1.3, -3.2, -2.7, -5, -3.9, -6.8, -1.8, -5.1, -7.9, -6.3, -7.2, -7, -7.5, -9.1, -2.8, -3, -8.6,
-            -42.2, -26.9, -16.2, -13.4, -8.3, -9.9, -11.7, -16.1, -11.2, -10.1, -7.3, -7.1, -1.9, 2.1, 2.2, 6.8, 4.4, 2.3, 3.9, 5.5,
-            4.9, 5.3, 7.5, 1.3, -0.2, 0.1, 0.2, -0.7, -4.6, -6.5, -6.8, -9.1, -8.5, -6.3, -6.3};
-        double[] BS_FR_v2 = {-7.8, -7.3, -5.1, -5.9, -7, -7.1, -5.4, -5.7, -5.3, -3.9, -7.7, -4.8, -2.1, -0.3, -1.2, -3, -5.4, -6.7,
-            -8.1, -8.1, -4.9, -4.6, -4.9, -3.3, -1.5, 0.4, -1.3, 1.1, 1.8, 1.2, 0.6, 1.3, 5.5, 3.8, 2.4, 4, 6.6, 4.7, 2.7, 5.2, 2.8,
-            4.5, 2, 0.4, -0.4, -2.7, -1.3, -3.2, -2.7, -5, -3.9, -6.8, -1.8, -5.1, -7.9, -6.3, -7.2, -7, -7.5, -9.1, -2.8, -3, -8.6,
-            -42.2, -26.9, -16.2, -13.4, -8.3, -9.9, -11.7, -16.1, -11.2, -10.1, -7.3, -7.1, -1.9, 2.1, 2.2, 6.8, 4.4, 2.3, 3.9, 5.5,
-            4.9, 5.3, 7.5, 1.3, -0.2, 0.1, 0.2, -0.7, -4.6, -6.5, -6.8, -9.1, -8.5, -6.3, -6.3, Double.NaN};
-        double[] BS_FR_v2bis = {-7.8, -7.3, -5.1, -5.9, -7, -7.1, -5.4, -5.7, -5.3, -3.9, -7.7, -4.8, -2.1, -0.3, -1.2, -3, -5.4, -6.7,
-            -8.1, -8.1, -4.9, -4.6, -4.9, -3.3, -1.5, 0.4, -1.3, 1.1, 1.8, 1.2, 0.6, 1.3, 5.5, 3.8, 2.4, 4, 6.6, 4.7, 2.7, 5.2, 2.8,
-            4.5, 2, 0.4, -0.4, -2.7, -1.3, -3.2, -2.7, -5, -3.9, -6.8, -1.8, -5.1, -7.9, -6.3, -7.2, -7, -7.5, -9.1, -2.8, -3, -8.6,
-            -42.2, -26.9, -16.2, -13.4, -8.3, -9.9, -11.7, -16.1, -11.2, -10.1, -7.3, -7.1, -1.9, 2.1, 2.2, 6.8, 4.4, 2.3, 3.9, 5.5,
-            4.9, 5.3, 7.5, 1.3, -0.2, 0.1, 0.2, -0.7, -4.6, -6.5, -6.8, -9.1, -8.5, -6.3, -6.3, -4.5};
-
-        double[] PMI_FR_v1 = {0.4, 0, 1.2, -0.2, 0.2, 0.3, -0.1, -0.1, -0.3, 0.3, 0.5, 0.4, -0.9, -1.1, 0.4, 0.1, -0.2, 1.3, -0.8,
-            -0.3, 0.9, 0.9, 0.2, 1.2, 0.3, 0.2, 0.8, 0.5, 0.3, 0.4, -0.8, 0.8, 0.7, 0.4, 1.6, 0.5, -1, -1, -2, -0.4, -0.7, -0.6, 0.2,
-            -0.5, -1.4, -1.2, -0.2, -0.4, -0.9, -1.2, -1.8, 0.4, -0.2, -0.1, -1.1, 0.5, -1.3, 0.2, 1, -0.6, 1.6, 1.3, -4.7, -11.1, 6,
-            8, 4.4, -0.1, 2, 1.1, -1, 1.4, -0.4, 3.1, 4.6, 0.4, 0.2, 0.3, -0.6, -1.4, -2.8, -0.3, 0.1, -0.4, 0.7, -0.5, -1.7, -1, -0.9,
-            -2.5, -2.3, -0.1, -1.3, -2, 0.7, 0.7, 1, -0.3};
-        double[] PMI_FR_v2 = {0.4, 0, 1.2, -0.2, 0.2, 0.3, -0.1, -0.1, -0.3, 0.3, 0.5, 0.4, -0.9, -1.1, 0.4, 0.1, -0.2, 1.3, -0.8,
-            -0.3, 0.9, 0.9, 0.2, 1.2, 0.3, 0.2, 0.8, 0.5, 0.3, 0.4, -0.8, 0.8, 0.7, 0.4, 1.6, 0.5, -1, -1, -2, -0.4, -0.7, -0.6, 0.2,
-            -0.5, -1.4, -1.2, -0.2, -0.4, -0.9, -1.2, -1.8, 0.4, -0.2, -0.1, -1.1, 0.5, -1.3, 0.2, 1, -0.6, 1.6, 1.3, -4.7, -11.1, 6,
-            8, 4.4, -0.1, 2, 1.1, -1, 1.4, -0.4, 3.1, 4.6, 0.4, 0.2, 0.3, -0.6, -1.4, -2.8, -0.3, 0.1, -0.4, 0.7, -0.5, -1.7, -1, -0.9,
-            -2.5, -2.3, -0.1, -1.3, -2, 0.7, 0.7, 1, -0.3, Double.NaN};
-        double[] PMI_FR_v2bis = {0.4, 0, 1.2, -0.2, 0.2, 0.3, -0.1, -0.1, -0.3, 0.3, 0.5, 0.4, -0.9, -1.1, 0.4, 0.1, -0.2, 1.3, -0.8,
-            -0.3, 0.9, 0.9, 0.2, 1.2, 0.3, 0.2, 0.8, 0.5, 0.3, 0.4, -0.8, 0.8, 0.7, 0.4, 1.6, 0.5, -1, -1, -2, -0.4, -0.7, -0.6, 0.2,
-            -0.5, -1.4, -1.2, -0.2, -0.4, -0.9, -1.2, -1.8, 0.4, -0.2, -0.1, -1.1, 0.5, -1.3, 0.2, 1, -0.6, 1.6, 1.3, -4.7, -11.1, 6,
-            8, 4.4, -0.1, 2, 1.1, -1, 1.4, -0.4, 3.1, 4.6, 0.4, 0.2, 0.3, -0.6, -1.4, -2.8, -0.3, 0.1, -0.4, 0.7, -0.5, -1.7, -1, -0.9,
-            -2.5, -2.3, -0.1, -1.3, -2, 0.7, 0.7, 1, -0.3, Double.NaN};
-
-        double[] GDP_FR_v1 = {Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.001, Double.NaN, Double.NaN, 0.001, Double.NaN,
-            Double.NaN, 0.001, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, -0.002, Double.NaN, Double.NaN, 0.002, Double.NaN,
-            Double.NaN, 0.003, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0.004, Double.NaN, Double.NaN, 0.004, Double.NaN,
-            Double.NaN, 0.003, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.002, Double.NaN,
-            Double.NaN, 0.002, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0, Double.NaN,
-            Double.NaN, -0.002, Double.NaN, Double.NaN, -0.023, Double.NaN, Double.NaN, -0.061, Double.NaN, Double.NaN, 0.07, Double.NaN,
-            Double.NaN, -0.003, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.004, Double.NaN, Double.NaN, 0.013, Double.NaN,
-            Double.NaN, 0.002, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.001, Double.NaN,
-            Double.NaN, 0, Double.NaN, Double.NaN};
-        double[] GDP_FR_v2 = {Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.001, Double.NaN, Double.NaN, 0.001, Double.NaN,
-            Double.NaN, 0.001, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, -0.002, Double.NaN, Double.NaN, 0.002, Double.NaN,
-            Double.NaN, 0.003, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0.004, Double.NaN, Double.NaN, 0.004, Double.NaN,
-            Double.NaN, 0.003, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.002, Double.NaN,
-            Double.NaN, 0.002, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0.003, Double.NaN, Double.NaN, 0, Double.NaN,
-            Double.NaN, -0.002, Double.NaN, Double.NaN, -0.023, Double.NaN, Double.NaN, -0.061, Double.NaN, Double.NaN, 0.07, Double.NaN,
-            Double.NaN, -0.003, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.004, Double.NaN, Double.NaN, 0.013, Double.NaN,
-            Double.NaN, 0.002, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN, 0.002, Double.NaN, Double.NaN, 0.001, Double.NaN,
-            Double.NaN, 0, Double.NaN, Double.NaN, Double.NaN};
-        double[] GDP_FR_v2bis = GDP_FR_v2;
+    @Test
+    public void testBackcasts() {
+        // news of PVI after the last observation of GDP: the first unobserved
+        // period of GDP is before the first update
+        TsInformationSet update = revise(OLD, 0, 97, y -> 0.004);
+        DfmNews news = new DfmNews(DFM);
+        assertTrue(news.process(OLD, update));
+        TsPeriod end = update.series(4).cleanExtremities().getEnd();
+        int epos = PSTART.until(end);
+        assertTrue(epos < PSTART.until(news.getSmoothingStart()));
+        StateStorage sold = smooth(OLD, 0), snew = smooth(update, 0);
+        DoubleSeq values = news.news();
+        for (int pos = epos; pos < N; ++pos) {
+            TsPeriod p = PSTART.plus(pos);
+            assertClose(forecast(sold, 4, pos), news.getOldForecast(4, p));
+            assertClose(forecast(sold, 4, pos), news.getRevisedForecast(4, p));
+            assertClose(forecast(snew, 4, pos), news.getNewForecast(4, p));
+            DoubleSeq w = news.weights(4, p);
+            double impact = 0;
+            for (int i = 0; i < values.length(); ++i) {
+                impact += w.get(i) * values.get(i);
+            }
+            assertClose(news.getNewForecast(4, p) - news.getOldForecast(4, p), impact);
+        }
+        // the impacts of the R output add up to the changes of the forecasts
+        DfmResultsNews rslt = DynamicFactorModels.computeNews(4, DFM, OLD.generateMatrix(null), update.generateMatrix(null),
+                12, new int[]{2015, 1}, true, 3);
+        assertEquals(end.display(), rslt.getForecastsPeriods()[0]);
+        Matrix impacts = rslt.getSeriesImpactsT();
+        for (int j = 0; j < rslt.getForecastsPeriods().length; ++j) {
+            double oldf = rslt.getOldForecastsT().get(j), newf = rslt.getNewForecastsT().get(j);
+            assertTrue(Double.isFinite(oldf) && Double.isFinite(newf));
+            assertClose(newf - oldf, impacts.column(j).sum());
+        }
+    }
+
+    @Test
+    public void testNews() {
+        DfmNews news = new DfmNews(DFM);
+        assertTrue(news.process(OLD, NEW));
+        TsInformationSet revised = news.getRevisedInformationSet();
+        List<Update> lnews = news.newsDetails().news();
+        DoubleSeq values = news.news();
+        assertFalse(lnews.isEmpty());
+        // news = observation - forecast on the revised data
+        StateStorage srevised = smooth(revised, 0);
+        for (int i = 0; i < lnews.size(); ++i) {
+            Update u = lnews.get(i);
+            assertClose(u.getObservation() - forecast(srevised, u.getSeries(), PSTART.until(u.getPeriod())), values.get(i));
+        }
+        // The new forecasts are linear in the new observations: the weight of
+        // a news is the change of the forecasts when the corresponding
+        // observation is increased by 1
+        StateStorage snew = smooth(NEW, 0);
+        StateStorage[] shifted = new StateStorage[lnews.size()];
+        for (int i = 0; i < lnews.size(); ++i) {
+            Update u = lnews.get(i);
+            shifted[i] = smooth(revise(NEW, u.getSeries(), PSTART.until(u.getPeriod()), y -> y + 1), 0);
+        }
+        for (int s = 0; s < NSERIES; ++s) {
+            FastMatrix W = news.weights(s, PSTART.plus(N - 4), 4);
+            for (int j = 0; j < 4; ++j) {
+                int pos = N - 4 + j;
+                DoubleSeq w = news.weights(s, PSTART.plus(pos));
+                for (int i = 0; i < lnews.size(); ++i) {
+                    assertClose(forecast(shifted[i], s, pos) - forecast(snew, s, pos), w.get(i));
+                    assertClose(w.get(i), W.get(i, j));
+                }
+            }
+        }
+        // covariance of the state at the end of the sample, in the extended
+        // state space
+        FastMatrix P = news.getStateCovariance();
+        int nb = P.getRowsCount() / DFM.getNfactors();
+        assertClose(smooth(revised, nb).P(N - 1), P);
+    }
+
+    @Test
+    public void testRevisions() {
+        DfmNews news = new DfmNews(DFM);
+        // all the revisions are considered
+        news.setMaxNewsExtensionPeriod(5);
+        assertTrue(news.process(OLD, NEW));
+        List<Update> lrevisions = news.revisionsDetails();
+        assertEquals(4, lrevisions.size());
+        // The old forecasts are linear in the revised observations: the
+        // weight of a revision is the change of the forecasts when the
+        // corresponding old observation is increased by 1
+        StateStorage sold = smooth(OLD, 0);
+        StateStorage[] shifted = new StateStorage[lrevisions.size()];
+        TsInformationSet unrevised = OLD;
+        for (int i = 0; i < lrevisions.size(); ++i) {
+            Update u = lrevisions.get(i);
+            int pos = PSTART.until(u.getPeriod());
+            shifted[i] = smooth(revise(OLD, u.getSeries(), pos, y -> y + 1), 0);
+            unrevised = revise(unrevised, u.getSeries(), pos, y -> Double.NaN);
+        }
+        DoubleSeq values = news.news();
+        for (int s = 0; s < NSERIES; ++s) {
+            for (int pos = N - 4; pos < N; ++pos) {
+                TsPeriod p = PSTART.plus(pos);
+                DoubleSeq wr = news.weightsRevisions(s, p), w = news.weights(s, p);
+                double rimpact = 0, nimpact = 0;
+                for (int i = 0; i < lrevisions.size(); ++i) {
+                    assertClose(forecast(shifted[i], s, pos) - forecast(sold, s, pos), wr.get(i));
+                    rimpact += wr.get(i) * lrevisions.get(i).getNews();
+                }
+                for (int i = 0; i < values.length(); ++i) {
+                    nimpact += w.get(i) * values.get(i);
+                }
+                // the impacts add up to the changes of the forecasts
+                assertClose(news.getRevisedForecast(s, p) - news.getOldForecast(s, p), rimpact);
+                assertClose(news.getNewForecast(s, p) - news.getRevisedForecast(s, p), nimpact);
+            }
+        }
+        // covariance of the state at the end of the sample, computed without
+        // the revised observations
+        FastMatrix P = news.getRevisionsStateCovariance();
+        int nb = P.getRowsCount() / DFM.getNfactors();
+        assertClose(smooth(unrevised, nb).P(N - 1), P);
+    }
+
+    @Test
+    public void testMaxNewsExtensionPeriod() {
+        DfmNews news = new DfmNews(DFM);
+        assertTrue(news.process(OLD, NEW));
+        // the revision of PMI is not considered with the default period
+        assertEquals(3, news.revisionsDetails().size());
+        TsPeriod start = PSTART.plus(N - 4);
+        news.weightsRevisions(4, start, 4);
+        // the results after a change of the period must be the same as the
+        // results of a new computation
+        for (int ext : new int[]{5, 2, 0, 5}) {
+            news.setMaxNewsExtensionPeriod(ext);
+            DfmNews fresh = new DfmNews(DFM);
+            fresh.setMaxNewsExtensionPeriod(ext);
+            assertTrue(fresh.process(OLD, NEW));
+            assertEquals(fresh.getRevisionsDomain(), news.getRevisionsDomain());
+            List<Update> lfresh = fresh.revisionsDetails(), lrevisions = news.revisionsDetails();
+            assertEquals(lfresh.size(), lrevisions.size());
+            for (int i = 0; i < lfresh.size(); ++i) {
+                assertEquals(lfresh.get(i).getSeries(), lrevisions.get(i).getSeries());
+                assertEquals(lfresh.get(i).getPeriod(), lrevisions.get(i).getPeriod());
+            }
+            for (int s = 0; s < NSERIES; ++s) {
+                assertClose(fresh.weightsRevisions(s, start, 4), news.weightsRevisions(s, start, 4));
+                assertClose(fresh.weights(s, start, 4), news.weights(s, start, 4));
+            }
+            if (!lfresh.isEmpty()) {
+                assertClose(fresh.getRevisionsStateCovariance(), news.getRevisionsStateCovariance());
+            }
+        }
+    }
+
+    @Test
+    public void testPipeline() {
+        IntList delays = new IntList();
+        for (int d : new int[]{30, 30, 1, 1, 45}) {
+            delays.add(d);
+        }
+        LocalDate[] all = NEW.generatePublicationCalendar(delays, LocalDate.of(2022, 1, 1));
+        LocalDate[] calendar = Arrays.copyOfRange(all, all.length - 4, all.length);
+        LocalDate end = PSTART.plus(N).start().toLocalDate();
+        List<DfmNewsPipeline.Release> releases = new DfmNewsPipeline(DFM).process(NEW, delays, calendar, end).toList();
+        assertTrue(releases.size() >= 2);
+        // each release must give the same results as an independent
+        // computation between the previous release and this one
+        LocalDate prev = calendar[0];
+        for (DfmNewsPipeline.Release release : releases) {
+            DfmNews news = release.getNews();
+            DfmNews fresh = new DfmNews(DFM);
+            assertTrue(fresh.process(NEW.generateInformation(delays, prev).extendTo(end),
+                    NEW.generateInformation(delays, release.getDate()).extendTo(end)));
+            assertEquals(fresh.getSmoothingStart(), news.getSmoothingStart());
+            DoubleSeq fvalues = fresh.news(), values = news.news();
+            assertEquals(fvalues.length(), values.length());
+            for (int i = 0; i < values.length(); ++i) {
+                assertClose(fvalues.get(i), values.get(i));
+            }
+            int cpos = PSTART.until(fresh.getSmoothingStart());
+            for (int s = 0; s < NSERIES; ++s) {
+                for (int pos = cpos; pos < N; ++pos) {
+                    TsPeriod p = PSTART.plus(pos);
+                    assertClose(fresh.getOldForecast(s, p), news.getOldForecast(s, p));
+                    assertClose(fresh.getNewForecast(s, p), news.getNewForecast(s, p));
+                }
+                assertClose(fresh.weights(s, PSTART.plus(N - 4), 4), news.weights(s, PSTART.plus(N - 4), 4));
+            }
+            prev = release.getDate();
+        }
+    }
+
+    @Test
+    public void testMultiTargets() {
+        Matrix oldData = OLD.generateMatrix(null), newData = NEW.generateMatrix(null);
+        int[] start = {2015, 1};
+        int[] targets = {4, 2, 0};
+        DfmResultsNews[] all = DynamicFactorModels.computeNews(targets, DFM, oldData, newData, 12, start, false, 3);
+        assertEquals(targets.length, all.length);
+        for (int i = 0; i < targets.length; ++i) {
+            assertSameNews(DynamicFactorModels.computeNews(targets[i], DFM, oldData, newData, 12, start, false, 3), all[i]);
+        }
+    }
+
+    public static void main(String[] args) {
 
         int[] start = {2015, 1};
         int nSeries = 5;
@@ -137,19 +392,7 @@ public class DynamicFactorModelsNewsTest {
         }
 
         // Model
-        int nf = 2, nl = 2;
-        String[] factorType = new String[]{"M", "M", "YoY", "M", "Q"};
-        FastMatrix factorLoaded = FastMatrix.make(factorType.length, nf);
-        double[] l1 = {1, 1};
-        double[] l2 = {1, 0};
-        double[] l3 = {1, 0};
-        factorLoaded.row(0).copyFrom(l1, 0);
-        factorLoaded.row(1).copyFrom(l3, 0);
-        factorLoaded.row(2).copyFrom(l1, 0);
-        factorLoaded.row(3).copyFrom(l2, 0);
-        factorLoaded.row(4).copyFrom(l1, 0);
-
-        DynamicFactorModel dfmInit = DynamicFactorModels.model(nf, nl, factorType, factorLoaded, "Unconditional", null);
+        DynamicFactorModel dfmInit = initialModel();
         
 //        DfmEstimates dfmEst = DynamicFactorModels.estimate_PCA(dfmInit, data1, 12, start, false);
         DfmEstimates dfmEst = DynamicFactorModels.estimate_EM(dfmInit, data1, 12, start, false, null, null, true, 100, 1e-09);
@@ -204,4 +447,145 @@ public class DynamicFactorModelsNewsTest {
         
     }
 
+    static DynamicFactorModel initialModel() {
+        int nf = 2, nl = 2;
+        String[] factorType = new String[]{"M", "M", "YoY", "M", "Q"};
+        FastMatrix factorLoaded = FastMatrix.make(factorType.length, nf);
+        double[] l1 = {1, 1};
+        double[] l2 = {1, 0};
+        double[] l3 = {1, 0};
+        factorLoaded.row(0).copyFrom(l1, 0);
+        factorLoaded.row(1).copyFrom(l3, 0);
+        factorLoaded.row(2).copyFrom(l1, 0);
+        factorLoaded.row(3).copyFrom(l2, 0);
+        factorLoaded.row(4).copyFrom(l1, 0);
+
+        return DynamicFactorModels.model(nf, nl, factorType, factorLoaded, "Unconditional", null);
+    }
+
+    private static FastMatrix matrix(double[]... series) {
+        FastMatrix M = FastMatrix.make(series[0].length, series.length);
+        for (int i = 0; i < series.length; ++i) {
+            M.column(i).copyFrom(series[i], 0);
+        }
+        return M;
+    }
+
+    /**
+     * Information set of length N (the series are extended with missing
+     * values)
+     *
+     * @param series
+     * @return
+     */
+    private static TsInformationSet informationSet(double[]... series) {
+        List<TsData> ls = new ArrayList<>();
+        for (double[] s : series) {
+            double[] x = Arrays.copyOf(s, N);
+            Arrays.fill(x, s.length, N, Double.NaN);
+            ls.add(TsData.ofInternal(PSTART, x));
+        }
+        return new TsInformationSet(ls);
+    }
+
+    /**
+     * Copy of an information set, with a modified observation
+     *
+     * @param set
+     * @param series
+     * @param pos Position of the observation (from PSTART)
+     * @param fn
+     * @return
+     */
+    private static TsInformationSet revise(TsInformationSet set, int series, int pos, DoubleUnaryOperator fn) {
+        List<TsData> ls = new ArrayList<>(set.all());
+        TsData s = ls.get(series);
+        double[] x = s.getValues().toArray();
+        int i = s.getStart().until(PSTART.plus(pos));
+        x[i] = fn.applyAsDouble(x[i]);
+        ls.set(series, TsData.ofInternal(s.getStart(), x));
+        return new TsInformationSet(ls);
+    }
+
+    /**
+     * Smoothing on the whole sample
+     *
+     * @param set
+     * @param nb Block length of the state space (0 for the default block
+     * length, without the variances)
+     * @return
+     */
+    private static StateStorage smooth(TsInformationSet set, int nb) {
+        DfmProcessor processor = DfmProcessor.builder()
+                .calcVariance(nb != 0)
+                .extendedLags(nb == 0 ? 0 : nb - 1)
+                .build();
+        assertTrue(processor.process(DFM, set));
+        return processor.getSmoothingResults();
+    }
+
+    private static double forecast(StateStorage ss, int series, int pos) {
+        return DFM.ssfRepresentation(0).loading(series).ZX(pos, ss.a(pos));
+    }
+
+    private static void assertSameNews(DfmResultsNews expected, DfmResultsNews actual) {
+        assertArrayEquals(expected.getSeriesIndex(), actual.getSeriesIndex());
+        assertArrayEquals(expected.getSeriesPeriod(), actual.getSeriesPeriod());
+        assertArrayEquals(expected.getForecastsPeriods(), actual.getForecastsPeriods());
+        assertArrayEquals(expected.getRevisionsIndex(), actual.getRevisionsIndex());
+        assertArrayEquals(expected.getRevisionsPeriod(), actual.getRevisionsPeriod());
+        assertEquivalent(expected.getSeriesExpectedValueT(), actual.getSeriesExpectedValueT());
+        assertEquivalent(expected.getSeriesExpectedValue(), actual.getSeriesExpectedValue());
+        assertEquivalent(expected.getSeriesObservedValueT(), actual.getSeriesObservedValueT());
+        assertEquivalent(expected.getSeriesObservedValue(), actual.getSeriesObservedValue());
+        assertEquivalent(expected.getSeriesNewsT(), actual.getSeriesNewsT());
+        assertEquivalent(expected.getSeriesNews(), actual.getSeriesNews());
+        assertEquivalent(expected.getSeriesWeightsT(), actual.getSeriesWeightsT());
+        assertEquivalent(expected.getSeriesWeights(), actual.getSeriesWeights());
+        assertEquivalent(expected.getSeriesImpactsT(), actual.getSeriesImpactsT());
+        assertEquivalent(expected.getSeriesImpacts(), actual.getSeriesImpacts());
+        assertEquivalent(expected.getOldForecastsT(), actual.getOldForecastsT());
+        assertEquivalent(expected.getOldForecasts(), actual.getOldForecasts());
+        assertEquivalent(expected.getRevisedForecastsT(), actual.getRevisedForecastsT());
+        assertEquivalent(expected.getRevisedForecasts(), actual.getRevisedForecasts());
+        assertEquivalent(expected.getNewForecastsT(), actual.getNewForecastsT());
+        assertEquivalent(expected.getNewForecasts(), actual.getNewForecasts());
+        assertEquivalent(expected.getRevisionsT(), actual.getRevisionsT());
+        assertEquivalent(expected.getRevisions(), actual.getRevisions());
+        assertEquivalent(expected.getRevisionsWeightsT(), actual.getRevisionsWeightsT());
+        assertEquivalent(expected.getRevisionsWeights(), actual.getRevisionsWeights());
+        assertEquivalent(expected.getRevisionsImpactsT(), actual.getRevisionsImpactsT());
+        assertEquivalent(expected.getRevisionsImpacts(), actual.getRevisionsImpacts());
+    }
+
+    private static void assertEquivalent(DoubleSeq expected, DoubleSeq actual) {
+        assertArrayEquals(expected.toArray(), actual.toArray(), 1e-12);
+    }
+
+    private static void assertEquivalent(Matrix expected, Matrix actual) {
+        assertEquals(expected.getRowsCount(), actual.getRowsCount());
+        assertEquals(expected.getColumnsCount(), actual.getColumnsCount());
+        assertArrayEquals(expected.toArray(), actual.toArray(), 1e-12);
+    }
+
+    private static void assertClose(FastMatrix expected, FastMatrix actual) {
+        assertEquals(expected.getRowsCount(), actual.getRowsCount());
+        assertEquals(expected.getColumnsCount(), actual.getColumnsCount());
+        double max = 0;
+        for (int i = 0; i < expected.getRowsCount(); ++i) {
+            for (int j = 0; j < expected.getColumnsCount(); ++j) {
+                max = Math.max(max, Math.abs(expected.get(i, j)));
+            }
+        }
+        for (int i = 0; i < expected.getRowsCount(); ++i) {
+            for (int j = 0; j < expected.getColumnsCount(); ++j) {
+                assertEquals(expected.get(i, j), actual.get(i, j), 1e-8 * (1 + max));
+            }
+        }
+    }
+
+    private static void assertClose(double expected, double actual) {
+        assertEquals(expected, actual, 1e-8 * (1 + Math.abs(expected)));
+    }
+
 }
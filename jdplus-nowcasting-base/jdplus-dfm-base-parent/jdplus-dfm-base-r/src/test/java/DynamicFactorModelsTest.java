@@ -88,6 +88,8 @@ public class DynamicFactorModelsTest {
         DfmResults dfm1bis = DynamicFactorModels.estimate_PCA(dfmInit2, data, 12, start, false, 12); // tested and same results as GUI
         System.out.println(dfm1.getDfm().getMeasurements().get(1).getVariance());
         System.out.println(dfm1bis.getDfm().getMeasurements().get(1).getVariance());
+        DfmResults dfm1ter = DynamicFactorModels.estimate_PCA(dfmInit, data, 12, start, false, 12, "TRUNCATED", "EM_PCA");
+        System.out.println(dfm1ter.getDfm().getMeasurements().get(1).getVariance());
         
         DfmResults dfm2 = DynamicFactorModels.estimate_EM(dfmInit, data, 12, start, false, 12, true, 100, 0.000000001); // tested and same results as GUI        
 